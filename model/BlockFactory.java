@@ -1,34 +1,165 @@
 package model;
 
+import model.exceptions.StackSizeException;
 import model.exceptions.WrongMaterialException;
 
 /**
- * Clase para crear bloques
+ * Clase para crear bloques. Salvo los cofres, los bloques no tienen estado propio
+ * aparte del material y de si sueltan una unidad de sí mismos, así que el mundo usa
+ * instancias compartidas e inmutables
  * @author Jose MV
  */
 public class BlockFactory
 {
 	/**
-	 * Constructor de bloques
+	 * Bloques compartidos, indexados por ordinal del material * 2 + (1 si suelta item). Los
+	 * cofres no tienen, así que nunca se confunden con otro cofre vacío
+	 */
+	private static final Block[] SHARED = new Block[Material.values().length * 2];
+
+	/**
+	 * Identificador de estado reservado para bloques con estado propio, que no caben en un byte
+	 */
+	static final int SPECIAL_STATE = 0xFF;
+
+	static
+	{
+		for (Material type : Material.values())
+		{
+			if (type.isBlock() && (type != Material.CHEST))
+			{
+				try
+				{
+					if (type.isLiquid())
+					{
+						Block liquid = new LiquidBlock(type);
+						SHARED[type.ordinal() * 2] = liquid;
+						SHARED[type.ordinal() * 2 + 1] = liquid;
+					}
+
+					else
+					{
+						SHARED[type.ordinal() * 2] = new SolidBlock(type, false);
+						SHARED[type.ordinal() * 2 + 1] = new SolidBlock(type, true);
+					}
+				}
+
+				catch (WrongMaterialException e)
+				{
+					// no sucederá: solo se crean materiales de bloque
+					throw new RuntimeException(e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Constructor de bloques. Devuelve siempre un bloque nuevo, que se puede modificar
+	 * (ver {@link #sharedBlock(Material, boolean)} para las instancias compartidas)
 	 * @param type material
 	 * @return b bloque creado
 	 * @throws WrongMaterialException excepción de material incorrecto
 	 */
 	public static Block createBlock(Material type) throws WrongMaterialException
-	{		
+	{
 		if (type.isLiquid())
 		{
 			return new LiquidBlock(type);
 		}
-		
-		else if (!type.isLiquid())
+
+		return new SolidBlock(type);
+	}
+
+	/**
+	 * Método que copia un bloque para colocarlo en otra posición. Los bloques sin estado propio
+	 * se cambian por su instancia compartida y los que lo tienen (cofres) se copian con sus items
+	 * @param b bloque
+	 * @return bloque para la otra posición
+	 */
+	static Block copyOf(Block b)
+	{
+		int state = getStateId(b);
+
+		if (state >= 0)
+		{
+			return getBlockForState(state);
+		}
+
+		try
+		{
+			SolidBlock copy = new SolidBlock(b.getType());
+			ItemStack drops = ((SolidBlock) b).getDrops();
+			if (drops != null)
+			{
+				copy.setDrops(drops.getType(), drops.getAmount());
+			}
+			return copy;
+		}
+
+		catch (WrongMaterialException | StackSizeException e)
+		{
+			// no sucederá: el bloque original ya era válido
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Getter de los bloques compartidos, para los bloques que crea el propio mundo
+	 * @param type material
+	 * @param dropsSelf indica si el bloque suelta una unidad de su material (se ignora en líquidos)
+	 * @return bloque compartido e inmutable, o un cofre nuevo
+	 * @throws WrongMaterialException excepción de material incorrecto
+	 */
+	static Block sharedBlock(Material type, boolean dropsSelf) throws WrongMaterialException
+	{
+		if (type == Material.CHEST)
 		{
 			return new SolidBlock(type);
 		}
-		
-		else
+
+		Block b = SHARED[type.ordinal() * 2 + (dropsSelf ? 1 : 0)];
+
+		if (b == null)
 		{
 			throw new WrongMaterialException(type);
 		}
+
+		return b;
+	}
+
+	/**
+	 * Método que obtiene el identificador de estado de un bloque para guardarlo en un byte:
+	 * 0 para una posición vacía y ordinal * 2 + (1 si suelta item) + 1 para los bloques compartidos
+	 * @param b bloque o null
+	 * @return identificador de estado, o -1 si el bloque tiene estado propio (p.ej. un cofre)
+	 */
+	static int getStateId(Block b)
+	{
+		if (b == null)
+		{
+			return 0;
+		}
+
+		int i = b.getType().ordinal() * 2;
+
+		for (int d = 0; d < 2; d++)
+		{
+			if ((SHARED[i + d] == b) || b.equals(SHARED[i + d]))
+			{
+				return i + d + 1;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Método que obtiene el bloque compartido de un identificador de estado
+	 * @param state identificador de {@link #getStateId(Block)}
+	 * @return bloque compartido o null si el estado es 0
+	 */
+	static Block getBlockForState(int state)
+	{
+		return (state == 0) ? null : SHARED[state - 1];
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,171 @@
+package model;
+
+/**
+ * Posición inmutable de un bloque, con coordenadas enteras. A diferencia de {@link Location}
+ * no se puede modificar, así que se puede compartir sin hacer copias y usar como clave
+ * @author Jose MV
+ */
+public final class BlockPos
+{
+	/**
+	 * Coordenada de longitud
+	 */
+	private final int x;
+
+	/**
+	 * Coordenada de elevación
+	 */
+	private final int y;
+
+	/**
+	 * Coordenada de latitud
+	 */
+	private final int z;
+
+	/**
+	 * Constructor
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 */
+	public BlockPos(int x, int y, int z)
+	{
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+
+	/**
+	 * Método que crea la posición del bloque que contiene una localización
+	 * @param loc localización
+	 * @return posición del bloque
+	 */
+	public static BlockPos of(Location loc)
+	{
+		return new BlockPos(BlockStorage.floor(loc.getX()), BlockStorage.floor(loc.getY()), BlockStorage.floor(loc.getZ()));
+	}
+
+	/**
+	 * Método que crea la posición que representa una clave de {@link LocationKey}
+	 * @param key clave empaquetada
+	 * @return posición del bloque
+	 */
+	public static BlockPos fromKey(long key)
+	{
+		return new BlockPos(LocationKey.getX(key), LocationKey.getY(key), LocationKey.getZ(key));
+	}
+
+	/**
+	 * Getter
+	 * @return x coordenada x de longitud
+	 */
+	public int getX()
+	{
+		return x;
+	}
+
+	/**
+	 * Getter
+	 * @return y coordenada y de elevación
+	 */
+	public int getY()
+	{
+		return y;
+	}
+
+	/**
+	 * Getter
+	 * @return z coordenada z de latitud
+	 */
+	public int getZ()
+	{
+		return z;
+	}
+
+	/**
+	 * Método que empaqueta la posición con {@link LocationKey}
+	 * @return clave empaquetada
+	 */
+	public long pack()
+	{
+		return LocationKey.pack(x, y, z);
+	}
+
+	/**
+	 * Método que crea una localización nueva en esta posición
+	 * @param world mundo de la localización
+	 * @return nueva localización
+	 */
+	public Location toLocation(World world)
+	{
+		return new Location(world, x, y, z);
+	}
+
+	/**
+	 * Método que calcula una posición desplazada
+	 * @param dx desplazamiento en x
+	 * @param dy desplazamiento en y
+	 * @param dz desplazamiento en z
+	 * @return nueva posición
+	 */
+	public BlockPos offset(int dx, int dy, int dz)
+	{
+		return new BlockPos(x + dx, y + dy, z + dz);
+	}
+
+	/**
+	 * Getter
+	 * @return posición de encima. No comprueba los límites del mundo
+	 */
+	public BlockPos above()
+	{
+		return new BlockPos(x, y + 1, z);
+	}
+
+	/**
+	 * Getter
+	 * @return posición de debajo. No comprueba los límites del mundo
+	 */
+	public BlockPos below()
+	{
+		return new BlockPos(x, y - 1, z);
+	}
+
+	/**
+	 * Método toString para imprimir objeto
+	 * @return String imprime las coordenadas
+	 */
+	public String toString()
+	{
+		return "BlockPos{x=" + x + ",y=" + y + ",z=" + z + "}";
+	}
+
+	/**
+	 * Método hashCode
+	 * @return result
+	 */
+	public int hashCode()
+	{
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + x;
+		result = prime * result + y;
+		result = prime * result + z;
+		return result;
+	}
+
+	/**
+	 * Método equals
+	 * @param obj objeto a comparar
+	 * @return true o false
+	 */
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+			return true;
+		if (!(obj instanceof BlockPos))
+			return false;
+		BlockPos other = (BlockPos) obj;
+		return (x == other.x) && (y == other.y) && (z == other.z);
+	}
+}
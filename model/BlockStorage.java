@@ -0,0 +1,303 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Almacén de bloques del mundo dividido en chunks de 16x16 columnas y secciones
+ * de 16 bloques de altura. Las implementaciones deciden dónde se guardan los datos
+ * @author Jose MV
+ */
+abstract class BlockStorage
+{
+	/**
+	 * Número de secciones por columna de chunk
+	 */
+	static final int SECTIONS_PER_CHUNK = ((int) Location.UPPER_Y_VALUE + 1) / ChunkSection.SIZE;
+
+	/**
+	 * Altura del mundo en bloques
+	 */
+	static final int HEIGHT = SECTIONS_PER_CHUNK * ChunkSection.SIZE;
+
+	/**
+	 * Coordenada x/z mínima del mundo
+	 */
+	protected final int minCoord;
+
+	/**
+	 * Tamaño del mundo en x/z
+	 */
+	protected final int worldSize;
+
+	/**
+	 * Número de chunks por lado del mundo
+	 */
+	protected final int chunksPerSide;
+
+	/**
+	 * Columnas de chunk modificadas desde la última vez que se guardaron
+	 */
+	private boolean[] dirty;
+
+	/**
+	 * Constructor
+	 * @param worldSize tamaño del mundo en x/z
+	 * @param minCoord coordenada x/z mínima del mundo
+	 */
+	protected BlockStorage(int worldSize, int minCoord)
+	{
+		this.worldSize = worldSize;
+		this.minCoord = minCoord;
+		chunksPerSide = (worldSize + ChunkSection.SIZE - 1) / ChunkSection.SIZE;
+		dirty = new boolean[chunksPerSide * chunksPerSide];
+	}
+
+	/**
+	 * Getter
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @return bloque en la posición o null si está vacía o fuera del mundo
+	 */
+	abstract Block get(int x, int y, int z);
+
+	/**
+	 * Método que guarda un bloque en la posición. Las posiciones fuera del mundo se ignoran
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @param block bloque, null para vaciar la posición
+	 * @return bloque que había antes en la posición
+	 */
+	abstract Block put(int x, int y, int z, Block block);
+
+	/**
+	 * Método que indica si la sección de 16x16x16 bloques que contiene una posición está
+	 * vacía. Sirve para saltar zonas vacías sin consultar bloque a bloque
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @return true si seguro que no tiene bloques (o está fuera del mundo), false si puede tenerlos
+	 */
+	abstract boolean isSectionEmpty(int x, int y, int z);
+
+	/**
+	 * Método que escribe un bloque en todas las posiciones de una caja, sección a sección.
+	 * Los bloques con estado propio se copian en cada posición
+	 * @param minX coordenada x mínima
+	 * @param minY coordenada y mínima
+	 * @param minZ coordenada z mínima
+	 * @param maxX coordenada x máxima (incluida)
+	 * @param maxY coordenada y máxima (incluida)
+	 * @param maxZ coordenada z máxima (incluida)
+	 * @param only material de los bloques que se sustituyen, o null para escribir en todas
+	 * las posiciones (también las vacías)
+	 * @param block bloque, null para vaciar las posiciones
+	 * @return número de posiciones escritas. La caja debe estar dentro del mundo
+	 */
+	abstract int fillBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Material only, Block block);
+
+	/**
+	 * Método que elimina todos los bloques
+	 */
+	abstract void clear();
+
+	/**
+	 * Método que copia los estados de una columna de chunk a un buffer, con el formato de
+	 * {@link OffHeapBlockStorage}: un byte por bloque en el índice (y &lt;&lt; 8) | (z &lt;&lt; 4) | x.
+	 * Los bloques con estado propio se marcan con {@link BlockFactory#SPECIAL_STATE}
+	 * @param cx coordenada x del chunk (0 es el chunk de la coordenada mínima)
+	 * @param cz coordenada z del chunk
+	 * @param dst buffer destino
+	 * @param offset posición de dst donde empieza la columna
+	 */
+	abstract void exportChunk(int cx, int cz, ByteBuffer dst, int offset);
+
+	/**
+	 * Método que añade a un mapa los bloques con estado propio (p.ej. cofres con items)
+	 * @param specials mapa destino, por posición empaquetada
+	 */
+	abstract void collectSpecials(LongMap<Block> specials);
+
+	/**
+	 * Método que sustituye una columna de chunk por los estados de un buffer con el formato
+	 * de {@link #exportChunk}. Los bloques con estado propio se deben volver a añadir con put
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 * @param src buffer de {@link OffHeapBlockStorage#CHUNK_BYTES} bytes que empieza en la posición 0
+	 */
+	abstract void importChunk(int cx, int cz, ByteBuffer src);
+
+	/**
+	 * Getter
+	 * @return coordenada x/z mínima del mundo
+	 */
+	int getMinCoord()
+	{
+		return minCoord;
+	}
+
+	/**
+	 * Getter
+	 * @return número de chunks por lado del mundo
+	 */
+	int getChunksPerSide()
+	{
+		return chunksPerSide;
+	}
+
+	/**
+	 * Método que indica si una columna de chunk ha cambiado desde que se guardó
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 * @return true si hay cambios sin guardar
+	 */
+	boolean isDirty(int cx, int cz)
+	{
+		return dirty[cx * chunksPerSide + cz];
+	}
+
+	/**
+	 * Método que marca una columna de chunk como guardada
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 */
+	void clearDirty(int cx, int cz)
+	{
+		dirty[cx * chunksPerSide + cz] = false;
+	}
+
+	/**
+	 * Método que marca una columna de chunk como modificada
+	 * @param chunk índice del chunk de {@link #chunkIndex(int, int)}
+	 */
+	protected void markDirty(int chunk)
+	{
+		dirty[chunk] = true;
+	}
+
+	/**
+	 * Método que marca todas las columnas de chunk como modificadas
+	 */
+	protected void markAllDirty()
+	{
+		Arrays.fill(dirty, true);
+	}
+
+	/**
+	 * Getter
+	 * @param loc posición
+	 * @return bloque en la posición o null si está vacía o fuera del mundo
+	 */
+	Block get(Location loc)
+	{
+		return get(floor(loc.getX()), floor(loc.getY()), floor(loc.getZ()));
+	}
+
+	/**
+	 * Método que indica si hay un bloque en la posición
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @return true si hay bloque
+	 */
+	boolean containsKey(int x, int y, int z)
+	{
+		return get(x, y, z) != null;
+	}
+
+	/**
+	 * Método que indica si hay un bloque en la posición
+	 * @param loc posición
+	 * @return true si hay bloque
+	 */
+	boolean containsKey(Location loc)
+	{
+		return get(loc) != null;
+	}
+
+	/**
+	 * Método que guarda un bloque en la posición
+	 * @param loc posición
+	 * @param block bloque
+	 * @return bloque que había antes en la posición
+	 */
+	Block put(Location loc, Block block)
+	{
+		return put(floor(loc.getX()), floor(loc.getY()), floor(loc.getZ()), block);
+	}
+
+	/**
+	 * Método que sustituye el bloque de la posición solo si ya había uno
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @param block bloque nuevo
+	 * @return bloque que había antes o null si la posición estaba vacía
+	 */
+	Block replace(int x, int y, int z, Block block)
+	{
+		if (get(x, y, z) == null)
+		{
+			return null;
+		}
+
+		return put(x, y, z, block);
+	}
+
+	/**
+	 * Método que vacía la posición
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @return bloque que había en la posición
+	 */
+	Block remove(int x, int y, int z)
+	{
+		return put(x, y, z, null);
+	}
+
+	/**
+	 * Método que vacía la posición
+	 * @param loc posición
+	 * @return bloque que había en la posición
+	 */
+	Block remove(Location loc)
+	{
+		return put(loc, null);
+	}
+
+	/**
+	 * Método que indica si la posición está dentro del almacén
+	 * @param lx coordenada x relativa al mínimo del mundo
+	 * @param y coordenada y
+	 * @param lz coordenada z relativa al mínimo del mundo
+	 * @return true si está dentro
+	 */
+	protected boolean inBounds(int lx, int y, int lz)
+	{
+		return (lx >= 0) && (lx < worldSize) && (lz >= 0) && (lz < worldSize) && (y >= 0) && (y < HEIGHT);
+	}
+
+	/**
+	 * Método que calcula el índice de la columna de chunk que contiene la posición
+	 * @param lx coordenada x relativa al mínimo del mundo
+	 * @param lz coordenada z relativa al mínimo del mundo
+	 * @return índice del chunk
+	 */
+	protected int chunkIndex(int lx, int lz)
+	{
+		return ((lx >> 4) * chunksPerSide) + (lz >> 4);
+	}
+
+	/**
+	 * Método que convierte una coordenada a la del bloque que la contiene
+	 * @param c coordenada
+	 * @return coordenada entera
+	 */
+	static int floor(double c)
+	{
+		return (int) Math.floor(c);
+	}
+}
@@ -1,9 +1,11 @@
 package model;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.util.Scanner;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 
 import model.entities.Creature;
 import model.entities.Player;
@@ -24,6 +26,21 @@ public class BlockWorld
 	 */
 	private World world;
 	
+	/**
+	 * Dibujo del alrededor del jugador
+	 */
+	private ViewportRenderer viewport;
+	
+	/**
+	 * Buffer que se reutiliza para la información del jugador
+	 */
+	private final StringBuilder playerInfo;
+	
+	/**
+	 * Sesión de la consola, que solo recibe lo que cambia (null hasta la primera actualización)
+	 */
+	private ViewportSession consoleSession;
+	
 	/**
 	 * Instancia de BlockWorld
 	 */
@@ -49,6 +66,32 @@ public class BlockWorld
 	private BlockWorld()
 	{
 		world = null;
+		viewport = new ViewportRenderer(ViewportRenderer.DEFAULT_RADIUS);
+		playerInfo = new StringBuilder();
+	}
+	
+	/**
+	 * Constructor de un juego aparte del de {@link #getInstance()}, para repetir un diario
+	 * @param world mundo
+	 */
+	BlockWorld(World world)
+	{
+		this();
+		this.world = world;
+	}
+	
+	/**
+	 * Setter
+	 * @param radius radio del alrededor del jugador que se muestra en {@link #showPlayerInfo(Player)}
+	 * @throws IllegalArgumentException si el radio es negativo
+	 */
+	public void setViewportRadius(int radius)
+	{
+		if (radius != viewport.getRadius())
+		{
+			viewport = new ViewportRenderer(radius);
+			consoleSession = null;
+		}
 	}
 	
 	/**
@@ -60,11 +103,128 @@ public class BlockWorld
 	 */
 	public World createWorld(int seed, int size, String name)
 	{
+		stopJournal();
 		world = new World(seed, size, name);
+		if (consoleSession != null)
+		{
+			consoleSession.reset();
+		}
 		
 		return world;
 	}
 	
+	/**
+	 * Método que empieza a guardar en un diario (ver {@link CommandJournal}) las acciones de
+	 * todos los jugadores, los ticks y los jugadores que entran y salen, dejando de guardarlas
+	 * en el anterior si lo había. El mundo actual se guarda como punto de control 0
+	 * @param dir directorio del diario
+	 * @param checkpointInterval número de acciones entre dos puntos de control
+	 * @throws IOException si falla la escritura
+	 * @throws IllegalStateException si aún no hay mundo
+	 */
+	public void startJournal(File dir, int checkpointInterval) throws IOException
+	{
+		if (world == null)
+		{
+			throw new IllegalStateException("No hay mundo");
+		}
+		
+		stopJournal();
+		world.setJournal(new CommandJournal(dir, world, checkpointInterval));
+	}
+	
+	/**
+	 * Método que deja de guardar las acciones en el diario
+	 */
+	public void stopJournal()
+	{
+		if ((world != null) && (world.getJournal() != null))
+		{
+			try
+			{
+				world.getJournal().close();
+			}
+			
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
+			
+			world.setJournal(null);
+		}
+	}
+	
+	/**
+	 * Método que rehace el mundo de un diario tal y como estaba después de un número de
+	 * acciones: carga el último punto de control anterior y le aplica las acciones que faltan,
+	 * sin mostrar nada
+	 * @param dir directorio del diario
+	 * @param actions número de acciones, o más que las del diario para aplicarlas todas
+	 * @return mundo rehecho, que no es el del juego
+	 * @throws IOException si falla la lectura o el diario no es válido
+	 */
+	public static World replayJournal(File dir, long actions) throws IOException
+	{
+		CommandJournal.Reader reader = new CommandJournal.Reader(dir, actions, new WorldOptions());
+		
+		try
+		{
+			BlockWorld replay = new BlockWorld(reader.getWorld());
+			Command command = new Command();
+			
+			while (reader.next(command))
+			{
+				replay.replay(command);
+			}
+		}
+		
+		finally
+		{
+			reader.close();
+		}
+		
+		return reader.getWorld();
+	}
+	
+	/**
+	 * Método que repite una acción leída del diario
+	 * @param command acción
+	 */
+	private void replay(Command command)
+	{
+		Command.Type type = command.getType();
+		Player[] players = world.getPlayerArray();
+		
+		if (type == Command.Type.TICK)
+		{
+			world.tick();
+		}
+		
+		else if (type == Command.Type.ADD_PLAYER)
+		{
+			world.addPlayer(command.getName());
+		}
+		
+		else if (type == Command.Type.REMOVE_PLAYER)
+		{
+			world.removePlayer(players[command.getArg(0)].getName());
+		}
+		
+		else
+		{
+			try
+			{
+				perform(command, players[command.getPlayer()]);
+			}
+			
+			catch (EntityIsDeadException | BadLocationException | BadInventoryPositionException | StackSizeException
+				| WrongMaterialException | IllegalArgumentException e)
+			{
+				// la acción también falló al guardarla
+			}
+		}
+	}
+	
 	/**
 	 * Método que imprime la información del jugador y su alrededor
 	 * @param player objeto Player
@@ -73,12 +233,46 @@ public class BlockWorld
 	public String showPlayerInfo(Player player)
 	{
 		String str = "";
-		World temp_world;
 		
 		try
 		{
-			temp_world = player.getLocation().getWorld();
-			str = player.toString() + "\n" + temp_world.getNeighbourhoodString(player.getLocation());
+			playerInfo.setLength(0);
+			playerInfo.append(player.toString()).append('\n');
+			viewport.render(player.getLocation(), playerInfo);
+			str = playerInfo.toString();
+		} 
+		
+		catch (BadLocationException e)
+		{
+			e.printStackTrace();
+		}
+		
+		return str;
+	}
+	
+	/**
+	 * Método que devuelve lo que ha cambiado de la información del jugador y su alrededor
+	 * desde la última llamada, como actualizaciones para un terminal ANSI (ver
+	 * {@link ViewportSession}). La primera llamada lo devuelve todo
+	 * @param player objeto Player
+	 * @return String con los cambios, vacío si no ha cambiado nada
+	 */
+	public String showPlayerUpdate(Player player)
+	{
+		String str = "";
+		
+		try
+		{
+			if (consoleSession == null)
+			{
+				consoleSession = new ViewportSession(viewport.getRadius(), 1);
+			}
+			
+			playerInfo.setLength(0);
+			if (consoleSession.update(player, playerInfo))
+			{
+				str = playerInfo.toString();
+			}
 		} 
 		
 		catch (BadLocationException e)
@@ -102,31 +296,7 @@ public class BlockWorld
 	{
 		try
 		{
-			Location new_loc = new Location(p.move(dx, dy, dz));
-			ItemStack item = world.getItemsAt(new_loc);
-			
-			try		
-			{
-				Block block = (world.getBlockAt(new_loc));
-				if (block != null)
-				{
-					if (block.getType().isLiquid())
-					{
-						double dmg = block.getType().getValue();
-						world.getPlayer().setHealth(world.getPlayer().getHealth() - dmg);
-					}
-				}
-				if (item != null)
-				{
-					p.addItemsToInventory(item);
-					world.removeItemsAt(new_loc);
-				}
-			} 
-			
-			catch (BadLocationException e)
-			{
-				e.printStackTrace();
-			}
+			doMovePlayer(p, dx, dy, dz);
 		} 
 		
 		catch (EntityIsDeadException e)
@@ -135,6 +305,38 @@ public class BlockWorld
 		}
 	}
 	
+	/**
+	 * Método que mueve al jugador como {@link #movePlayer(Player, int, int, int)}, pero
+	 * lanzando todas las excepciones en lugar de imprimirlas
+	 * @param p objeto Player
+	 * @param dx coordenada x
+	 * @param dy coordenada y
+	 * @param dz coordenada z
+	 * @throws EntityIsDeadException excepción porque el jugador está muerto
+	 * @throws BadLocationException excepción porque la localización es incorrecta
+	 */
+	void doMovePlayer(Player p, int dx, int dy, int dz) throws EntityIsDeadException, BadLocationException
+	{
+		world.record(Command.Type.MOVE, p, dx, dy, dz);
+		
+		Location new_loc = new Location(p.move(dx, dy, dz));
+		ItemStack item = world.getItemsAt(new_loc);
+		Block block = (world.getBlockAt(new_loc));
+		if (block != null)
+		{
+			if (block.getType().isLiquid())
+			{
+				double dmg = block.getType().getValue();
+				p.setHealth(p.getHealth() - dmg);
+			}
+		}
+		if (item != null)
+		{
+			p.addItemsToInventory(item);
+			world.removeItemsAt(new_loc);
+		}
+	}
+	
 	/**
 	 * Método que equipa un item del inventeario en la mano del jugador
 	 * @param player objeto Player
@@ -145,7 +347,7 @@ public class BlockWorld
 	{
 		try
 		{
-			player.selectItem(pos);
+			doSelectItem(player, pos);
 		}
 		
 		catch (BadInventoryPositionException | EntityIsDeadException e)
@@ -154,6 +356,20 @@ public class BlockWorld
 		}
 	}
 	
+	/**
+	 * Método que equipa un item como {@link #selectItem(Player, int)}, pero lanzando todas
+	 * las excepciones en lugar de imprimirlas
+	 * @param player objeto Player
+	 * @param pos posicion del item en el inventario (indice 0)
+	 * @throws BadInventoryPositionException excepción porque la posición del inventario no es válida
+	 * @throws EntityIsDeadException excepción porque el jugador está muerto
+	 */
+	void doSelectItem(Player player, int pos) throws BadInventoryPositionException, EntityIsDeadException
+	{
+		world.record(Command.Type.SELECT_ITEM, player, pos, 0, 0);
+		player.selectItem(pos);
+	}
+	
 	/**
 	 * Método para usar el item que tiene el jugador en la mano
 	 * @param p objeto Player
@@ -168,48 +384,58 @@ public class BlockWorld
 	{
 		try
 		{
-			ItemStack itemInHand = p.useItemInHand(times);
-			if (itemInHand != null)
+			doUseItem(p, times);
+		}
+		
+		catch (EntityIsDeadException | IllegalArgumentException | BadLocationException | WrongMaterialException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Método para usar el item de la mano como {@link #useItem(Player, int)}, pero lanzando
+	 * todas las excepciones en lugar de imprimirlas
+	 * @param p objeto Player
+	 * @param times veces que usa el objeto
+	 * @throws EntityIsDeadException excepción porque el jugador está muerto
+	 * @throws IllegalArgumentException excepción porque el parámetro times no es válido
+	 * @throws StackSizeException excepción porque crea un item con cantidad incorrecta
+	 * @throws BadLocationException excepción que indica una posición incorrecta
+	 * @throws WrongMaterialException excepción porque se intenta crear un bloque con material incorrecto
+	 */
+	void doUseItem(Player p, int times) throws EntityIsDeadException, IllegalArgumentException, StackSizeException, BadLocationException, WrongMaterialException
+	{
+		world.record(Command.Type.USE_ITEM, p, times, 0, 0);
+		
+		ItemStack itemInHand = p.useItemInHand(times);
+		if (itemInHand != null)
+		{
+			Location oriented = new Location(p.getOrientation());
+			if (!itemInHand.getType().isEdible() && (oriented.isOffLimits()))
 			{
-				Location oriented = new Location(p.getOrientation());
-				if (!itemInHand.getType().isEdible() && (oriented.isOffLimits()))
+				Block block = world.getBlockAt(oriented);
+				Creature creature = world.getCreatureAt(oriented);
+				if (block != null)
 				{
-					try
-					{
-						Block block = world.getBlockAt(oriented);
-						Creature creature = world.getCreatureAt(oriented);
-						if (block != null)
-						{
-							if (!block.getType().isLiquid())
-							{
-								hitBlock(p, times, oriented, block, itemInHand);
-							}
-						}
-						
-						else if (creature != null)
-						{
-							attackCreature(p, times, oriented, creature, itemInHand);							
-						}
-						
-						else if (((block == null) || (block.getType().isLiquid())) && (creature == null) && (itemInHand.getType().isBlock()))
-						{
-							Block blockInHand = BlockFactory.createBlock(itemInHand.getType());
-							world.addBlock(oriented, blockInHand);
-						}
-					} 
-					
-					catch (BadLocationException | WrongMaterialException e)
+					if (!block.getType().isLiquid())
 					{
-						e.printStackTrace();
+						hitBlock(p, times, oriented, block, itemInHand);
 					}
 				}
+				
+				else if (creature != null)
+				{
+					attackCreature(p, times, oriented, creature, itemInHand);							
+				}
+				
+				else if (((block == null) || (block.getType().isLiquid())) && (creature == null) && (itemInHand.getType().isBlock()))
+				{
+					Block blockInHand = BlockFactory.sharedBlock(itemInHand.getType(), false);
+					world.addBlock(oriented, blockInHand);
+				}
 			}
 		}
-		
-		catch (EntityIsDeadException | IllegalArgumentException e)
-		{
-			e.printStackTrace();
-		}
 	}
 	
 	/**
@@ -339,7 +565,7 @@ public class BlockWorld
 	{
 		try
 		{
-			p.orientate(x, y, z);
+			doOrientatePlayer(p, x, y, z);
 		} 
 		catch (EntityIsDeadException | BadLocationException e)
 		{
@@ -347,40 +573,169 @@ public class BlockWorld
 		}
 	}
 	
-	// TODO
 	/**
-	 * Método que ejecuta las ordenes del archivo
-	 * @param sc objeto Scnaner
+	 * Método que orienta al jugador como {@link #orientatePlayer(Player, int, int, int)}, pero
+	 * lanzando todas las excepciones en lugar de imprimirlas
+	 * @param p player
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @throws EntityIsDeadException excepción que indica que el jugador está muerto
+	 * @throws BadLocationException excepción que indica que la posición es incorrecta
 	 */
+	void doOrientatePlayer(Player p, int x, int y, int z) throws EntityIsDeadException, BadLocationException
+	{
+		world.record(Command.Type.ORIENTATE, p, x, y, z);
+		p.orientate(x, y, z);
+	}
 	
-	private void play(Scanner sc)
+	/**
+	 * Método que ejecuta las órdenes de un canal hasta que se termina (ver {@link CommandReader})
+	 * @param in canal de las órdenes
+	 * @throws IOException si falla la lectura
+	 */
+	private void play(ReadableByteChannel in) throws IOException
 	{
+		CommandReader reader = new CommandReader(in);
+		Command command = new Command();
 		
+		while (reader.next(command))
+		{
+			execute(command);
+		}
 	}
 	
-	// TODO
 	/**
-	 * Método que abre el fichero de entrada
+	 * Método que ejecuta una orden sobre el jugador del mundo
+	 * @param command orden leída
+	 */
+	private void execute(Command command)
+	{
+		Command.Type type = command.getType();
+		
+		if (type == null)
+		{
+			System.err.println("Orden no válida en la línea " + command.getLine());
+		}
+		
+		else if (type == Command.Type.WORLD)
+		{
+			createWorld(command.getArg(0), command.getArg(1), command.getName());
+		}
+		
+		else if (world == null)
+		{
+			System.err.println("No hay mundo para la orden de la línea " + command.getLine());
+		}
+		
+		else
+		{
+			try
+			{
+				String info = perform(command, world.getPlayer());
+				
+				if (info != null)
+				{
+					System.out.println(info);
+				}
+			}
+			
+			catch (EntityIsDeadException | BadLocationException | BadInventoryPositionException | StackSizeException
+				| WrongMaterialException | IllegalArgumentException e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Método que hace la acción de una orden con un jugador del mundo, o devuelve su
+	 * información si la orden es show
+	 * @param command orden válida que no es {@link Command.Type#WORLD}
+	 * @param player jugador que hace la acción
+	 * @return información del jugador y su alrededor si la orden es show, null si no
+	 * @throws EntityIsDeadException si el jugador está muerto
+	 * @throws BadLocationException si la acción lleva a una posición no válida
+	 * @throws BadInventoryPositionException si la posición del inventario no es válida
+	 * @throws StackSizeException si la acción crea un item con cantidad incorrecta
+	 * @throws WrongMaterialException si la acción crea un bloque con material incorrecto
+	 * @throws IllegalArgumentException si algún argumento de la orden no es válido
+	 */
+	String perform(Command command, Player player) throws EntityIsDeadException, BadLocationException,
+		BadInventoryPositionException, StackSizeException, WrongMaterialException, IllegalArgumentException
+	{
+		Command.Type type = command.getType();
+		
+		if (type == Command.Type.MOVE)
+		{
+			doMovePlayer(player, command.getArg(0), command.getArg(1), command.getArg(2));
+		}
+		
+		else if (type == Command.Type.ORIENTATE)
+		{
+			doOrientatePlayer(player, command.getArg(0), command.getArg(1), command.getArg(2));
+		}
+		
+		else if (type == Command.Type.USE_ITEM)
+		{
+			doUseItem(player, command.getArg(0, 1));
+		}
+		
+		else if (type == Command.Type.SELECT_ITEM)
+		{
+			doSelectItem(player, command.getArg(0));
+		}
+		
+		else
+		{
+			return showPlayerInfo(player);
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Método que ejecuta las órdenes de un fichero. Si la primera línea tiene la semilla, el
+	 * tamaño y el nombre del mundo se crea un mundo nuevo; si no, se usa el mundo actual
 	 * @param str nombre fichero
-	 * @throws java.io.FileNotFoundException Excepción que indica que no se encuentra el fichero
+	 * @throws FileNotFoundException Excepción que indica que no se encuentra el fichero
 	 */
-	public void playFile(String str) throws java.io.FileNotFoundException
+	public void playFile(String str) throws FileNotFoundException
 	{
-		File file = new File(str);
-		FileReader fr = new FileReader(file);	
-		BufferedReader reader = new BufferedReader(fr);	
+		FileInputStream in = new FileInputStream(new File(str));
+		
+		try
+		{
+			try
+			{
+				play(in.getChannel());
+			}
+			
+			finally
+			{
+				in.close();
+			}
+		}
 		
-		if (file.exists())
+		catch (IOException e)
 		{
+			e.printStackTrace();
 		}
 	}
 	
-	// TODO
 	/**
-	 * Método para leer las ordenes del juego
+	 * Método para leer las ordenes del juego de la entrada estándar
 	 */
 	public void playFromConsole()
 	{
+		try
+		{
+			play(Channels.newChannel(System.in));
+		}
 		
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
 	}
 }
@@ -0,0 +1,874 @@
+package model;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.bukkit.util.noise.CombinedNoiseGenerator;
+import org.bukkit.util.noise.OctaveGenerator;
+import org.bukkit.util.noise.PerlinOctaveGenerator;
+
+import model.entities.Animal;
+import model.entities.Creature;
+import model.entities.LivingEntity;
+import model.entities.Monster;
+import model.exceptions.StackSizeException;
+import model.exceptions.WrongMaterialException;
+
+/**
+ * Generador del mundo por chunks de 16x16 columnas. Cada chunk se genera solo, con
+ * números aleatorios de {@link RandomStreams}, así que el resultado no depende del orden
+ * ni del hilo en que se generen los chunks. Las cuevas y vetas que
+ * nacen en chunks cercanos se recorren de nuevo y solo se excavan dentro del chunk; las
+ * fuentes de agua y lava no se extienden fuera de su chunk
+ * @author Jose MV
+ */
+class ChunkGenerator
+{
+	/**
+	 * Longitud máxima de una cueva
+	 */
+	private static final double CAVE_MAX_LENGTH = 200;
+
+	/**
+	 * Radio máximo de una esfera de cueva, con margen para el desplazamiento del centro
+	 */
+	private static final double CAVE_MAX_RADIUS = 7;
+
+	/**
+	 * Longitud máxima de una veta por unidad de abundancia
+	 */
+	private static final double VEIN_MAX_LENGTH = 75;
+
+	/**
+	 * Abundancia de cada mineral (granito y obsidiana)
+	 */
+	private static final double[] VEIN_ABUNDANCE = { 0.5, 0.3 };
+
+	/**
+	 * Materiales de las vetas
+	 */
+	private static final Material[] VEIN_MATERIAL = { Material.GRANITE, Material.OBSIDIAN };
+
+	/**
+	 * Tipo de elemento de {@link #carveFeatures(int, int, int)} para las cuevas; 1 + i para las vetas de VEIN_MATERIAL[i]
+	 */
+	private static final int CAVES = 0;
+
+	/**
+	 * Número máximo de chunks cuyas cuevas y vetas se guardan en la caché
+	 */
+	private static final int FEATURE_CACHE_SIZE = 4096;
+
+	/**
+	 * Mundo que se genera
+	 */
+	private final World world;
+
+	/**
+	 * Números aleatorios de cada paso y chunk
+	 */
+	private final RandomStreams streams;
+
+	/**
+	 * Tamaño del mundo en x/z
+	 */
+	private final int size;
+
+	/**
+	 * Coordenada x/z mínima del mundo
+	 */
+	private final int minCoord;
+
+	/**
+	 * Número de chunks por lado del mundo
+	 */
+	private final int chunksPerSide;
+
+	/**
+	 * Chunks ya generados
+	 */
+	private final boolean[] generated;
+
+	/**
+	 * Cuevas y vetas de los últimos chunks de origen usados. Un chunk se excava con lo que
+	 * nace en los chunks de alrededor, así que cada recorrido se aprovecha para todos los
+	 * chunks que alcanza. Se accede a ella sincronizando sobre el propio mapa
+	 */
+	private final Map<Long, Feature[]> featureCache;
+
+	/**
+	 * Generadores de ruido de la altura del terreno
+	 */
+	private final CombinedNoiseGenerator heightLowNoise;
+	private final CombinedNoiseGenerator heightHighNoise;
+	private final OctaveGenerator heightSelectorNoise;
+
+	/**
+	 * Generador de ruido del grosor de la capa de tierra
+	 */
+	private final OctaveGenerator strataNoise;
+
+	/**
+	 * Generador de ruido de la arena en superficie
+	 */
+	private final OctaveGenerator sandNoise;
+
+	/**
+	 * Constructor
+	 * @param world mundo que se genera, con la semilla y el tamaño ya establecidos
+	 */
+	ChunkGenerator(World world)
+	{
+		this.world = world;
+		streams = new RandomStreams(world.getSeed());
+		size = world.getSize();
+		minCoord = world.getBlockStorage().getMinCoord();
+		chunksPerSide = world.getBlockStorage().getChunksPerSide();
+		generated = new boolean[chunksPerSide * chunksPerSide];
+		featureCache = new LinkedHashMap<Long, Feature[]>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Long, Feature[]> eldest)
+			{
+				return size() > FEATURE_CACHE_SIZE;
+			}
+		};
+		heightLowNoise = new CombinedNoiseGenerator(world);
+		heightHighNoise = new CombinedNoiseGenerator(world);
+		heightSelectorNoise = new PerlinOctaveGenerator(world, 6);
+		strataNoise = new PerlinOctaveGenerator(world, 8);
+		sandNoise = new PerlinOctaveGenerator(world, 8);
+	}
+
+	/**
+	 * Método que indica si un chunk ya se ha generado
+	 * @param cx coordenada x del chunk (0 es el chunk de la coordenada mínima)
+	 * @param cz coordenada z del chunk
+	 * @return true si está generado
+	 */
+	boolean isGenerated(int cx, int cz)
+	{
+		return generated[cx * chunksPerSide + cz];
+	}
+
+	/**
+	 * Método que indica si el chunk que contiene una columna ya se ha generado
+	 * @param x coordenada x
+	 * @param z coordenada z
+	 * @return true si está generado, false si no o si la columna está fuera del mundo
+	 */
+	boolean isGeneratedAt(int x, int z)
+	{
+		int lx = x - minCoord;
+		int lz = z - minCoord;
+		return (lx >= 0) && (lx < size) && (lz >= 0) && (lz < size) && isGenerated(lx >> 4, lz >> 4);
+	}
+
+	/**
+	 * Método que marca un chunk como generado, p.ej. porque se ha cargado de disco
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 */
+	void markGenerated(int cx, int cz)
+	{
+		generated[cx * chunksPerSide + cz] = true;
+	}
+
+	/**
+	 * Método que genera el chunk que contiene la columna si aún no se ha generado.
+	 * Las columnas fuera del mundo se ignoran
+	 * @param x coordenada x
+	 * @param z coordenada z
+	 */
+	void ensureGenerated(int x, int z)
+	{
+		int lx = x - minCoord;
+		int lz = z - minCoord;
+
+		if ((lx >= 0) && (lx < size) && (lz >= 0) && (lz < size) && !isGenerated(lx >> 4, lz >> 4))
+		{
+			generateChunk(lx >> 4, lz >> 4);
+		}
+	}
+
+	/**
+	 * Método que genera los chunks que faltan alrededor de una columna
+	 * @param x coordenada x
+	 * @param z coordenada z
+	 * @param radius radio en chunks
+	 */
+	void generateAround(int x, int z, int radius)
+	{
+		int cx = (x - minCoord) >> 4;
+		int cz = (z - minCoord) >> 4;
+
+		for (int i = Math.max(0, cx - radius); i <= Math.min(chunksPerSide - 1, cx + radius); i++)
+		{
+			for (int j = Math.max(0, cz - radius); j <= Math.min(chunksPerSide - 1, cz + radius); j++)
+			{
+				if (!isGenerated(i, j))
+				{
+					generateChunk(i, j);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Método que genera todos los chunks que faltan. Con más de un hilo los chunks se
+	 * reparten por filas; cada chunk solo escribe en sus propias columnas, así que el
+	 * resultado es el mismo que generándolos uno a uno
+	 * @param threads número de hilos
+	 */
+	void generateAll(int threads)
+	{
+		ForkJoinPool pool = (threads > 1) ? new ForkJoinPool(threads) : null;
+
+		try
+		{
+			ParallelTerrain.forEachRow(pool, size, new ParallelTerrain.RowPass()
+			{
+				public void run(int x0, int x1)
+				{
+					for (int cx = x0 >> 4; cx < (x1 + 15) >> 4; cx++)
+					{
+						for (int cz = 0; cz < chunksPerSide; cz++)
+						{
+							if (!isGenerated(cx, cz))
+							{
+								generateChunk(cx, cz);
+							}
+						}
+					}
+				}
+			});
+		}
+
+		finally
+		{
+			if (pool != null)
+			{
+				pool.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Método que genera un chunk: alturas, estratos, cuevas, vetas, líquidos y superficie
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 */
+	private void generateChunk(int cx, int cz)
+	{
+		generated[cx * chunksPerSide + cz] = true;
+		Random drops = streams.forChunk(RandomStreams.Pass.BLOCK_DROPS, cx, cz);
+
+		int[] surface = generateStrata(cx, cz, drops);
+		for (int kind = CAVES; kind <= VEIN_MATERIAL.length; kind++)
+		{
+			carveFeatures(cx, cz, kind);
+		}
+		fillLiquids(cx, cz);
+		generateSurface(cx, cz, surface, drops, streams.forChunk(RandomStreams.Pass.SPAWNS, cx, cz));
+	}
+
+	/**
+	 * Método que calcula la altura del terreno de una columna
+	 * @param x coordenada x relativa al mínimo del mundo
+	 * @param z coordenada z relativa al mínimo del mundo
+	 * @return altura de la superficie
+	 */
+	private double columnHeight(int x, int z)
+	{
+		double heightLow = heightLowNoise.noise(x * 1.3, z * 1.3) / 6.0 - 4.0;
+		double heightHigh = heightHighNoise.noise(x * 1.3, z * 1.3) / 5.0 + 6.0;
+		double heightResult = 0.0;
+		if (heightSelectorNoise.noise(x, z, 0.5, 2) / 8.0 > 0.0)
+			heightResult = heightLow;
+		else
+			heightResult = Math.max(heightHigh, heightLow);
+		heightResult /= 2.0;
+		if (heightResult < 0.0)
+			heightResult = heightResult * 8.0 / 10.0;
+		return Math.floor(heightResult + Location.SEA_LEVEL);
+	}
+
+	/**
+	 * Método que calcula las alturas y crea los estratos de roca y tierra de un chunk
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 * @param drops números aleatorios de los bloques que sueltan material
+	 * @return altura de la superficie de cada columna del chunk, en el índice (x &lt;&lt; 4) | z
+	 */
+	private int[] generateStrata(int cx, int cz, Random drops)
+	{
+		BlockStorage blocks = world.getBlockStorage();
+		int[] surface = new int[ChunkSection.SIZE * ChunkSection.SIZE];
+
+		for (int x = cx * 16; x < chunkEnd(cx); x++)
+		{
+			for (int z = cz * 16; z < chunkEnd(cz); z++)
+			{
+				double dirtTransition = columnHeight(x, z);
+				double dirtThickness = strataNoise.noise(x, z, 0.5, 2.0) / 24 - 4;
+				double stoneTransition = dirtTransition + dirtThickness;
+				surface[((x & 15) << 4) | (z & 15)] = (int) dirtTransition;
+
+				for (int y = 0; y <= dirtTransition; y++)
+				{
+					Material material;
+					if (y == 0)
+						material = Material.BEDROCK;
+					else if (y <= stoneTransition)
+						material = Material.STONE;
+					else
+						material = Material.DIRT;
+					// los bloques contendrán item con un 50% de probabilidad
+					blocks.put(x + minCoord, y, z + minCoord, sharedBlock(material, drops.nextDouble() < 0.5));
+				}
+			}
+		}
+
+		return surface;
+	}
+
+	/**
+	 * Método que excava en un chunk las cuevas o vetas que nacen en los chunks que pueden alcanzarlo
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 * @param kind {@link #CAVES} o 1 + índice del mineral en {@link #VEIN_MATERIAL}
+	 */
+	private void carveFeatures(int cx, int cz, int kind)
+	{
+		Material material = (kind == CAVES) ? null : VEIN_MATERIAL[kind - 1];
+		double maxRadius = (kind == CAVES) ? CAVE_MAX_RADIUS : VEIN_ABUNDANCE[kind - 1] + 1;
+		double maxLength = (kind == CAVES) ? CAVE_MAX_LENGTH : VEIN_MAX_LENGTH * VEIN_ABUNDANCE[kind - 1];
+		int reach = (int) Math.ceil((maxLength + maxRadius) / 16);
+
+		for (int sx = Math.max(0, cx - reach); sx <= Math.min(chunksPerSide - 1, cx + reach); sx++)
+		{
+			for (int sz = Math.max(0, cz - reach); sz <= Math.min(chunksPerSide - 1, cz + reach); sz++)
+			{
+				for (Feature feature : features(kind, sx, sz))
+				{
+					if (feature.reaches(cx, cz, maxRadius))
+					{
+						double[] spheres = feature.walk(kind);
+
+						for (int i = 0; i < spheres.length; i += 4)
+						{
+							fillOblateSpheroid(cx, cz, spheres[i], spheres[i + 1], spheres[i + 2], spheres[i + 3], material);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Método que obtiene las cuevas o vetas que nacen en un chunk, de la caché o creándolas
+	 * @param kind {@link #CAVES} o 1 + índice del mineral en {@link #VEIN_MATERIAL}
+	 * @param sx coordenada x del chunk donde nacen
+	 * @param sz coordenada z del chunk donde nacen
+	 * @return cuevas o vetas del chunk
+	 */
+	private Feature[] features(int kind, int sx, int sz)
+	{
+		Long key = ((long) kind << 56) | ((long) sx << 28) | sz;
+		Feature[] features;
+
+		synchronized (featureCache)
+		{
+			features = featureCache.get(key);
+		}
+
+		if (features == null)
+		{
+			double maxLength;
+			double expected;
+			Random source;
+
+			if (kind == CAVES)
+			{
+				maxLength = CAVE_MAX_LENGTH;
+				expected = columns(sx, sz) * 256.0 / 8192;
+				source = streams.forChunk(RandomStreams.Pass.CAVES, sx, sz);
+			}
+
+			else
+			{
+				maxLength = VEIN_MAX_LENGTH * VEIN_ABUNDANCE[kind - 1];
+				expected = columns(sx, sz) * 256.0 * VEIN_ABUNDANCE[kind - 1] / 16384;
+				source = streams.forChunk(RandomStreams.Pass.VEINS, kind - 1, sx, sz);
+			}
+
+			features = new Feature[featureCount(source, expected)];
+
+			for (int i = 0; i < features.length; i++)
+			{
+				Random rng = new Random(source.nextLong());
+				double x = sx * 16 + rng.nextInt(chunkEnd(sx) - sx * 16);
+				double y = rng.nextInt((int) Location.UPPER_Y_VALUE);
+				double z = sz * 16 + rng.nextInt(chunkEnd(sz) - sz * 16);
+				double length = rng.nextDouble() * rng.nextDouble() * maxLength;
+				features[i] = new Feature(rng, x, y, z, length);
+			}
+
+			synchronized (featureCache)
+			{
+				// si otro hilo los ha creado a la vez, todos usan los mismos
+				Feature[] cached = featureCache.get(key);
+
+				if (cached != null)
+				{
+					features = cached;
+				}
+
+				else
+				{
+					featureCache.put(key, features);
+				}
+			}
+		}
+
+		return features;
+	}
+
+	/**
+	 * Método que vacía o sustituye los bloques de un esferoide achatado, solo dentro de un chunk
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 * @param centerX coordenada x del centro, relativa al mínimo del mundo
+	 * @param centerY coordenada y del centro
+	 * @param centerZ coordenada z del centro, relativa al mínimo del mundo
+	 * @param radius radio
+	 * @param material material de los bloques que se sustituyen, o null para vaciarlos
+	 */
+	private void fillOblateSpheroid(int cx, int cz, double centerX, double centerY, double centerZ, double radius, Material material)
+	{
+		int minX = cx * 16;
+		int minZ = cz * 16;
+
+		if ((centerX + radius < minX) || (centerX - radius >= minX + 16) || (centerZ + radius < minZ) || (centerZ - radius >= minZ + 16))
+		{
+			return;
+		}
+
+		BlockStorage blocks = world.getBlockStorage();
+		// los bloques de veta siempre contienen material
+		Block block = (material == null) ? null : sharedBlock(material, true);
+
+		for (double x = centerX - radius; x < centerX + radius; x += 1.0)
+		{
+			int bx = BlockStorage.floor(x);
+			if ((bx < minX) || (bx >= minX + 16))
+				continue;
+			for (double y = centerY - radius; y < centerY + radius; y += 1.0)
+			{
+				for (double z = centerZ - radius; z < centerZ + radius; z += 1.0)
+				{
+					int bz = BlockStorage.floor(z);
+					if ((bz < minZ) || (bz >= minZ + 16))
+						continue;
+					double dx = x - centerX;
+					double dy = y - centerY;
+					double dz = z - centerZ;
+
+					if ((dx * dx + 2 * dy * dy + dz * dz) < radius * radius)
+					{
+						int by = BlockStorage.floor(y);
+						if (block == null)
+							blocks.remove(bx + minCoord, by, bz + minCoord);
+						else
+							blocks.replace(bx + minCoord, by, bz + minCoord, block);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Método que crea las fuentes de agua y lava de un chunk
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 */
+	private void fillLiquids(int cx, int cz)
+	{
+		Random rng = streams.forChunk(RandomStreams.Pass.LIQUIDS, cx, cz);
+		FloodFill flood = new FloodFill(world.getBlockStorage(), null);
+		int width = chunkEnd(cx) - cx * 16;
+		int depth = chunkEnd(cz) - cz * 16;
+
+		int waterSources = featureCount(rng, columns(cx, cz) / 800.0);
+		for (int w = 0; w < waterSources; w++)
+		{
+			int x = cx * 16 + rng.nextInt(width);
+			int z = cz * 16 + rng.nextInt(depth);
+			int y = (int) Location.SEA_LEVEL - 1 - rng.nextInt(2);
+			floodFill(flood, cx, cz, Material.WATER, x, y, z);
+		}
+
+		int lavaSources = featureCount(rng, columns(cx, cz) / 2000.0);
+		for (int w = 0; w < lavaSources; w++)
+		{
+			int x = cx * 16 + rng.nextInt(width);
+			int z = cz * 16 + rng.nextInt(depth);
+			int y = (int) ((Location.SEA_LEVEL - 3) * rng.nextDouble() * rng.nextDouble());
+			floodFill(flood, cx, cz, Material.LAVA, x, y, z);
+		}
+	}
+
+	/**
+	 * Método que inunda de líquido las posiciones libres conectadas con el origen que no están
+	 * por encima de él, sin salir del chunk. Los items del chunk aún no se han creado, así
+	 * que no hay que quitarlos
+	 * @param flood relleno que se usa
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 * @param liquid líquido
+	 * @param x coordenada x del origen, relativa al mínimo del mundo
+	 * @param y coordenada y del origen
+	 * @param z coordenada z del origen, relativa al mínimo del mundo
+	 */
+	private void floodFill(FloodFill flood, int cx, int cz, Material liquid, int x, int y, int z)
+	{
+		flood.fill(sharedBlock(liquid, false), x + minCoord, y, z + minCoord, cx * 16 + minCoord, cz * 16 + minCoord,
+			chunkEnd(cx) - 1 + minCoord, chunkEnd(cz) - 1 + minCoord, world.getLiquidVolumeCap());
+	}
+
+	/**
+	 * Método que crea la superficie del chunk y las criaturas e items que hay sobre ella, y
+	 * guarda en el mundo la altura del bloque más alto de cada columna
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 * @param surface altura de la superficie de cada columna, de {@link #generateStrata}
+	 * @param drops números aleatorios de los bloques que sueltan material
+	 * @param rng números aleatorios de las criaturas e items
+	 */
+	private void generateSurface(int cx, int cz, int[] surface, Random drops, Random rng)
+	{
+		BlockStorage blocks = world.getBlockStorage();
+		LongMap<ItemStack> items = world.getItemMap();
+		CreatureIndex creatures = world.getCreatureIndex();
+		double entitySpawnChance = 0.05;
+		double itemsSpawnChance = 0.10;
+		double foodChance = 0.8;
+		double toolChance = 0.1;
+
+		for (int x = cx * 16; x < chunkEnd(cx); x++)
+		{
+			for (int z = cz * 16; z < chunkEnd(cz); z++)
+			{
+				boolean sandChance = sandNoise.noise(x, z, 0.5, 2.0) > 8.0;
+				int wx = x + minCoord;
+				int wz = z + minCoord;
+				int y = surface[((x & 15) << 4) | (z & 15)];
+				blocks.put(wx, y, wz, sharedBlock(sandChance ? Material.SAND : Material.GRASS, drops.nextDouble() < 0.5));
+				world.setColumnHeight(wx, wz, topBlock(wx, y, wz));
+
+				if (y >= Location.UPPER_Y_VALUE)
+				{
+					// no hay posiciones más arriba: no se crean entidades ni items
+					continue;
+				}
+
+				long above = LocationKey.pack(wx, y + 1, wz);
+
+				if (rng.nextDouble() < entitySpawnChance)
+				{
+					Location aboveSurface = new Location(world, wx, y + 1, wz);
+					double entityHealth = rng.nextInt((int) LivingEntity.MAX_HEALTH) + 1;
+					// generamos Monster (75%) o Animal (25%) de las veces
+					Creature creature;
+					if (rng.nextDouble() < 0.75)
+						creature = new Monster(aboveSurface, entityHealth);
+					else
+						creature = new Animal(aboveSurface, entityHealth);
+					// los mapas del mundo son compartidos por todos los chunks
+					synchronized (creatures)
+					{
+						creatures.put(above, creature);
+					}
+				}
+
+				else if (rng.nextDouble() < itemsSpawnChance)
+				{
+					Material itemMaterial;
+					int amount = 1;
+					double rand = rng.nextDouble();
+					if (rand < foodChance)
+					{
+						itemMaterial = Material.getRandomItem(rng, 8, 11);
+						amount = rng.nextInt(5) + 1;
+					}
+					else if (rand < foodChance + toolChance)
+						itemMaterial = Material.getRandomItem(rng, 12, 13);
+					else
+						itemMaterial = Material.getRandomItem(rng, 14, 15);
+
+					try
+					{
+						ItemStack stack = new ItemStack(itemMaterial, amount);
+						synchronized (items)
+						{
+							items.put(above, stack);
+						}
+					}
+
+					catch (StackSizeException e)
+					{
+						// no se producirá
+						throw new RuntimeException(e);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Método que busca el bloque más alto de una columna recién generada. Por encima de la
+	 * superficie solo puede haber agua o lava, que nunca sube del nivel del mar
+	 * @param x coordenada x
+	 * @param surface altura de la superficie
+	 * @param z coordenada z
+	 * @return altura del bloque más alto
+	 */
+	private int topBlock(int x, int surface, int z)
+	{
+		BlockStorage blocks = world.getBlockStorage();
+
+		for (int y = (int) Location.SEA_LEVEL - 1; y > surface; y--)
+		{
+			if (blocks.containsKey(x, y, z))
+			{
+				return y;
+			}
+		}
+
+		return surface;
+	}
+
+	/**
+	 * Método que convierte un número esperado de elementos en un número entero,
+	 * redondeando la parte decimal al azar
+	 * @param rng números aleatorios
+	 * @param expected número esperado
+	 * @return número de elementos
+	 */
+	private static int featureCount(Random rng, double expected)
+	{
+		int n = (int) expected;
+		if (rng.nextDouble() < expected - n)
+			n++;
+		return n;
+	}
+
+	/**
+	 * Método que calcula el número de columnas del mundo que tiene un chunk
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 * @return número de columnas
+	 */
+	private int columns(int cx, int cz)
+	{
+		return (chunkEnd(cx) - cx * 16) * (chunkEnd(cz) - cz * 16);
+	}
+
+	/**
+	 * Método que calcula el límite de un chunk en un eje, sin salir del mundo
+	 * @param c coordenada del chunk en el eje
+	 * @return primera coordenada relativa al mínimo del mundo que ya no es del chunk
+	 */
+	private int chunkEnd(int c)
+	{
+		return Math.min(size, c * 16 + 16);
+	}
+
+	/**
+	 * Getter de los bloques compartidos
+	 * @param type material de bloque
+	 * @param dropsSelf indica si el bloque suelta una unidad de su material
+	 * @return bloque compartido
+	 */
+	private static Block sharedBlock(Material type, boolean dropsSelf)
+	{
+		try
+		{
+			return BlockFactory.sharedBlock(type, dropsSelf);
+		}
+
+		catch (WrongMaterialException e)
+		{
+			// no sucederá: solo se usan materiales de bloque
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Cueva o veta: punto de origen y longitud. El recorrido se calcula la primera vez que
+	 * alcanza a un chunk que se genera, porque la mayoría son cortas y no salen de su zona
+	 */
+	private static class Feature
+	{
+		/**
+		 * Números aleatorios del recorrido, null cuando ya se ha calculado
+		 */
+		private Random rng;
+
+		/**
+		 * Origen, relativo al mínimo del mundo
+		 */
+		private final double x;
+		private final double y;
+		private final double z;
+
+		/**
+		 * Número de pasos del recorrido
+		 */
+		private final double length;
+
+		/**
+		 * Centro y radio de cada esfera del recorrido
+		 */
+		private double[] spheres;
+
+		/**
+		 * Constructor
+		 * @param rng números aleatorios del recorrido
+		 * @param x coordenada x del origen
+		 * @param y coordenada y del origen
+		 * @param z coordenada z del origen
+		 * @param length número de pasos
+		 */
+		Feature(Random rng, double x, double y, double z, double length)
+		{
+			this.rng = rng;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.length = length;
+		}
+
+		/**
+		 * Método que comprueba si el recorrido puede llegar a un chunk
+		 * @param cx coordenada x del chunk
+		 * @param cz coordenada z del chunk
+		 * @param maxRadius radio máximo de las esferas
+		 * @return true si el chunk está al alcance (cada paso avanza una unidad)
+		 */
+		boolean reaches(int cx, int cz, double maxRadius)
+		{
+			double dx = Math.max(0, Math.max(cx * 16 - x, x - (cx * 16 + 16)));
+			double dz = Math.max(0, Math.max(cz * 16 - z, z - (cz * 16 + 16)));
+			double distance = length + maxRadius;
+			return dx * dx + dz * dz <= distance * distance;
+		}
+
+		/**
+		 * Método que obtiene las esferas del recorrido, calculándolas la primera vez. Está
+		 * sincronizado porque varios chunks pueden pedirlo a la vez
+		 * @param kind {@link ChunkGenerator#CAVES} o 1 + índice del mineral en VEIN_MATERIAL
+		 * @return centro y radio de cada esfera
+		 */
+		synchronized double[] walk(int kind)
+		{
+			if (spheres == null)
+			{
+				spheres = (kind == CAVES) ? walkCave() : walkVein(VEIN_ABUNDANCE[kind - 1]);
+				rng = null;
+			}
+
+			return spheres;
+		}
+
+		/**
+		 * Método que recorre una cueva
+		 * @return centro y radio de cada esfera que se excava
+		 */
+		private double[] walkCave()
+		{
+			double[] out = new double[4 * (int) length];
+			int n = 0;
+			double x = this.x;
+			double y = this.y;
+			double z = this.z;
+			//cave direction is given by two angles and corresponding rate of change in those angles
+			double theta = rng.nextDouble() * Math.PI * 2;
+			double deltaTheta = 0.0;
+			double phi = rng.nextDouble() * Math.PI * 2;
+			double deltaPhi = 0.0;
+			double caveRadius = rng.nextDouble() * rng.nextDouble();
+
+			for (int i = 1; i <= (int) length; i++)
+			{
+				x += Math.sin(theta) * Math.cos(phi);
+				y += Math.cos(theta) * Math.cos(phi);
+				z += Math.sin(phi);
+				theta += deltaTheta * 0.2;
+				deltaTheta *= 0.9;
+				deltaTheta += rng.nextDouble();
+				deltaTheta -= rng.nextDouble();
+				phi /= 2.0;
+				phi += deltaPhi / 4.0;
+				deltaPhi *= 0.75;
+				deltaPhi += rng.nextDouble();
+				deltaPhi -= rng.nextDouble();
+				if (rng.nextDouble() >= 0.25)
+				{
+					out[n++] = x + (rng.nextDouble() * 4.0 - 2.0) * 0.2;
+					out[n++] = y + (rng.nextDouble() * 4.0 - 2.0) * 0.2;
+					out[n++] = z + (rng.nextDouble() * 4.0 - 2.0) * 0.2;
+					double radius = (Location.UPPER_Y_VALUE - out[n - 2]) / Location.UPPER_Y_VALUE;
+					radius = 1.2 + (radius * 3.5 + 1) * caveRadius;
+					out[n++] = radius * Math.sin(i * Math.PI / length);
+				}
+			}
+
+			return Arrays.copyOf(out, n);
+		}
+
+		/**
+		 * Método que recorre una veta
+		 * @param abundance abundancia del mineral
+		 * @return centro y radio de cada esfera que se rellena
+		 */
+		private double[] walkVein(double abundance)
+		{
+			double[] out = new double[4 * (int) length];
+			int n = 0;
+			double x = this.x;
+			double y = this.y;
+			double z = this.z;
+			double theta = rng.nextDouble() * Math.PI * 2;
+			double deltaTheta = 0.0;
+			double phi = rng.nextDouble() * Math.PI * 2;
+			double deltaPhi = 0.0;
+
+			for (int len = 0; len < (int) length; len++)
+			{
+				x += Math.sin(theta) * Math.cos(phi);
+				y += Math.cos(theta) * Math.cos(phi);
+				z += Math.sin(phi);
+				theta += deltaTheta * 0.2;
+				deltaTheta *= 0.9;
+				deltaTheta += rng.nextDouble();
+				deltaTheta -= rng.nextDouble();
+				phi /= 2.0;
+				phi += deltaPhi / 4.0;
+				deltaPhi *= 0.9; // 0.9 for veins
+				deltaPhi += rng.nextDouble();
+				deltaPhi -= rng.nextDouble();
+				out[n++] = x;
+				out[n++] = y;
+				out[n++] = z;
+				out[n++] = abundance * Math.sin(len * Math.PI / length) + 1;
+			}
+
+			return out;
+		}
+	}
+}
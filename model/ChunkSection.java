@@ -0,0 +1,356 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Sección de 16x16x16 bloques de un chunk. Guarda un índice pequeño por bloque
+ * que apunta a la paleta de bloques de la propia sección
+ * @author Jose MV
+ */
+class ChunkSection
+{
+	/**
+	 * Lado de la sección en bloques
+	 */
+	static final int SIZE = 16;
+
+	/**
+	 * Número de bloques de la sección
+	 */
+	static final int VOLUME = SIZE * SIZE * SIZE;
+
+	/**
+	 * Número máximo de entradas de paleta con índices de un byte
+	 */
+	private static final int BYTE_PALETTE_LIMIT = 256;
+
+	/**
+	 * Paleta de bloques. La entrada 0 representa una posición vacía
+	 */
+	private Block[] palette;
+
+	/**
+	 * Número de posiciones que usan cada entrada de la paleta
+	 */
+	private int[] references;
+
+	/**
+	 * Número de entradas de la paleta ocupadas (incluida la 0)
+	 */
+	private int paletteSize;
+
+	/**
+	 * Índices de paleta de un byte por bloque
+	 */
+	private byte[] indices;
+
+	/**
+	 * Índices de paleta de dos bytes por bloque, solo si la paleta supera 256 entradas
+	 */
+	private char[] wideIndices;
+
+	/**
+	 * Número de bloques no vacíos de la sección
+	 */
+	private int blockCount;
+
+	/**
+	 * Constructor: crea una sección vacía
+	 */
+	ChunkSection()
+	{
+		palette = new Block[4];
+		references = new int[4];
+		paletteSize = 1;
+		references[0] = VOLUME;
+		indices = new byte[VOLUME];
+		wideIndices = null;
+		blockCount = 0;
+	}
+
+	/**
+	 * Método que crea una sección llena de un mismo bloque
+	 * @param block bloque
+	 * @return sección nueva
+	 */
+	static ChunkSection filled(Block block)
+	{
+		ChunkSection section = new ChunkSection();
+		section.palette[1] = block;
+		section.paletteSize = 2;
+		section.references[0] = 0;
+		section.references[1] = VOLUME;
+		Arrays.fill(section.indices, (byte) 1);
+		section.blockCount = VOLUME;
+		return section;
+	}
+
+	/**
+	 * Método que calcula la posición de un bloque dentro de la sección
+	 * @param x coordenada x local (0-15)
+	 * @param y coordenada y local (0-15)
+	 * @param z coordenada z local (0-15)
+	 * @return índice del bloque
+	 */
+	static int index(int x, int y, int z)
+	{
+		return (y << 8) | (z << 4) | x;
+	}
+
+	/**
+	 * Getter
+	 * @param index índice del bloque dentro de la sección
+	 * @return bloque en esa posición o null si está vacía
+	 */
+	Block get(int index)
+	{
+		return palette[paletteIndexAt(index)];
+	}
+
+	/**
+	 * Getter
+	 * @return indica si la sección no contiene ningún bloque
+	 */
+	boolean isEmpty()
+	{
+		return blockCount == 0;
+	}
+
+	/**
+	 * Getter
+	 * @return número de bloques de la sección
+	 */
+	int getBlockCount()
+	{
+		return blockCount;
+	}
+
+	/**
+	 * Setter
+	 * @param index índice del bloque dentro de la sección
+	 * @param block bloque a guardar, null para vaciar la posición
+	 * @return bloque que había antes en la posición
+	 */
+	Block set(int index, Block block)
+	{
+		int old = paletteIndexAt(index);
+		int entry = (block == null) ? 0 : paletteEntryFor(block);
+		// release() puede vaciar la entrada antigua de la paleta
+		Block previous = palette[old];
+
+		if (old != entry)
+		{
+			release(old);
+			references[entry]++;
+			setPaletteIndexAt(index, entry);
+
+			if (old == 0)
+			{
+				blockCount++;
+			}
+
+			else if (entry == 0)
+			{
+				blockCount--;
+			}
+		}
+
+		return previous;
+	}
+
+	/**
+	 * Método que escribe el identificador de estado de cada bloque en un buffer
+	 * (ver {@link BlockFactory#getStateId(Block)})
+	 * @param dst buffer destino
+	 * @param offset posición de dst donde se escribe el bloque de índice 0
+	 */
+	void exportStates(ByteBuffer dst, int offset)
+	{
+		byte[] states = new byte[paletteSize];
+
+		for (int i = 1; i < paletteSize; i++)
+		{
+			int state = BlockFactory.getStateId(palette[i]);
+			states[i] = (byte) ((state < 0) ? BlockFactory.SPECIAL_STATE : state);
+		}
+
+		for (int i = 0; i < VOLUME; i++)
+		{
+			dst.put(offset + i, states[paletteIndexAt(i)]);
+		}
+	}
+
+	/**
+	 * Método que indica si la paleta contiene bloques con estado propio
+	 * @return true si alguno de los bloques no es una instancia compartida
+	 */
+	boolean hasSpecialBlocks()
+	{
+		for (int i = 1; i < paletteSize; i++)
+		{
+			if ((palette[i] != null) && (BlockFactory.getStateId(palette[i]) < 0))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Método que crea una sección a partir de los identificadores de estado de un buffer.
+	 * Los bloques con estado propio se dejan vacíos
+	 * @param src buffer origen
+	 * @param offset posición de src del bloque de índice 0
+	 * @return sección nueva, o null si no contiene bloques
+	 */
+	static ChunkSection importStates(ByteBuffer src, int offset)
+	{
+		ChunkSection section = new ChunkSection();
+		int[] entries = new int[256];
+
+		for (int i = 0; i < VOLUME; i++)
+		{
+			int state = src.get(offset + i) & 0xFF;
+
+			if ((state != 0) && (state != BlockFactory.SPECIAL_STATE))
+			{
+				if (entries[state] == 0)
+				{
+					entries[state] = section.paletteEntryFor(BlockFactory.getBlockForState(state));
+				}
+
+				section.references[entries[state]]++;
+				section.references[0]--;
+				section.indices[i] = (byte) entries[state];
+				section.blockCount++;
+			}
+		}
+
+		return section.isEmpty() ? null : section;
+	}
+
+	/**
+	 * Método que obtiene el índice de paleta de una posición
+	 * @param index índice del bloque
+	 * @return índice de la paleta
+	 */
+	private int paletteIndexAt(int index)
+	{
+		if (wideIndices != null)
+		{
+			return wideIndices[index];
+		}
+
+		return indices[index] & 0xFF;
+	}
+
+	/**
+	 * Método que establece el índice de paleta de una posición
+	 * @param index índice del bloque
+	 * @param entry índice de la paleta
+	 */
+	private void setPaletteIndexAt(int index, int entry)
+	{
+		if (wideIndices != null)
+		{
+			wideIndices[index] = (char) entry;
+		}
+
+		else
+		{
+			indices[index] = (byte) entry;
+		}
+	}
+
+	/**
+	 * Método que libera una referencia a una entrada de la paleta
+	 * @param entry índice de la paleta
+	 */
+	private void release(int entry)
+	{
+		references[entry]--;
+
+		if ((entry != 0) && (references[entry] == 0))
+		{
+			palette[entry] = null;
+		}
+	}
+
+	/**
+	 * Método que busca el bloque en la paleta o le asigna una entrada nueva. Los bloques solo
+	 * coinciden con la misma instancia: los que no tienen estado propio llegan ya cambiados
+	 * por su instancia compartida (ver {@link BlockFactory#copyOf(Block)}), y los que lo tienen
+	 * no deben acabar compartidos entre varias posiciones
+	 * @param block bloque
+	 * @return índice de la paleta
+	 */
+	private int paletteEntryFor(Block block)
+	{
+		int free = -1;
+
+		for (int i = 1; i < paletteSize; i++)
+		{
+			if (palette[i] == null)
+			{
+				if (free < 0)
+				{
+					free = i;
+				}
+			}
+
+			else if (palette[i] == block)
+			{
+				return i;
+			}
+		}
+
+		if (free < 0)
+		{
+			free = paletteSize++;
+
+			if (free == palette.length)
+			{
+				grow();
+			}
+
+			if ((free >= BYTE_PALETTE_LIMIT) && (wideIndices == null))
+			{
+				widen();
+			}
+		}
+
+		palette[free] = block;
+
+		return free;
+	}
+
+	/**
+	 * Método que duplica la capacidad de la paleta
+	 */
+	private void grow()
+	{
+		Block[] newPalette = new Block[palette.length * 2];
+		int[] newReferences = new int[palette.length * 2];
+		System.arraycopy(palette, 0, newPalette, 0, palette.length);
+		System.arraycopy(references, 0, newReferences, 0, references.length);
+		palette = newPalette;
+		references = newReferences;
+	}
+
+	/**
+	 * Método que pasa los índices a dos bytes cuando la paleta no cabe en uno
+	 */
+	private void widen()
+	{
+		wideIndices = new char[VOLUME];
+
+		for (int i = 0; i < VOLUME; i++)
+		{
+			wideIndices[i] = (char) (indices[i] & 0xFF);
+		}
+
+		indices = null;
+	}
+}
@@ -0,0 +1,99 @@
+package model;
+
+/**
+ * Copia de los bloques de una caja del mundo, creada con
+ * {@link World#copy(BlockPos, BlockPos)} para pegarla con {@link World#paste(Clipboard, BlockPos)}.
+ * Los bloques compartidos se guardan por referencia; los que tienen estado propio se copian
+ * @author Jose MV
+ */
+public final class Clipboard
+{
+	/**
+	 * Tamaño de la copia en cada eje
+	 */
+	private final int sizeX;
+	private final int sizeY;
+	private final int sizeZ;
+
+	/**
+	 * Bloques de la copia (null en las posiciones vacías), por capas de y, filas de z y x
+	 */
+	private final Block[] blocks;
+
+	/**
+	 * Constructor
+	 * @param sizeX tamaño en x
+	 * @param sizeY tamaño en y
+	 * @param sizeZ tamaño en z
+	 */
+	Clipboard(int sizeX, int sizeY, int sizeZ)
+	{
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.sizeZ = sizeZ;
+		blocks = new Block[sizeX * sizeY * sizeZ];
+	}
+
+	/**
+	 * Getter
+	 * @return tamaño de la copia en x
+	 */
+	public int getSizeX()
+	{
+		return sizeX;
+	}
+
+	/**
+	 * Getter
+	 * @return tamaño de la copia en y
+	 */
+	public int getSizeY()
+	{
+		return sizeY;
+	}
+
+	/**
+	 * Getter
+	 * @return tamaño de la copia en z
+	 */
+	public int getSizeZ()
+	{
+		return sizeZ;
+	}
+
+	/**
+	 * Getter
+	 * @param x coordenada x relativa a la esquina mínima de la copia
+	 * @param y coordenada y relativa
+	 * @param z coordenada z relativa
+	 * @return bloque en la posición, o null si está vacía
+	 */
+	public Block getBlock(int x, int y, int z)
+	{
+		return blocks[index(x, y, z)];
+	}
+
+	/**
+	 * Setter
+	 * @param x coordenada x relativa
+	 * @param y coordenada y relativa
+	 * @param z coordenada z relativa
+	 * @param block bloque, o null
+	 */
+	void setBlock(int x, int y, int z, Block block)
+	{
+		blocks[index(x, y, z)] = block;
+	}
+
+	/**
+	 * Método que calcula la posición de un bloque en el array
+	 * @param x coordenada x relativa
+	 * @param y coordenada y relativa
+	 * @param z coordenada z relativa
+	 * @return índice
+	 */
+	private int index(int x, int y, int z)
+	{
+		return (y * sizeZ + z) * sizeX + x;
+	}
+}
@@ -0,0 +1,271 @@
+package model;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Orden del juego leída por {@link CommandReader}. Es modificable para que el lector pueda
+ * reutilizar el mismo objeto en todas las órdenes de un fichero sin crear objetos nuevos
+ * @author Jose MV
+ */
+final class Command
+{
+	/**
+	 * Tipos de orden
+	 */
+	enum Type
+	{
+		/**
+		 * Crea el mundo: semilla, tamaño y nombre. Solo en la primera línea
+		 */
+		WORLD("", 2, 2),
+
+		/**
+		 * Mueve al jugador: dx dy dz
+		 */
+		MOVE("move", 3, 3),
+
+		/**
+		 * Orienta al jugador: dx dy dz
+		 */
+		ORIENTATE("orientate", 3, 3),
+
+		/**
+		 * Usa el item de la mano: número de veces, 1 si no se indica
+		 */
+		USE_ITEM("useItem", 0, 1),
+
+		/**
+		 * Coge en la mano un item del inventario: posición
+		 */
+		SELECT_ITEM("selectItem", 1, 1),
+
+		/**
+		 * Muestra la información del jugador y su alrededor
+		 */
+		SHOW("show", 0, 0),
+
+		/**
+		 * Avanza el mundo un tick ({@link World#tick()}). Solo en el diario
+		 */
+		TICK("", 0, 0),
+
+		/**
+		 * Añade un jugador con el nombre de la orden ({@link World#addPlayer(String)}). Solo en el diario
+		 */
+		ADD_PLAYER("", 0, 0),
+
+		/**
+		 * Quita un jugador ({@link World#removePlayer(String)}): su número en el mundo. Solo en el diario
+		 */
+		REMOVE_PLAYER("", 1, 1);
+
+		/**
+		 * Nombre de la orden en el fichero, en ASCII
+		 */
+		private final byte[] name;
+
+		/**
+		 * Número mínimo y máximo de argumentos enteros
+		 */
+		private final int minArgs;
+		private final int maxArgs;
+
+		/**
+		 * Constructor
+		 * @param name nombre de la orden
+		 * @param minArgs número mínimo de argumentos enteros
+		 * @param maxArgs número máximo de argumentos enteros
+		 */
+		Type(String name, int minArgs, int maxArgs)
+		{
+			this.name = name.getBytes(StandardCharsets.US_ASCII);
+			this.minArgs = minArgs;
+			this.maxArgs = maxArgs;
+		}
+
+		/**
+		 * Getter
+		 * @return nombre de la orden en ASCII
+		 */
+		byte[] getName()
+		{
+			return name;
+		}
+
+		/**
+		 * Getter
+		 * @return número mínimo de argumentos enteros
+		 */
+		int getMinArgs()
+		{
+			return minArgs;
+		}
+
+		/**
+		 * Getter
+		 * @return número máximo de argumentos enteros
+		 */
+		int getMaxArgs()
+		{
+			return maxArgs;
+		}
+	}
+
+	/**
+	 * Número máximo de argumentos enteros de cualquier orden
+	 */
+	static final int MAX_ARGS = 3;
+
+	/**
+	 * Tipo de orden, o null si la línea no es una orden válida
+	 */
+	private Type type;
+
+	/**
+	 * Argumentos enteros
+	 */
+	private final int[] args = new int[MAX_ARGS];
+
+	/**
+	 * Número de argumentos leídos
+	 */
+	private int argCount;
+
+	/**
+	 * Nombre del mundo en las órdenes {@link Type#WORLD}, o del jugador en las {@link Type#ADD_PLAYER}
+	 */
+	private String name;
+
+	/**
+	 * Número del jugador que hace la acción en {@link World#getPlayerArray()}, solo en las
+	 * acciones leídas del diario
+	 */
+	private int player;
+
+	/**
+	 * Número de línea de la orden, desde 1
+	 */
+	private long line;
+
+	/**
+	 * Getter
+	 * @return tipo de orden, o null si la línea no es una orden válida
+	 */
+	Type getType()
+	{
+		return type;
+	}
+
+	/**
+	 * Getter
+	 * @param i número de argumento
+	 * @return argumento entero
+	 */
+	int getArg(int i)
+	{
+		return args[i];
+	}
+
+	/**
+	 * Getter
+	 * @param i número de argumento
+	 * @param defaultValue valor si la orden no tiene ese argumento
+	 * @return argumento entero, o el valor por defecto
+	 */
+	int getArg(int i, int defaultValue)
+	{
+		return (i < argCount) ? args[i] : defaultValue;
+	}
+
+	/**
+	 * Getter
+	 * @return número de argumentos leídos
+	 */
+	int getArgCount()
+	{
+		return argCount;
+	}
+
+	/**
+	 * Getter
+	 * @return nombre del mundo de una orden {@link Type#WORLD}, o del jugador de una {@link Type#ADD_PLAYER}
+	 */
+	String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Getter
+	 * @return número del jugador que hace la acción en {@link World#getPlayerArray()}
+	 */
+	int getPlayer()
+	{
+		return player;
+	}
+
+	/**
+	 * Getter
+	 * @return número de línea de la orden
+	 */
+	long getLine()
+	{
+		return line;
+	}
+
+	/**
+	 * Método que empieza una orden nueva, sin argumentos
+	 * @param type tipo de orden, o null si no es válida
+	 * @param line número de línea
+	 */
+	void reset(Type type, long line)
+	{
+		this.type = type;
+		this.line = line;
+		argCount = 0;
+		name = null;
+		player = 0;
+	}
+
+	/**
+	 * Método que añade un argumento entero
+	 * @param value argumento
+	 * @return false si la orden ya tenía todos sus argumentos
+	 */
+	boolean addArg(int value)
+	{
+		if ((type == null) || (argCount >= type.getMaxArgs()))
+		{
+			return false;
+		}
+
+		args[argCount++] = value;
+		return true;
+	}
+
+	/**
+	 * Setter
+	 * @param name nombre del mundo o del jugador
+	 */
+	void setName(String name)
+	{
+		this.name = name;
+	}
+
+	/**
+	 * Setter
+	 * @param player número del jugador que hace la acción en {@link World#getPlayerArray()}
+	 */
+	void setPlayer(int player)
+	{
+		this.player = player;
+	}
+
+	/**
+	 * Método que marca la orden como no válida
+	 */
+	void invalidate()
+	{
+		type = null;
+	}
+}
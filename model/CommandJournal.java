@@ -0,0 +1,479 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Diario de todo lo que cambia el mundo durante el juego para poder repetirlo después: las
+ * acciones de los jugadores ({@link BlockWorld#movePlayer}, {@link BlockWorld#orientatePlayer},
+ * {@link BlockWorld#useItem} y {@link BlockWorld#selectItem}), los ticks ({@link World#tick()})
+ * y los jugadores que entran y salen ({@link World#addPlayer(String)} y {@link World#removePlayer(String)}).
+ * Cada una de ellas cuenta como una acción del diario. Se guarda en un directorio con:
+ * <ul>
+ * <li>journal.dat: cabecera con la semilla, el tamaño y el nombre del mundo, y una acción
+ * detrás de otra: el tipo en un byte y, como enteros de longitud variable, el número del
+ * jugador en {@link World#getPlayerArray()} (solo en las acciones de los jugadores) y los
+ * argumentos. El nombre de los jugadores que entran va en UTF</li>
+ * <li>checkpoint-N: el mundo guardado con {@link World#save(File)} después de N acciones. Al
+ * empezar el diario se guarda el 0 y luego uno cada cierto número de acciones</li>
+ * <li>checkpoints.dat: el número de acciones y la posición en journal.dat de cada punto de
+ * control, para empezar a repetir desde el último anterior a la acción buscada</li>
+ * </ul>
+ * @author Jose MV
+ */
+final class CommandJournal
+{
+	/**
+	 * Nombre del fichero de acciones
+	 */
+	private static final String JOURNAL_FILE = "journal.dat";
+
+	/**
+	 * Nombre del fichero de puntos de control
+	 */
+	private static final String CHECKPOINTS_FILE = "checkpoints.dat";
+
+	/**
+	 * Prefijo de los directorios de puntos de control
+	 */
+	private static final String CHECKPOINT_PREFIX = "checkpoint-";
+
+	/**
+	 * Identificador del formato de journal.dat
+	 */
+	private static final int MAGIC = 0x4A434A4E; // "JCJN"
+
+	/**
+	 * Versión del formato de journal.dat
+	 */
+	private static final int VERSION = 2;
+
+	/**
+	 * Tipos de orden por su número en el diario
+	 */
+	private static final Command.Type[] TYPES = Command.Type.values();
+
+	/**
+	 * Directorio del diario
+	 */
+	private final File dir;
+
+	/**
+	 * Flujos de journal.dat y de checkpoints.dat
+	 */
+	private final DataOutputStream out;
+	private final DataOutputStream checkpoints;
+
+	/**
+	 * Número de acciones entre dos puntos de control
+	 */
+	private final int checkpointInterval;
+
+	/**
+	 * Número de bytes escritos en journal.dat
+	 */
+	private long offset;
+
+	/**
+	 * Número de acciones guardadas
+	 */
+	private long actions;
+
+	/**
+	 * Constructor: empieza un diario nuevo en el directorio, borrando el que hubiera, y guarda
+	 * el mundo como punto de control 0
+	 * @param dir directorio del diario
+	 * @param world mundo
+	 * @param checkpointInterval número de acciones entre dos puntos de control
+	 * @throws IOException si falla la escritura
+	 * @throws IllegalArgumentException si el intervalo es menor que 1
+	 */
+	CommandJournal(File dir, World world, int checkpointInterval) throws IOException
+	{
+		if (checkpointInterval < 1)
+		{
+			throw new IllegalArgumentException("El intervalo de puntos de control debe ser al menos 1: " + checkpointInterval);
+		}
+
+		if (!dir.isDirectory() && !dir.mkdirs())
+		{
+			throw new IOException("Cannot create directory " + dir);
+		}
+
+		this.dir = dir;
+		this.checkpointInterval = checkpointInterval;
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, JOURNAL_FILE))));
+		checkpoints = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, CHECKPOINTS_FILE))));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(world.getSeed());
+		out.writeInt(world.getSize());
+		out.writeUTF(world.getName());
+		offset = out.size();
+		actions = 0;
+		checkpoint(world);
+	}
+
+	/**
+	 * Getter
+	 * @return número de acciones guardadas
+	 */
+	long getActions()
+	{
+		return actions;
+	}
+
+	/**
+	 * Método que guarda una acción antes de hacerla. Si toca, guarda antes el mundo como
+	 * punto de control
+	 * @param world mundo, con el estado anterior a la acción
+	 * @param type tipo de acción, que no es {@link Command.Type#ADD_PLAYER}
+	 * @param player número del jugador en {@link World#getPlayerArray()} (se ignora si la
+	 * acción no es de un jugador)
+	 * @param arg0 primer argumento
+	 * @param arg1 segundo argumento (se ignora si el tipo tiene menos)
+	 * @param arg2 tercer argumento (se ignora si el tipo tiene menos)
+	 * @throws IOException si falla la escritura
+	 */
+	void record(World world, Command.Type type, int player, int arg0, int arg1, int arg2) throws IOException
+	{
+		begin(world, type);
+		offset += hasPlayer(type) ? writeVarInt(out, player) : 0;
+		int args = type.getMaxArgs();
+		offset += (args > 0) ? writeVarInt(out, arg0) : 0;
+		offset += (args > 1) ? writeVarInt(out, arg1) : 0;
+		offset += (args > 2) ? writeVarInt(out, arg2) : 0;
+	}
+
+	/**
+	 * Método que guarda la entrada de un jugador antes de añadirlo
+	 * @param world mundo, con el estado anterior a la entrada
+	 * @param name nombre del jugador
+	 * @throws IOException si falla la escritura
+	 */
+	void recordAddPlayer(World world, String name) throws IOException
+	{
+		begin(world, Command.Type.ADD_PLAYER);
+		int before = out.size();
+		out.writeUTF(name);
+		offset += out.size() - before;
+	}
+
+	/**
+	 * Método que cierra el diario
+	 * @throws IOException si falla la escritura
+	 */
+	void close() throws IOException
+	{
+		try
+		{
+			out.close();
+		}
+
+		finally
+		{
+			checkpoints.close();
+		}
+	}
+
+	/**
+	 * Método que empieza una acción: guarda el punto de control si toca y el tipo de la acción
+	 * @param world mundo, con el estado anterior a la acción
+	 * @param type tipo de acción
+	 * @throws IOException si falla la escritura
+	 */
+	private void begin(World world, Command.Type type) throws IOException
+	{
+		if ((actions > 0) && (actions % checkpointInterval == 0))
+		{
+			checkpoint(world);
+		}
+
+		out.writeByte(type.ordinal());
+		offset++;
+		actions++;
+	}
+
+	/**
+	 * Método que indica si un tipo de acción la hace un jugador, así que lleva su número
+	 * @param type tipo de acción
+	 * @return true si es una acción de un jugador
+	 */
+	private static boolean hasPlayer(Command.Type type)
+	{
+		return (type == Command.Type.MOVE) || (type == Command.Type.ORIENTATE) || (type == Command.Type.USE_ITEM)
+			|| (type == Command.Type.SELECT_ITEM);
+	}
+
+	/**
+	 * Método que guarda el mundo como punto de control de las acciones guardadas hasta ahora
+	 * @param world mundo
+	 * @throws IOException si falla la escritura
+	 */
+	private void checkpoint(World world) throws IOException
+	{
+		out.flush();
+		File checkpoint = new File(dir, CHECKPOINT_PREFIX + actions);
+		world.save(checkpoint);
+		checkpoints.writeLong(actions);
+		checkpoints.writeLong(offset);
+		checkpoints.flush();
+	}
+
+	/**
+	 * Método que escribe un entero con signo en zigzag y 7 bits por byte, así que los valores
+	 * pequeños (los de casi todas las acciones) ocupan un byte
+	 * @param out flujo de salida
+	 * @param value valor
+	 * @return número de bytes escritos
+	 * @throws IOException si falla la escritura
+	 */
+	private static int writeVarInt(OutputStream out, int value) throws IOException
+	{
+		int zigzag = (value << 1) ^ (value >> 31);
+		int bytes = 1;
+
+		while ((zigzag & ~0x7F) != 0)
+		{
+			out.write((zigzag & 0x7F) | 0x80);
+			zigzag >>>= 7;
+			bytes++;
+		}
+
+		out.write(zigzag);
+		return bytes;
+	}
+
+	/**
+	 * Método que lee un entero escrito con {@link #writeVarInt(OutputStream, int)}
+	 * @param in flujo de entrada
+	 * @return valor
+	 * @throws IOException si falla la lectura o el diario se termina a medias
+	 */
+	private static int readVarInt(InputStream in) throws IOException
+	{
+		int zigzag = 0;
+
+		for (int shift = 0; shift < 35; shift += 7)
+		{
+			int b = in.read();
+			if (b < 0)
+			{
+				throw new EOFException();
+			}
+
+			zigzag |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+			{
+				return (zigzag >>> 1) ^ -(zigzag & 1);
+			}
+		}
+
+		throw new IOException("Bad journal entry");
+	}
+
+	/**
+	 * Lector de un diario que empieza en el último punto de control anterior a una acción y
+	 * devuelve las acciones que faltan hasta llegar a ella
+	 */
+	static final class Reader
+	{
+		/**
+		 * Mundo del punto de control, al que se aplican las acciones
+		 */
+		private final World world;
+
+		/**
+		 * Flujo de journal.dat, colocado en la siguiente acción
+		 */
+		private final DataInputStream in;
+
+		/**
+		 * Número de acciones ya aplicadas al mundo y número de acciones que se buscan
+		 */
+		private long position;
+		private final long target;
+
+		/**
+		 * Constructor: carga el último punto de control que no pasa de la acción buscada
+		 * @param dir directorio del diario
+		 * @param target número de acciones que se quieren tener aplicadas
+		 * @param options opciones del mundo cargado
+		 * @throws IOException si falla la lectura o el diario no es válido
+		 */
+		Reader(File dir, long target, WorldOptions options) throws IOException
+		{
+			this.target = target;
+			long checkpoint = -1;
+			long start = 0;
+			DataInputStream index = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(dir, CHECKPOINTS_FILE))));
+
+			try
+			{
+				while (true)
+				{
+					long n = index.readLong();
+					long at = index.readLong();
+					if (n > target)
+					{
+						break;
+					}
+					checkpoint = n;
+					start = at;
+				}
+			}
+
+			catch (EOFException e)
+			{
+				// fin de la lista de puntos de control
+			}
+
+			finally
+			{
+				index.close();
+			}
+
+			if (checkpoint < 0)
+			{
+				throw new IOException("No checkpoint in " + dir);
+			}
+
+			DataInputStream header = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(dir, JOURNAL_FILE))));
+			long seed;
+			int size;
+
+			try
+			{
+				if ((header.readInt() != MAGIC) || (header.readInt() != VERSION))
+				{
+					throw new IOException("Bad journal file in " + dir);
+				}
+
+				seed = header.readLong();
+				size = header.readInt();
+			}
+
+			finally
+			{
+				header.close();
+			}
+
+			world = World.load(new File(dir, CHECKPOINT_PREFIX + checkpoint), options);
+			if ((world.getSeed() != seed) || (world.getSize() != size))
+			{
+				throw new IOException("Checkpoint " + checkpoint + " does not belong to the journal in " + dir);
+			}
+
+			FileInputStream file = new FileInputStream(new File(dir, JOURNAL_FILE));
+			file.getChannel().position(start);
+			in = new DataInputStream(new BufferedInputStream(file));
+			position = checkpoint;
+		}
+
+		/**
+		 * Getter
+		 * @return mundo al que se aplican las acciones
+		 */
+		World getWorld()
+		{
+			return world;
+		}
+
+		/**
+		 * Getter
+		 * @return número de acciones aplicadas (las del punto de control y las devueltas)
+		 */
+		long getPosition()
+		{
+			return position;
+		}
+
+		/**
+		 * Método que lee la siguiente acción
+		 * @param command orden donde se guarda la acción
+		 * @return false si ya se ha llegado a la acción buscada o el diario se ha terminado
+		 * @throws IOException si falla la lectura o el diario no es válido
+		 */
+		boolean next(Command command) throws IOException
+		{
+			if (position >= target)
+			{
+				return false;
+			}
+
+			int type = in.read();
+			if (type < 0)
+			{
+				return false;
+			}
+
+			if ((type >= TYPES.length) || (TYPES[type] == Command.Type.WORLD) || (TYPES[type] == Command.Type.SHOW))
+			{
+				throw new IOException("Bad journal entry " + type);
+			}
+
+			command.reset(TYPES[type], position + 1);
+			try
+			{
+				if (TYPES[type] == Command.Type.ADD_PLAYER)
+				{
+					command.setName(in.readUTF());
+				}
+
+				if (hasPlayer(TYPES[type]))
+				{
+					command.setPlayer(readPlayer());
+				}
+
+				for (int i = 0; i < TYPES[type].getMaxArgs(); i++)
+				{
+					command.addArg((TYPES[type] == Command.Type.REMOVE_PLAYER) ? readPlayer() : readVarInt(in));
+				}
+			}
+
+			catch (EOFException e)
+			{
+				// acción a medias al final del diario, p.ej. si se cerró el juego al escribirla
+				return false;
+			}
+
+			position++;
+			return true;
+		}
+
+		/**
+		 * Método que lee el número de un jugador y comprueba que está en el mundo tal y como
+		 * está después de aplicar las acciones anteriores
+		 * @return número del jugador en {@link World#getPlayerArray()}
+		 * @throws IOException si falla la lectura o no hay jugador con ese número
+		 */
+		private int readPlayer() throws IOException
+		{
+			int player = readVarInt(in);
+			if ((player < 0) || (player >= world.getPlayerArray().length))
+			{
+				throw new IOException("Bad player in journal entry: " + player);
+			}
+
+			return player;
+		}
+
+		/**
+		 * Método que cierra el diario
+		 * @throws IOException si falla el cierre
+		 */
+		void close() throws IOException
+		{
+			in.close();
+		}
+	}
+}
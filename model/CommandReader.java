@@ -0,0 +1,448 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Lector de órdenes del juego, una por línea: el nombre de la orden seguido de sus argumentos
+ * enteros separados por espacios (ver {@link Command.Type}). La primera línea puede ser la del
+ * mundo: semilla, tamaño y nombre. Se ignoran las líneas vacías y las que empiezan por '#'.
+ * <p>
+ * Los bytes se leen del canal a un buffer que se reutiliza y se analizan directamente, sin
+ * pasar por String: los nombres se comparan con los de cada tipo de orden y los números se
+ * calculan byte a byte. Cada orden se guarda en el mismo {@link Command}, así que leer un
+ * fichero no crea objetos (salvo el nombre del mundo)
+ * @author Jose MV
+ */
+final class CommandReader
+{
+	/**
+	 * Tamaño del buffer de lectura
+	 */
+	static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Longitud máxima que se guarda de un nombre de orden
+	 */
+	private static final int MAX_NAME = 16;
+
+	/**
+	 * Tipos de orden
+	 */
+	private static final Command.Type[] TYPES = Command.Type.values();
+
+	/**
+	 * Canal del que se leen las órdenes
+	 */
+	private final ReadableByteChannel channel;
+
+	/**
+	 * Buffer de lectura y su array
+	 */
+	private final ByteBuffer buffer;
+	private final byte[] data;
+
+	/**
+	 * Posición del siguiente byte del buffer y final de los bytes leídos
+	 */
+	private int pos;
+	private int limit;
+
+	/**
+	 * Indica si el canal se ha terminado
+	 */
+	private boolean eof;
+
+	/**
+	 * Número de la línea actual, desde 1
+	 */
+	private long line;
+
+	/**
+	 * Indica si todavía no se ha leído ninguna orden
+	 */
+	private boolean first;
+
+	/**
+	 * Nombre de la orden que se está leyendo
+	 */
+	private final byte[] name;
+
+	/**
+	 * Constructor
+	 * @param channel canal del que se leen las órdenes, en modo bloqueante
+	 */
+	CommandReader(ReadableByteChannel channel)
+	{
+		this.channel = channel;
+		data = new byte[BUFFER_SIZE];
+		buffer = ByteBuffer.wrap(data);
+		name = new byte[MAX_NAME];
+		pos = 0;
+		limit = 0;
+		eof = false;
+		line = 1;
+		first = true;
+	}
+
+	/**
+	 * Método que lee la siguiente orden. Si la línea no es una orden válida se lee igualmente
+	 * y la orden queda sin tipo
+	 * @param command orden donde se guarda lo leído
+	 * @return false si no quedan órdenes
+	 * @throws IOException si falla la lectura
+	 */
+	boolean next(Command command) throws IOException
+	{
+		int c = skipBlankLines();
+
+		if (c < 0)
+		{
+			return false;
+		}
+
+		if (first && ((c == '-') || isDigit(c)))
+		{
+			command.reset(Command.Type.WORLD, line);
+			readArgs(command);
+			readWorldName(command);
+		}
+
+		else
+		{
+			command.reset(readName(), line);
+			readArgs(command);
+		}
+
+		first = false;
+		endLine(command);
+
+		return true;
+	}
+
+	/**
+	 * Método que indica si en los bytes ya leídos del canal queda algo más que espacios y
+	 * saltos de línea, es decir, si la siguiente orden empieza sin esperar al canal
+	 * @return true si queda algo en el buffer
+	 */
+	boolean hasBufferedInput()
+	{
+		for (int i = pos; i < limit; i++)
+		{
+			if (!isBlank(data[i]))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Método que busca el tipo de orden de un nombre
+	 * @return tipo de orden, o null si el nombre no es de ninguna
+	 * @throws IOException si falla la lectura
+	 */
+	private Command.Type readName() throws IOException
+	{
+		int length = 0;
+		int c;
+
+		while (((c = peek()) >= 0) && !isBlank(c))
+		{
+			if (length < MAX_NAME)
+			{
+				name[length] = (byte) c;
+			}
+
+			length++;
+			pos++;
+		}
+
+		for (Command.Type type : TYPES)
+		{
+			byte[] typeName = type.getName();
+
+			if ((typeName.length == length) && (length > 0) && matches(typeName, length))
+			{
+				return type;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Método que compara el nombre leído con el de un tipo de orden
+	 * @param typeName nombre del tipo de orden
+	 * @param length longitud del nombre leído
+	 * @return true si son iguales
+	 */
+	private boolean matches(byte[] typeName, int length)
+	{
+		for (int i = 0; i < length; i++)
+		{
+			if (name[i] != typeName[i])
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Método que lee los argumentos enteros de la orden hasta el final de la línea o hasta
+	 * completar sus argumentos. La orden queda sin tipo si algún argumento no es un entero
+	 * o si faltan argumentos
+	 * @param command orden
+	 * @throws IOException si falla la lectura
+	 */
+	private void readArgs(Command command) throws IOException
+	{
+		Command.Type type = command.getType();
+
+		if (type == null)
+		{
+			return;
+		}
+
+		while (command.getArgCount() < type.getMaxArgs())
+		{
+			int c = skipSpaces();
+
+			if ((c < 0) || (c == '\n'))
+			{
+				break;
+			}
+
+			boolean negative = (c == '-');
+			if (negative)
+			{
+				pos++;
+			}
+
+			long value = 0;
+			int digits = 0;
+
+			while (((c = peek()) >= 0) && isDigit(c))
+			{
+				value = value * 10 + (c - '0');
+				if (value > Integer.MAX_VALUE + 1L)
+				{
+					command.invalidate();
+					return;
+				}
+
+				digits++;
+				pos++;
+			}
+
+			value = negative ? -value : value;
+			if ((digits == 0) || ((c >= 0) && !isBlank(c)) || (value > Integer.MAX_VALUE))
+			{
+				command.invalidate();
+				return;
+			}
+
+			command.addArg((int) value);
+		}
+
+		if (command.getArgCount() < type.getMinArgs())
+		{
+			command.invalidate();
+		}
+	}
+
+	/**
+	 * Método que lee el nombre del mundo: el resto de la línea, sin los espacios de los extremos
+	 * @param command orden {@link Command.Type#WORLD}
+	 * @throws IOException si falla la lectura
+	 */
+	private void readWorldName(Command command) throws IOException
+	{
+		if (command.getType() == null)
+		{
+			return;
+		}
+
+		byte[] bytes = new byte[MAX_NAME];
+		int length = 0;
+		int c = skipSpaces();
+
+		while ((c >= 0) && (c != '\n'))
+		{
+			if (length == bytes.length)
+			{
+				bytes = Arrays.copyOf(bytes, length * 2);
+			}
+
+			bytes[length++] = (byte) c;
+			pos++;
+			c = peek();
+		}
+
+		while ((length > 0) && isBlank(bytes[length - 1]))
+		{
+			length--;
+		}
+
+		if (length == 0)
+		{
+			command.invalidate();
+		}
+
+		else
+		{
+			command.setName(new String(bytes, 0, length, StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Método que termina la línea de una orden. Si quedan más cosas en la línea la orden
+	 * queda sin tipo
+	 * @param command orden
+	 * @throws IOException si falla la lectura
+	 */
+	private void endLine(Command command) throws IOException
+	{
+		int c = skipSpaces();
+
+		if ((c >= 0) && (c != '\n'))
+		{
+			command.invalidate();
+			skipLine();
+		}
+	}
+
+	/**
+	 * Método que salta las líneas vacías y los comentarios
+	 * @return primer byte de la siguiente línea con una orden, o -1 si no quedan
+	 * @throws IOException si falla la lectura
+	 */
+	private int skipBlankLines() throws IOException
+	{
+		while (true)
+		{
+			int c = skipSpaces();
+
+			if (c == '\n')
+			{
+				line++;
+				pos++;
+			}
+
+			else if (c == '#')
+			{
+				skipLine();
+			}
+
+			else
+			{
+				return c;
+			}
+		}
+	}
+
+	/**
+	 * Método que salta los espacios, tabuladores y retornos de carro
+	 * @return siguiente byte, o -1 si no quedan
+	 * @throws IOException si falla la lectura
+	 */
+	private int skipSpaces() throws IOException
+	{
+		int c;
+
+		while (((c = peek()) == ' ') || (c == '\t') || (c == '\r'))
+		{
+			pos++;
+		}
+
+		return c;
+	}
+
+	/**
+	 * Método que salta hasta el final de la línea, sin leer el salto de línea
+	 * @throws IOException si falla la lectura
+	 */
+	private void skipLine() throws IOException
+	{
+		int c;
+
+		while (((c = peek()) >= 0) && (c != '\n'))
+		{
+			pos++;
+		}
+	}
+
+	/**
+	 * Método que devuelve el siguiente byte sin avanzar, leyendo del canal si hace falta
+	 * @return siguiente byte, o -1 si no quedan
+	 * @throws IOException si falla la lectura
+	 */
+	private int peek() throws IOException
+	{
+		if ((pos == limit) && !fill())
+		{
+			return -1;
+		}
+
+		return data[pos] & 0xFF;
+	}
+
+	/**
+	 * Método que lee más bytes del canal
+	 * @return false si el canal se ha terminado
+	 * @throws IOException si falla la lectura
+	 */
+	private boolean fill() throws IOException
+	{
+		if (eof)
+		{
+			return false;
+		}
+
+		buffer.clear();
+		int read;
+		do
+		{
+			read = channel.read(buffer);
+		}
+		while (read == 0);
+
+		if (read < 0)
+		{
+			eof = true;
+			pos = 0;
+			limit = 0;
+			return false;
+		}
+
+		pos = 0;
+		limit = read;
+		return true;
+	}
+
+	/**
+	 * Método que indica si un byte es un dígito
+	 * @param c byte
+	 * @return true si es un dígito
+	 */
+	private static boolean isDigit(int c)
+	{
+		return (c >= '0') && (c <= '9');
+	}
+
+	/**
+	 * Método que indica si un byte separa palabras
+	 * @param c byte
+	 * @return true si es un espacio, un tabulador o un salto de línea
+	 */
+	private static boolean isBlank(int c)
+	{
+		return (c == ' ') || (c == '\t') || (c == '\r') || (c == '\n');
+	}
+}
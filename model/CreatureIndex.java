@@ -0,0 +1,466 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import model.entities.Creature;
+
+/**
+ * Índice de las criaturas del mundo. Además del mapa por posición empaquetada, agrupa las
+ * criaturas en celdas de 16x16x16 bloques para que las consultas por caja o por radio solo
+ * miren las celdas ocupadas que se cruzan con la zona, y no cada posición de su volumen
+ * @author Jose MV
+ */
+class CreatureIndex
+{
+	/**
+	 * Bits de la coordenada dentro de una celda
+	 */
+	private static final int CELL_BITS = 4;
+
+	/**
+	 * Tamaño del lado de una celda
+	 */
+	static final int CELL_SIZE = 1 << CELL_BITS;
+
+	/**
+	 * Criaturas por posición empaquetada (ver {@link LocationKey})
+	 */
+	private final LongMap<Creature> byPosition;
+
+	/**
+	 * Celdas ocupadas, por coordenadas de celda empaquetadas
+	 */
+	private final LongMap<Cell> cells;
+
+	/**
+	 * Constructor
+	 */
+	CreatureIndex()
+	{
+		byPosition = new LongMap<Creature>();
+		cells = new LongMap<Cell>();
+	}
+
+	/**
+	 * Getter
+	 * @return número de criaturas
+	 */
+	int size()
+	{
+		return byPosition.size();
+	}
+
+	/**
+	 * Getter
+	 * @param key posición empaquetada
+	 * @return criatura en la posición o null
+	 */
+	Creature get(long key)
+	{
+		return byPosition.get(key);
+	}
+
+	/**
+	 * Método que indica si hay una criatura en la posición
+	 * @param key posición empaquetada
+	 * @return true si la hay
+	 */
+	boolean containsKey(long key)
+	{
+		return byPosition.containsKey(key);
+	}
+
+	/**
+	 * Método que indica si la celda del índice que contiene una posición no tiene criaturas
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @return true si no tiene criaturas
+	 */
+	boolean isCellEmpty(int x, int y, int z)
+	{
+		return !cells.containsKey(LocationKey.pack(x >> CELL_BITS, y >> CELL_BITS, z >> CELL_BITS));
+	}
+
+	/**
+	 * Método que coloca una criatura en una posición
+	 * @param key posición empaquetada
+	 * @param creature criatura
+	 * @return criatura que había antes en la posición
+	 */
+	Creature put(long key, Creature creature)
+	{
+		Creature old = byPosition.put(key, creature);
+
+		if (old != null)
+		{
+			cells.get(cellKey(key)).remove(key);
+		}
+
+		long cellKey = cellKey(key);
+		Cell cell = cells.get(cellKey);
+
+		if (cell == null)
+		{
+			cell = new Cell();
+			cells.put(cellKey, cell);
+		}
+
+		cell.add(key, creature);
+		return old;
+	}
+
+	/**
+	 * Método que quita la criatura de una posición
+	 * @param key posición empaquetada
+	 * @return criatura que había en la posición o null
+	 */
+	Creature remove(long key)
+	{
+		Creature old = byPosition.remove(key);
+
+		if (old != null)
+		{
+			long cellKey = cellKey(key);
+			Cell cell = cells.get(cellKey);
+			cell.remove(key);
+
+			if (cell.size == 0)
+			{
+				cells.remove(cellKey);
+			}
+		}
+
+		return old;
+	}
+
+	/**
+	 * Método que mueve la criatura de una posición a otra libre
+	 * @param from posición empaquetada de origen
+	 * @param to posición empaquetada de destino
+	 * @return criatura movida o null si no había ninguna en el origen
+	 */
+	Creature move(long from, long to)
+	{
+		Creature creature = remove(from);
+
+		if (creature != null)
+		{
+			put(to, creature);
+		}
+
+		return creature;
+	}
+
+	/**
+	 * Método que elimina todas las criaturas
+	 */
+	void clear()
+	{
+		byPosition.clear();
+		cells.clear();
+	}
+
+	/**
+	 * Getter
+	 * @return copia de las posiciones empaquetadas de las criaturas
+	 */
+	long[] keys()
+	{
+		return byPosition.keys();
+	}
+
+	/**
+	 * Getter
+	 * @return copia de las criaturas
+	 */
+	Collection<Creature> values()
+	{
+		return byPosition.values();
+	}
+
+	/**
+	 * Método que recorre todas las criaturas. No se debe modificar el índice durante el recorrido
+	 * @param visitor objeto que recibe cada posición y criatura
+	 */
+	void forEach(LongMap.Visitor<? super Creature> visitor)
+	{
+		byPosition.forEach(visitor);
+	}
+
+	/**
+	 * Método que recorre las criaturas de una caja (límites incluidos). No se debe modificar
+	 * el índice durante el recorrido
+	 * @param minX coordenada x mínima
+	 * @param minY coordenada y mínima
+	 * @param minZ coordenada z mínima
+	 * @param maxX coordenada x máxima
+	 * @param maxY coordenada y máxima
+	 * @param maxZ coordenada z máxima
+	 * @param visitor objeto que recibe cada posición y criatura
+	 */
+	void forEachInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, LongMap.Visitor<? super Creature> visitor)
+	{
+		query(minX, minY, minZ, maxX, maxY, maxZ, 0, 0, 0, -1, visitor);
+	}
+
+	/**
+	 * Método que recorre las criaturas a una distancia de un punto menor o igual que el radio.
+	 * No se debe modificar el índice durante el recorrido
+	 * @param x coordenada x del centro
+	 * @param y coordenada y del centro
+	 * @param z coordenada z del centro
+	 * @param radius radio
+	 * @param visitor objeto que recibe cada posición y criatura
+	 */
+	void forEachInRadius(int x, int y, int z, double radius, LongMap.Visitor<? super Creature> visitor)
+	{
+		if (radius >= 0)
+		{
+			int r = (int) Math.floor(radius);
+			query(x - r, y - r, z - r, x + r, y + r, z + r, x, y, z, radius * radius, visitor);
+		}
+	}
+
+	/**
+	 * Método que recorre las criaturas de una caja y, si se indica, dentro de una esfera. Se
+	 * miran las celdas de la caja o, si son más, las celdas ocupadas, y se descartan las
+	 * celdas que no llegan a tocar la esfera
+	 * @param minX coordenada x mínima
+	 * @param minY coordenada y mínima
+	 * @param minZ coordenada z mínima
+	 * @param maxX coordenada x máxima
+	 * @param maxY coordenada y máxima
+	 * @param maxZ coordenada z máxima
+	 * @param x coordenada x del centro de la esfera
+	 * @param y coordenada y del centro de la esfera
+	 * @param z coordenada z del centro de la esfera
+	 * @param radius2 radio de la esfera al cuadrado, negativo si no hay esfera
+	 * @param visitor objeto que recibe cada posición y criatura
+	 */
+	private void query(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int x, int y, int z, double radius2,
+		final LongMap.Visitor<? super Creature> visitor)
+	{
+		if ((minX > maxX) || (minY > maxY) || (minZ > maxZ) || (cells.size() == 0))
+		{
+			return;
+		}
+
+		minY = Math.max(minY, 0);
+		maxY = Math.min(maxY, BlockStorage.HEIGHT - 1);
+		final int cx0 = minX >> CELL_BITS;
+		final int cy0 = minY >> CELL_BITS;
+		final int cz0 = minZ >> CELL_BITS;
+		final int cx1 = maxX >> CELL_BITS;
+		final int cy1 = maxY >> CELL_BITS;
+		final int cz1 = maxZ >> CELL_BITS;
+		final Query query = new Query(minX, minY, minZ, maxX, maxY, maxZ, x, y, z, radius2);
+		long boxCells = (long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) * (cz1 - cz0 + 1);
+
+		if (boxCells <= cells.size())
+		{
+			for (int cx = cx0; cx <= cx1; cx++)
+			{
+				for (int cy = cy0; cy <= cy1; cy++)
+				{
+					for (int cz = cz0; cz <= cz1; cz++)
+					{
+						Cell cell = cells.get(LocationKey.pack(cx, cy, cz));
+
+						if (cell != null)
+						{
+							query.visitCell(cx, cy, cz, cell, visitor);
+						}
+					}
+				}
+			}
+		}
+
+		else
+		{
+			cells.forEach(new LongMap.Visitor<Cell>()
+			{
+				public void visit(long key, Cell cell)
+				{
+					int cx = LocationKey.getX(key);
+					int cy = LocationKey.getY(key);
+					int cz = LocationKey.getZ(key);
+
+					if ((cx >= cx0) && (cx <= cx1) && (cy >= cy0) && (cy <= cy1) && (cz >= cz0) && (cz <= cz1))
+					{
+						query.visitCell(cx, cy, cz, cell, visitor);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Método que calcula la celda de una posición
+	 * @param key posición empaquetada
+	 * @return coordenadas de la celda empaquetadas
+	 */
+	private static long cellKey(long key)
+	{
+		return LocationKey.pack(LocationKey.getX(key) >> CELL_BITS, LocationKey.getY(key) >> CELL_BITS,
+			LocationKey.getZ(key) >> CELL_BITS);
+	}
+
+	/**
+	 * Zona de una consulta: una caja y, opcionalmente, una esfera
+	 */
+	private static class Query
+	{
+		/**
+		 * Límites de la caja
+		 */
+		private final int minX, minY, minZ, maxX, maxY, maxZ;
+
+		/**
+		 * Centro de la esfera
+		 */
+		private final int x, y, z;
+
+		/**
+		 * Radio de la esfera al cuadrado, negativo si no hay esfera
+		 */
+		private final double radius2;
+
+		/**
+		 * Constructor
+		 * @param minX coordenada x mínima
+		 * @param minY coordenada y mínima
+		 * @param minZ coordenada z mínima
+		 * @param maxX coordenada x máxima
+		 * @param maxY coordenada y máxima
+		 * @param maxZ coordenada z máxima
+		 * @param x coordenada x del centro
+		 * @param y coordenada y del centro
+		 * @param z coordenada z del centro
+		 * @param radius2 radio al cuadrado, negativo si no hay esfera
+		 */
+		Query(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int x, int y, int z, double radius2)
+		{
+			this.minX = minX;
+			this.minY = minY;
+			this.minZ = minZ;
+			this.maxX = maxX;
+			this.maxY = maxY;
+			this.maxZ = maxZ;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.radius2 = radius2;
+		}
+
+		/**
+		 * Método que recorre las criaturas de una celda que están dentro de la zona
+		 * @param cx coordenada x de la celda
+		 * @param cy coordenada y de la celda
+		 * @param cz coordenada z de la celda
+		 * @param cell celda
+		 * @param visitor objeto que recibe cada posición y criatura
+		 */
+		void visitCell(int cx, int cy, int cz, Cell cell, LongMap.Visitor<? super Creature> visitor)
+		{
+			if ((radius2 >= 0) && (distance2(x, cx) + distance2(y, cy) + distance2(z, cz) > radius2))
+			{
+				// la esfera no llega a la celda
+				return;
+			}
+
+			for (int i = 0; i < cell.size; i++)
+			{
+				long key = cell.keys[i];
+				int px = LocationKey.getX(key);
+				int py = LocationKey.getY(key);
+				int pz = LocationKey.getZ(key);
+
+				if ((px >= minX) && (px <= maxX) && (py >= minY) && (py <= maxY) && (pz >= minZ) && (pz <= maxZ))
+				{
+					double dx = px - x;
+					double dy = py - y;
+					double dz = pz - z;
+
+					if ((radius2 < 0) || (dx * dx + dy * dy + dz * dz <= radius2))
+					{
+						visitor.visit(key, cell.creatures[i]);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Método que calcula la distancia al cuadrado en un eje de una coordenada a una celda
+		 * @param c coordenada
+		 * @param cell coordenada de la celda en el eje
+		 * @return distancia al cuadrado al punto más cercano de la celda
+		 */
+		private static double distance2(int c, int cell)
+		{
+			int low = cell << CELL_BITS;
+			int high = low + CELL_SIZE - 1;
+			double d = (c < low) ? low - c : ((c > high) ? c - high : 0);
+			return d * d;
+		}
+	}
+
+	/**
+	 * Criaturas de una celda, en arrays paralelos sin orden
+	 */
+	private static class Cell
+	{
+		/**
+		 * Posiciones empaquetadas
+		 */
+		private long[] keys = new long[4];
+
+		/**
+		 * Criaturas
+		 */
+		private Creature[] creatures = new Creature[4];
+
+		/**
+		 * Número de criaturas
+		 */
+		private int size;
+
+		/**
+		 * Método que añade una criatura
+		 * @param key posición empaquetada
+		 * @param creature criatura
+		 */
+		void add(long key, Creature creature)
+		{
+			if (size == keys.length)
+			{
+				keys = Arrays.copyOf(keys, size * 2);
+				creatures = Arrays.copyOf(creatures, size * 2);
+			}
+
+			keys[size] = key;
+			creatures[size] = creature;
+			size++;
+		}
+
+		/**
+		 * Método que quita una criatura, moviendo la última a su hueco
+		 * @param key posición empaquetada
+		 */
+		void remove(long key)
+		{
+			for (int i = 0; i < size; i++)
+			{
+				if (keys[i] == key)
+				{
+					size--;
+					keys[i] = keys[size];
+					creatures[i] = creatures[size];
+					creatures[size] = null;
+					return;
+				}
+			}
+		}
+	}
+}
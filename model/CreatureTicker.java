@@ -0,0 +1,383 @@
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import model.entities.Creature;
+import model.entities.Monster;
+import model.entities.Player;
+
+/**
+ * Simulación de las criaturas en cada tick del mundo. Cada tick tiene dos fases:
+ * <ol>
+ * <li>Decisión: cada criatura elige a dónde moverse y si ataca a un jugador mirando el mundo
+ * tal como estaba al empezar el tick, sin modificarlo. Las criaturas se ordenan por posición
+ * empaquetada, así que cada rango de la lista es una franja del mundo, y los rangos se
+ * reparten entre los hilos.</li>
+ * <li>Resolución: en este hilo y en orden de posición, cada criatura ocupa su destino si
+ * estaba libre al empezar el tick y ninguna anterior lo ha reclamado.</li>
+ * </ol>
+ * Los números aleatorios dependen solo de la semilla, el tick y la posición de la
+ * criatura, así que el resultado es el mismo con cualquier número de hilos
+ * @author Jose MV
+ */
+class CreatureTicker
+{
+	/**
+	 * Daño que hace un monstruo a un jugador en cada tick que está a su lado, el mismo que
+	 * recibe el jugador al golpear a un monstruo sin matarlo
+	 */
+	static final double CONTACT_DAMAGE = 0.5;
+
+	/**
+	 * Distancia en x/z a la que un monstruo ve a un jugador y lo persigue
+	 */
+	static final int CHASE_RADIUS = 16;
+
+	/**
+	 * Probabilidad sobre 256 de que una criatura que no persigue se mueva en un tick
+	 */
+	private static final int WANDER_CHANCE = 64;
+
+	/**
+	 * Número mínimo de criaturas que decide cada tarea antes de dividirse
+	 */
+	private static final int TASK_SIZE = 1024;
+
+	/**
+	 * Desplazamientos x/z de los 8 vecinos horizontales
+	 */
+	private static final int[] WANDER_DX = { 1, 1, 0, -1, -1, -1, 0, 1 };
+	private static final int[] WANDER_DZ = { 0, 1, 1, 1, 0, -1, -1, -1 };
+
+	/**
+	 * Cambios de altura de un paso, por orden de preferencia: mismo nivel, subir y bajar
+	 */
+	private static final int[] STEP_DY = { 0, 1, -1 };
+
+	/**
+	 * Mundo que se simula
+	 */
+	private final World world;
+
+	/**
+	 * Números aleatorios de las decisiones
+	 */
+	private final RandomStreams streams;
+
+	/**
+	 * Constructor
+	 * @param world mundo que se simula
+	 */
+	CreatureTicker(World world)
+	{
+		this.world = world;
+		streams = new RandomStreams(world.getSeed());
+	}
+
+	/**
+	 * Método que avanza un tick a todas las criaturas
+	 * @param tick número del tick
+	 * @param pool hilos de la fase de decisión, o null para decidir en este hilo
+	 * @return número de criaturas que se han movido
+	 */
+	int tick(long tick, ForkJoinPool pool)
+	{
+		CreatureIndex creatures = world.getCreatureIndex();
+		long[] keys = creatures.keys();
+		Arrays.sort(keys);
+		long[] targets = new long[keys.length];
+		int[] attacks = new int[keys.length];
+		Arrays.fill(attacks, -1);
+		Player[] players = world.getPlayerArray();
+		BlockPos[] playerPos = new BlockPos[players.length];
+		for (int i = 0; i < players.length; i++)
+		{
+			playerPos[i] = players[i].isDead() ? null : players[i].getBlockPos();
+		}
+		DecideTask task = new DecideTask(this, tick, playerPos, keys, targets, attacks, 0, keys.length);
+
+		if ((pool == null) || (keys.length <= TASK_SIZE))
+		{
+			task.compute();
+		}
+
+		else
+		{
+			pool.invoke(task);
+		}
+
+		return resolve(keys, targets, attacks, players);
+	}
+
+	/**
+	 * Método que aplica las decisiones de un tick en orden de posición
+	 * @param keys posiciones empaquetadas de las criaturas, ordenadas
+	 * @param targets destino de cada criatura (su posición si no se mueve)
+	 * @param attacks jugador al que ataca cada criatura, -1 si no ataca
+	 * @param players jugadores del mundo
+	 * @return número de criaturas que se han movido
+	 */
+	private int resolve(long[] keys, long[] targets, int[] attacks, Player[] players)
+	{
+		CreatureIndex creatures = world.getCreatureIndex();
+		LongMap<Boolean> claimed = new LongMap<Boolean>();
+		double[] damage = new double[players.length];
+		int moved = 0;
+
+		for (int i = 0; i < keys.length; i++)
+		{
+			if (attacks[i] >= 0)
+			{
+				damage[attacks[i]] += CONTACT_DAMAGE;
+			}
+
+			else if ((targets[i] != keys[i]) && !creatures.containsKey(targets[i]) && !claimed.containsKey(targets[i]))
+			{
+				// los destinos ocupados al empezar el tick no se pueden reclamar, así que la
+				// criatura que estaba en targets[i] no ha podido irse y dejarlo libre en este orden
+				claimed.put(targets[i], Boolean.TRUE);
+				Creature creature = creatures.move(keys[i], targets[i]);
+				creature.moveTo(LocationKey.getX(targets[i]), LocationKey.getY(targets[i]), LocationKey.getZ(targets[i]));
+				moved++;
+			}
+		}
+
+		for (int i = 0; i < players.length; i++)
+		{
+			if (damage[i] > 0)
+			{
+				players[i].setHealth(players[i].getHealth() - damage[i]);
+			}
+		}
+
+		return moved;
+	}
+
+	/**
+	 * Método que decide qué hace una criatura en un tick. No modifica el mundo. Los monstruos
+	 * persiguen y atacan al jugador vivo más cercano
+	 * @param tick número del tick
+	 * @param key posición empaquetada de la criatura
+	 * @param playerPos posición de cada jugador, null si está muerto
+	 * @param attack array donde se indica a qué jugador ataca
+	 * @param index posición de la criatura en attack
+	 * @return destino de la criatura, key si no se mueve
+	 */
+	private long decide(long tick, long key, BlockPos[] playerPos, int[] attack, int index)
+	{
+		Creature creature = world.getCreatureIndex().get(key);
+		int x = LocationKey.getX(key);
+		int y = LocationKey.getY(key);
+		int z = LocationKey.getZ(key);
+		int nearest = (creature instanceof Monster) ? nearestPlayer(playerPos, x, y, z) : -1;
+
+		if (nearest >= 0)
+		{
+			int dx = playerPos[nearest].getX() - x;
+			int dy = playerPos[nearest].getY() - y;
+			int dz = playerPos[nearest].getZ() - z;
+
+			if ((Math.abs(dx) <= 1) && (Math.abs(dy) <= 1) && (Math.abs(dz) <= 1))
+			{
+				attack[index] = nearest;
+				return key;
+			}
+
+			if ((Math.abs(dx) <= CHASE_RADIUS) && (Math.abs(dz) <= CHASE_RADIUS))
+			{
+				int sx = Integer.signum(dx);
+				int sz = Integer.signum(dz);
+				long target = step(x, y, z, sx, sz);
+
+				if ((target == key) && (sx != 0) && (sz != 0))
+				{
+					// en diagonal no se puede: se prueba en cada eje
+					target = step(x, y, z, sx, 0);
+					if (target == key)
+						target = step(x, y, z, 0, sz);
+				}
+
+				return target;
+			}
+		}
+
+		long random = streams.hash(RandomStreams.Pass.CREATURES, tick, key);
+
+		if ((random & 0xFF) < WANDER_CHANCE)
+		{
+			int direction = (int) ((random >>> 8) & 7);
+			return step(x, y, z, WANDER_DX[direction], WANDER_DZ[direction]);
+		}
+
+		return key;
+	}
+
+	/**
+	 * Método que busca el jugador vivo más cercano a una posición, contando la distancia como
+	 * la mayor diferencia en un eje. Si hay varios a la misma distancia se elige el primero
+	 * @param playerPos posición de cada jugador, null si está muerto
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @return número del jugador, -1 si no hay ninguno vivo
+	 */
+	private static int nearestPlayer(BlockPos[] playerPos, int x, int y, int z)
+	{
+		int nearest = -1;
+		int best = Integer.MAX_VALUE;
+
+		for (int i = 0; i < playerPos.length; i++)
+		{
+			if (playerPos[i] != null)
+			{
+				int distance = Math.max(Math.abs(playerPos[i].getX() - x),
+					Math.max(Math.abs(playerPos[i].getY() - y), Math.abs(playerPos[i].getZ() - z)));
+
+				if (distance < best)
+				{
+					nearest = i;
+					best = distance;
+				}
+			}
+		}
+
+		return nearest;
+	}
+
+	/**
+	 * Método que busca dónde quedaría una criatura al dar un paso horizontal: al mismo
+	 * nivel, subiendo un bloque o bajando uno, siempre sobre suelo sólido
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @param dx paso en x
+	 * @param dz paso en z
+	 * @return destino empaquetado, o la posición de partida si no puede dar el paso
+	 */
+	private long step(int x, int y, int z, int dx, int dz)
+	{
+		int nx = x + dx;
+		int nz = z + dz;
+
+		if (((dx == 0) && (dz == 0)) || !Neighbourhood.isInside(world, nx, y, nz))
+		{
+			return LocationKey.pack(x, y, z);
+		}
+
+		for (int dy : STEP_DY)
+		{
+			if (canStand(nx, y + dy, nz))
+			{
+				return LocationKey.pack(nx, y + dy, nz);
+			}
+		}
+
+		return LocationKey.pack(x, y, z);
+	}
+
+	/**
+	 * Método que indica si una criatura puede estar en una posición: según
+	 * {@link PathFinder#isWalkable(World, int, int, int)} y sin ningún jugador
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @return true si puede estar
+	 */
+	private boolean canStand(int x, int y, int z)
+	{
+		if ((y < 1) || (y >= BlockStorage.HEIGHT))
+		{
+			return false;
+		}
+
+		if (world.isPlayerAt(x, y, z))
+		{
+			return false;
+		}
+
+		return PathFinder.isWalkable(world, x, y, z);
+	}
+
+	/**
+	 * Tarea fork-join de la fase de decisión sobre un rango de criaturas ordenadas por
+	 * posición, que se divide por la mitad hasta quedar con pocas criaturas
+	 */
+	private static class DecideTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Simulación
+		 */
+		private final CreatureTicker ticker;
+
+		/**
+		 * Número del tick
+		 */
+		private final long tick;
+
+		/**
+		 * Posición de cada jugador, null si está muerto
+		 */
+		private final BlockPos[] playerPos;
+
+		/**
+		 * Posiciones de las criaturas, destinos y ataques
+		 */
+		private final long[] keys;
+		private final long[] targets;
+		private final int[] attacks;
+
+		/**
+		 * Rango de criaturas de la tarea
+		 */
+		private final int from;
+		private final int to;
+
+		/**
+		 * Constructor
+		 * @param ticker simulación
+		 * @param tick número del tick
+		 * @param playerPos posición de cada jugador
+		 * @param keys posiciones de las criaturas
+		 * @param targets destinos
+		 * @param attacks ataques
+		 * @param from primera criatura
+		 * @param to criatura siguiente a la última
+		 */
+		DecideTask(CreatureTicker ticker, long tick, BlockPos[] playerPos, long[] keys, long[] targets, int[] attacks, int from, int to)
+		{
+			this.ticker = ticker;
+			this.tick = tick;
+			this.playerPos = playerPos;
+			this.keys = keys;
+			this.targets = targets;
+			this.attacks = attacks;
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * Método que ejecuta la tarea
+		 */
+		protected void compute()
+		{
+			if (to - from <= TASK_SIZE)
+			{
+				for (int i = from; i < to; i++)
+				{
+					targets[i] = ticker.decide(tick, keys[i], playerPos, attacks, i);
+				}
+			}
+
+			else
+			{
+				int mid = (from + to) >>> 1;
+				invokeAll(new DecideTask(ticker, tick, playerPos, keys, targets, attacks, from, mid),
+					new DecideTask(ticker, tick, playerPos, keys, targets, attacks, mid, to));
+			}
+		}
+	}
+}
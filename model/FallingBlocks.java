@@ -0,0 +1,140 @@
+package model;
+
+/**
+ * Gravedad de la arena. Solo se revisan las posiciones donde ha cambiado algo: la arena que
+ * se coloca y el bloque de encima de los que se quitan, que se guardan en una cola sin
+ * repetidos. Cuando una arena no tiene nada debajo cae con toda la columna de arena que
+ * tiene encima de una vez, hasta el primer bloque (o jugador) que encuentra
+ * @author Jose MV
+ */
+class FallingBlocks
+{
+	/**
+	 * Mundo
+	 */
+	private final World world;
+
+	/**
+	 * Posiciones pendientes de revisar
+	 */
+	private final UpdateQueue pending;
+
+	/**
+	 * Constructor
+	 * @param world mundo
+	 */
+	FallingBlocks(World world)
+	{
+		this.world = world;
+		pending = new UpdateQueue();
+	}
+
+	/**
+	 * Método que indica si un bloque cae cuando no tiene nada debajo
+	 * @param block bloque
+	 * @return true si cae
+	 */
+	static boolean hasGravity(Block block)
+	{
+		return (block != null) && (block.getType() == Material.SAND);
+	}
+
+	/**
+	 * Getter
+	 * @return número de posiciones pendientes de revisar
+	 */
+	int getPending()
+	{
+		return pending.size();
+	}
+
+	/**
+	 * Getter
+	 * @return cola de posiciones pendientes de revisar, para guardarla y cargarla con el mundo
+	 */
+	UpdateQueue getQueue()
+	{
+		return pending;
+	}
+
+	/**
+	 * Método que avisa de que se ha colocado un bloque: si es arena puede caer
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @param block bloque colocado
+	 */
+	void blockAdded(int x, int y, int z, Block block)
+	{
+		if (hasGravity(block))
+		{
+			pending.add(x, y, z);
+		}
+	}
+
+	/**
+	 * Método que avisa de que se ha quitado un bloque: el de encima puede caer
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 */
+	void blockRemoved(int x, int y, int z)
+	{
+		if (y + 1 < BlockStorage.HEIGHT)
+		{
+			pending.add(x, y + 1, z);
+		}
+	}
+
+	/**
+	 * Método que hace caer las columnas de arena pendientes
+	 * @return número de columnas que han caído
+	 */
+	int tick()
+	{
+		int updates = pending.size();
+		int fallen = 0;
+		BlockStorage blocks = world.getBlockStorage();
+
+		for (int i = 0; i < updates; i++)
+		{
+			long key = pending.poll();
+			int x = LocationKey.getX(key);
+			int y = LocationKey.getY(key);
+			int z = LocationKey.getZ(key);
+
+			if ((y > 0) && hasGravity(blocks.get(x, y, z)) && isEmpty(blocks, x, y - 1, z))
+			{
+				int top = y;
+				while ((top + 1 < BlockStorage.HEIGHT) && hasGravity(blocks.get(x, top + 1, z)))
+				{
+					top++;
+				}
+
+				int landing = y - 1;
+				while ((landing > 0) && isEmpty(blocks, x, landing - 1, z))
+				{
+					landing--;
+				}
+
+				world.dropColumn(x, z, y, top, y - landing);
+				fallen++;
+			}
+		}
+
+		return fallen;
+	}
+
+	/**
+	 * Método que indica si la arena puede caer a una posición: no hay bloque ni jugador
+	 * @param blocks bloques del mundo
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @return true si puede caer
+	 */
+	private boolean isEmpty(BlockStorage blocks, int x, int y, int z)
+	{
+		return !blocks.containsKey(x, y, z) && !world.isPlayerAt(x, y, z);
+	}
+}
@@ -0,0 +1,155 @@
+package model;
+
+/**
+ * Relleno de líquido iterativo. Desde el origen se extiende a las posiciones libres
+ * adyacentes (incluidas las diagonales) que no están por encima de la posición de la que
+ * vienen, en orden de anchura. Las posiciones pendientes se guardan empaquetadas en una
+ * cola circular de longs que se reutiliza entre rellenos, y cada posición se visita una
+ * sola vez porque se llena al encolarla
+ * @author Jose MV
+ */
+class FloodFill
+{
+	/**
+	 * Capacidad inicial de la cola
+	 */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * Bloques del mundo
+	 */
+	private final BlockStorage blocks;
+
+	/**
+	 * Items del mundo, que desaparecen donde entra el líquido, o null si no hay que quitarlos
+	 */
+	private final LongMap<ItemStack> items;
+
+	/**
+	 * Cola circular de posiciones pendientes (ver {@link LocationKey})
+	 */
+	private long[] queue;
+
+	/**
+	 * Posición del primer elemento de la cola
+	 */
+	private int head;
+
+	/**
+	 * Número de elementos de la cola
+	 */
+	private int count;
+
+	/**
+	 * Constructor
+	 * @param blocks bloques del mundo
+	 * @param items items del mundo, o null si no hay que quitarlos
+	 */
+	FloodFill(BlockStorage blocks, LongMap<ItemStack> items)
+	{
+		this.blocks = blocks;
+		this.items = items;
+		queue = new long[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Método que rellena de líquido desde una posición, sin salir de un rectángulo x/z
+	 * @param liquid bloque de líquido
+	 * @param x coordenada x del origen
+	 * @param y coordenada y del origen
+	 * @param z coordenada z del origen
+	 * @param minX coordenada x mínima
+	 * @param minZ coordenada z mínima
+	 * @param maxX coordenada x máxima (incluida)
+	 * @param maxZ coordenada z máxima (incluida)
+	 * @param cap número máximo de posiciones que se llenan, 0 sin límite
+	 * @return número de posiciones llenadas
+	 */
+	int fill(Block liquid, int x, int y, int z, int minX, int minZ, int maxX, int maxZ, int cap)
+	{
+		if ((x < minX) || (x > maxX) || (z < minZ) || (z > maxZ) || (y < 0) || (y >= BlockStorage.HEIGHT)
+			|| blocks.containsKey(x, y, z))
+		{
+			return 0;
+		}
+
+		int limit = (cap > 0) ? cap : Integer.MAX_VALUE;
+		int filled = 1;
+		head = 0;
+		count = 0;
+		put(liquid, x, y, z);
+
+		while ((count > 0) && (filled < limit))
+		{
+			long p = queue[head];
+			head = (head + 1) & (queue.length - 1);
+			count--;
+			int px = LocationKey.getX(p);
+			int py = LocationKey.getY(p);
+			int pz = LocationKey.getZ(p);
+
+			for (int ny = py - 1; (ny <= py) && (filled < limit); ny++)
+			{
+				if (ny < 0)
+				{
+					continue;
+				}
+
+				for (int nx = Math.max(minX, px - 1); (nx <= Math.min(maxX, px + 1)) && (filled < limit); nx++)
+				{
+					for (int nz = Math.max(minZ, pz - 1); (nz <= Math.min(maxZ, pz + 1)) && (filled < limit); nz++)
+					{
+						if (((nx != px) || (ny != py) || (nz != pz)) && !blocks.containsKey(nx, ny, nz))
+						{
+							put(liquid, nx, ny, nz);
+							filled++;
+						}
+					}
+				}
+			}
+		}
+
+		return filled;
+	}
+
+	/**
+	 * Método que llena una posición y la añade a la cola
+	 * @param liquid bloque de líquido
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 */
+	private void put(Block liquid, int x, int y, int z)
+	{
+		long key = LocationKey.pack(x, y, z);
+		blocks.put(x, y, z, liquid);
+		if (items != null)
+		{
+			items.remove(key);
+		}
+
+		if (count == queue.length)
+		{
+			grow();
+		}
+
+		queue[(head + count) & (queue.length - 1)] = key;
+		count++;
+	}
+
+	/**
+	 * Método que duplica la capacidad de la cola manteniendo el orden de los elementos
+	 */
+	private void grow()
+	{
+		long[] larger = new long[queue.length * 2];
+
+		for (int i = 0; i < count; i++)
+		{
+			larger[i] = queue[(head + i) & (queue.length - 1)];
+		}
+
+		queue = larger;
+		head = 0;
+	}
+}
@@ -0,0 +1,504 @@
+package model;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import model.entities.Player;
+import model.exceptions.BadInventoryPositionException;
+import model.exceptions.BadLocationException;
+import model.exceptions.EntityIsDeadException;
+import model.exceptions.StackSizeException;
+import model.exceptions.WrongMaterialException;
+
+/**
+ * Servidor que deja jugar a varios jugadores en el mismo mundo, cada uno con una conexión
+ * TCP o de socket Unix. Cada conexión tiene su propio jugador y se atiende en su propio hilo:
+ * un hilo virtual si la máquina virtual los tiene, o un hilo normal de un pool si no.
+ * <p>
+ * El protocolo es de líneas de texto. Al conectarse el servidor envía "WELCOME nombre" con
+ * el nombre del jugador nuevo, o "ERR" y el motivo si no queda sitio en el mundo para él y
+ * cierra la conexión. Después el cliente envía órdenes como las de
+ * {@link BlockWorld#playFile(String)} (move, orientate, useItem, selectItem y show) y el
+ * servidor responde a cada una, en orden, con "OK" (precedido de la información del jugador
+ * en show) o con "ERR" y el motivo si la orden no es válida o no se ha podido hacer, p.ej.
+ * un movimiento a una posición ocupada. Se pueden enviar varias órdenes seguidas sin esperar
+ * las respuestas: las respuestas se envían juntas cuando no quedan órdenes recibidas por
+ * contestar. Al cerrar la conexión se quita el jugador.
+ * <p>
+ * Mientras está arrancado el servidor avanza el mundo ({@link World#tick()}) a ritmo fijo
+ * en un hilo aparte, así que los líquidos, la arena y las criaturas se mueven aunque nadie
+ * haga nada.
+ * <p>
+ * El mundo no admite varios hilos a la vez, así que cada orden y cada tick se hacen con un
+ * cerrojo común; leer y analizar las órdenes y enviar las respuestas se hace sin él
+ * @author Jose MV
+ */
+public final class GameServer
+{
+	/**
+	 * Número máximo de conexiones pendientes de aceptar
+	 */
+	private static final int BACKLOG = 1024;
+
+	/**
+	 * Tamaño de las respuestas a partir del cual se envían aunque queden órdenes por contestar
+	 */
+	private static final int MAX_PENDING_OUTPUT = 1 << 15;
+
+	/**
+	 * Milisegundos entre dos ticks del mundo si no se indican: 20 ticks por segundo
+	 */
+	public static final long DEFAULT_TICK_MILLIS = 50;
+
+	/**
+	 * Mundo
+	 */
+	private final World world;
+
+	/**
+	 * Juego con el que se hacen las órdenes de todos los jugadores
+	 */
+	private final BlockWorld game;
+
+	/**
+	 * Cerrojo del mundo
+	 */
+	private final ReentrantLock lock;
+
+	/**
+	 * Hilos que atienden las conexiones
+	 */
+	private final ExecutorService threads;
+
+	/**
+	 * Milisegundos entre dos ticks del mundo, 0 si el servidor no lo avanza
+	 */
+	private final long tickMillis;
+
+	/**
+	 * Hilo que avanza el mundo, null hasta que se arranca o si no se avanza
+	 */
+	private ScheduledExecutorService ticker;
+
+	/**
+	 * Conexiones abiertas
+	 */
+	private final Set<SocketChannel> clients;
+
+	/**
+	 * Número del último jugador conectado, para darle nombre
+	 */
+	private final AtomicLong lastPlayer;
+
+	/**
+	 * Canal que acepta las conexiones, null hasta que se arranca
+	 */
+	private ServerSocketChannel server;
+
+	/**
+	 * Indica si el servidor se ha cerrado
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Constructor con un tick cada {@link #DEFAULT_TICK_MILLIS} milisegundos
+	 * @param world mundo en el que juegan los jugadores
+	 */
+	public GameServer(World world)
+	{
+		this(world, DEFAULT_TICK_MILLIS);
+	}
+
+	/**
+	 * Constructor
+	 * @param world mundo en el que juegan los jugadores
+	 * @param tickMillis milisegundos entre dos ticks del mundo, 0 para no avanzarlo
+	 * @throws IllegalArgumentException si tickMillis es negativo
+	 */
+	public GameServer(World world, long tickMillis)
+	{
+		if (tickMillis < 0)
+		{
+			throw new IllegalArgumentException("El tiempo entre ticks no puede ser negativo: " + tickMillis);
+		}
+
+		this.world = world;
+		this.tickMillis = tickMillis;
+		game = new BlockWorld(world);
+		lock = new ReentrantLock();
+		threads = newThreadPerTaskExecutor();
+		clients = ConcurrentHashMap.newKeySet();
+		lastPlayer = new AtomicLong();
+		ticker = null;
+		server = null;
+		closed = false;
+	}
+
+	/**
+	 * Método que empieza a aceptar conexiones en una dirección
+	 * @param address dirección TCP ({@link InetSocketAddress}, con puerto 0 para uno libre) o
+	 * de socket Unix ({@link UnixDomainSocketAddress})
+	 * @return dirección en la que escucha el servidor
+	 * @throws IOException si no se puede abrir la dirección
+	 * @throws IllegalStateException si el servidor ya se ha arrancado
+	 */
+	public synchronized SocketAddress start(SocketAddress address) throws IOException
+	{
+		if ((server != null) || closed)
+		{
+			throw new IllegalStateException("El servidor ya se ha arrancado");
+		}
+
+		server = (address instanceof UnixDomainSocketAddress) ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+			: ServerSocketChannel.open();
+		server.bind(address, BACKLOG);
+
+		threads.execute(new Runnable()
+		{
+			public void run()
+			{
+				accept();
+			}
+		});
+
+		if (tickMillis > 0)
+		{
+			ticker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+			{
+				public Thread newThread(Runnable task)
+				{
+					Thread thread = new Thread(task, "GameServer-tick");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			ticker.scheduleAtFixedRate(new Runnable()
+			{
+				public void run()
+				{
+					tick();
+				}
+			}, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+		}
+
+		return server.getLocalAddress();
+	}
+
+	/**
+	 * Getter
+	 * @return número de conexiones abiertas
+	 */
+	public int getSessionCount()
+	{
+		return clients.size();
+	}
+
+	/**
+	 * Método que cierra el servidor y todas las conexiones
+	 * @throws IOException si falla el cierre
+	 */
+	public synchronized void close() throws IOException
+	{
+		closed = true;
+
+		try
+		{
+			if (server != null)
+			{
+				server.close();
+			}
+		}
+
+		finally
+		{
+			if (ticker != null)
+			{
+				ticker.shutdown();
+			}
+
+			for (SocketChannel client : clients)
+			{
+				try
+				{
+					client.close();
+				}
+
+				catch (IOException e)
+				{
+					// la conexión ya estaba cerrada
+				}
+			}
+
+			threads.shutdown();
+		}
+	}
+
+	/**
+	 * Método que avanza el mundo un tick con el cerrojo
+	 */
+	private void tick()
+	{
+		lock.lock();
+		try
+		{
+			world.tick();
+		}
+
+		catch (RuntimeException e)
+		{
+			// si se deja salir el ejecutor no vuelve a llamar a la tarea
+			e.printStackTrace();
+		}
+
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Método que acepta conexiones hasta que se cierra el servidor, atendiendo cada una en
+	 * un hilo
+	 */
+	private void accept()
+	{
+		while (!closed)
+		{
+			try
+			{
+				final SocketChannel client = server.accept();
+
+				if (client.getRemoteAddress() instanceof InetSocketAddress)
+				{
+					client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				}
+
+				clients.add(client);
+				threads.execute(new Runnable()
+				{
+					public void run()
+					{
+						serve(client);
+					}
+				});
+			}
+
+			catch (IOException e)
+			{
+				if (!closed)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Método que atiende una conexión hasta que se cierra: crea su jugador, hace sus órdenes
+	 * y al terminar lo quita del mundo
+	 * @param client conexión
+	 */
+	private void serve(SocketChannel client)
+	{
+		Player player = null;
+
+		try
+		{
+			StringBuilder out = new StringBuilder();
+
+			lock.lock();
+			try
+			{
+				// un mundo cargado puede tener ya jugadores con estos nombres
+				String name;
+				do
+				{
+					name = "Player" + lastPlayer.incrementAndGet();
+				}
+				while (world.getPlayer(name) != null);
+
+				player = world.addPlayer(name);
+			}
+
+			catch (IllegalStateException e)
+			{
+				out.append("ERR ").append(e.getMessage()).append('\n');
+			}
+
+			finally
+			{
+				lock.unlock();
+			}
+
+			if (player == null)
+			{
+				send(client, out);
+				return;
+			}
+
+			out.append("WELCOME ").append(player.getName()).append('\n');
+			send(client, out);
+
+			CommandReader reader = new CommandReader(client);
+			Command command = new Command();
+
+			while (reader.next(command))
+			{
+				Command.Type type = command.getType();
+
+				if ((type == null) || (type == Command.Type.WORLD))
+				{
+					out.append("ERR Orden no válida en la línea ").append(command.getLine()).append('\n');
+				}
+
+				else
+				{
+					perform(command, player, out);
+				}
+
+				if (!reader.hasBufferedInput() || (out.length() >= MAX_PENDING_OUTPUT))
+				{
+					send(client, out);
+				}
+			}
+		}
+
+		catch (IOException e)
+		{
+			// el cliente ha cerrado la conexión o el servidor se está cerrando
+		}
+
+		finally
+		{
+			if (player != null)
+			{
+				lock.lock();
+				try
+				{
+					world.removePlayer(player.getName());
+				}
+
+				finally
+				{
+					lock.unlock();
+				}
+			}
+
+			clients.remove(client);
+			try
+			{
+				client.close();
+			}
+
+			catch (IOException e)
+			{
+				// la conexión ya estaba cerrada
+			}
+		}
+	}
+
+	/**
+	 * Método que hace una orden de un jugador y añade la respuesta: la información del
+	 * jugador si la orden es show y "OK", o "ERR" y el motivo si la acción no se ha podido hacer
+	 * @param command orden válida que no es {@link Command.Type#WORLD}
+	 * @param player jugador
+	 * @param out respuestas pendientes
+	 */
+	private void perform(Command command, Player player, StringBuilder out)
+	{
+		String info;
+
+		lock.lock();
+		try
+		{
+			info = game.perform(command, player);
+		}
+
+		catch (EntityIsDeadException | BadLocationException | BadInventoryPositionException | StackSizeException
+			| WrongMaterialException | IllegalArgumentException e)
+		{
+			String message = e.getMessage();
+			out.append("ERR ").append((message != null) ? message : e.getClass().getSimpleName()).append('\n');
+			return;
+		}
+
+		finally
+		{
+			lock.unlock();
+		}
+
+		if (info != null)
+		{
+			out.append(info).append('\n');
+		}
+		out.append("OK\n");
+	}
+
+	/**
+	 * Método que envía las respuestas pendientes y las borra
+	 * @param client conexión
+	 * @param out respuestas pendientes
+	 * @throws IOException si falla el envío
+	 */
+	private static void send(SocketChannel client, StringBuilder out) throws IOException
+	{
+		if (out.length() == 0)
+		{
+			return;
+		}
+
+		ByteBuffer bytes = ByteBuffer.wrap(out.toString().getBytes(StandardCharsets.UTF_8));
+		while (bytes.hasRemaining())
+		{
+			client.write(bytes);
+		}
+
+		out.setLength(0);
+	}
+
+	/**
+	 * Método que crea el ejecutor de las conexiones: uno con un hilo virtual por tarea si la
+	 * máquina virtual los tiene (Java 21 o posterior), que se busca por reflexión para poder
+	 * compilar con versiones anteriores, o un pool de hilos normales si no
+	 * @return ejecutor con un hilo por tarea
+	 */
+	private static ExecutorService newThreadPerTaskExecutor()
+	{
+		try
+		{
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		}
+
+		catch (ReflectiveOperationException e)
+		{
+			return Executors.newCachedThreadPool(new ThreadFactory()
+			{
+				public Thread newThread(Runnable task)
+				{
+					Thread thread = new Thread(task, "GameServer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,316 @@
+package model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Almacén de bloques en memoria del heap. Cada sección guarda un índice de
+ * un byte por bloque que apunta a una paleta propia de bloques
+ * @author Jose MV
+ */
+class HeapBlockStorage extends BlockStorage
+{
+	/**
+	 * Sección vacía en formato de estados, para exportar secciones sin bloques
+	 */
+	private static final byte[] EMPTY_SECTION = new byte[ChunkSection.VOLUME];
+
+	/**
+	 * Secciones del mundo, indexadas por chunk y altura
+	 */
+	private ChunkSection[] sections;
+
+	/**
+	 * Constructor
+	 * @param worldSize tamaño del mundo en x/z
+	 * @param minCoord coordenada x/z mínima del mundo
+	 */
+	HeapBlockStorage(int worldSize, int minCoord)
+	{
+		super(worldSize, minCoord);
+		sections = new ChunkSection[chunksPerSide * chunksPerSide * SECTIONS_PER_CHUNK];
+	}
+
+	/**
+	 * Getter
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @return bloque en la posición o null si está vacía o fuera del mundo
+	 */
+	Block get(int x, int y, int z)
+	{
+		int lx = x - minCoord;
+		int lz = z - minCoord;
+
+		if (!inBounds(lx, y, lz))
+		{
+			return null;
+		}
+
+		ChunkSection section = sections[sectionIndex(lx, y, lz)];
+
+		if (section == null)
+		{
+			return null;
+		}
+
+		return section.get(ChunkSection.index(lx & 15, y & 15, lz & 15));
+	}
+
+	/**
+	 * Método que guarda un bloque en la posición. Las posiciones fuera del mundo se ignoran.
+	 * Un bloque sin estado propio se guarda como su instancia compartida, para que la paleta
+	 * no reparta entre varias posiciones un bloque que su creador puede seguir modificando
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @param block bloque, null para vaciar la posición
+	 * @return bloque que había antes en la posición
+	 */
+	Block put(int x, int y, int z, Block block)
+	{
+		if (BlockFactory.getStateId(block) > 0)
+		{
+			block = BlockFactory.copyOf(block);
+		}
+
+		int lx = x - minCoord;
+		int lz = z - minCoord;
+
+		if (!inBounds(lx, y, lz))
+		{
+			return null;
+		}
+
+		int s = sectionIndex(lx, y, lz);
+		ChunkSection section = sections[s];
+		markDirty(chunkIndex(lx, lz));
+
+		if (section == null)
+		{
+			if (block == null)
+			{
+				return null;
+			}
+
+			section = new ChunkSection();
+			sections[s] = section;
+		}
+
+		Block old = section.set(ChunkSection.index(lx & 15, y & 15, lz & 15), block);
+
+		if (section.isEmpty())
+		{
+			sections[s] = null;
+		}
+
+		return old;
+	}
+
+	/**
+	 * Método que indica si la sección que contiene una posición está vacía. Las secciones
+	 * sin bloques no se guardan
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @return true si no tiene bloques o está fuera del mundo
+	 */
+	boolean isSectionEmpty(int x, int y, int z)
+	{
+		int lx = x - minCoord;
+		int lz = z - minCoord;
+		return !inBounds(lx, y, lz) || (sections[sectionIndex(lx, y, lz)] == null);
+	}
+
+	/**
+	 * Método que escribe un bloque en todas las posiciones de una caja, sección a sección.
+	 * Las secciones que quedan enteras dentro de la caja se sustituyen o se eliminan sin
+	 * recorrer sus posiciones
+	 * @param minX coordenada x mínima
+	 * @param minY coordenada y mínima
+	 * @param minZ coordenada z mínima
+	 * @param maxX coordenada x máxima (incluida)
+	 * @param maxY coordenada y máxima (incluida)
+	 * @param maxZ coordenada z máxima (incluida)
+	 * @param only material de los bloques que se sustituyen, o null para todas las posiciones
+	 * @param block bloque, null para vaciar las posiciones
+	 * @return número de posiciones escritas
+	 */
+	int fillBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Material only, Block block)
+	{
+		boolean shared = BlockFactory.getStateId(block) >= 0;
+		if (shared)
+		{
+			// un bloque nuevo sin estado propio se guarda como su instancia compartida
+			block = BlockFactory.copyOf(block);
+		}
+		int written = 0;
+		int lx0 = minX - minCoord;
+		int lx1 = maxX - minCoord;
+		int lz0 = minZ - minCoord;
+		int lz1 = maxZ - minCoord;
+
+		for (int cx = lx0 >> 4; cx <= lx1 >> 4; cx++)
+		{
+			for (int cz = lz0 >> 4; cz <= lz1 >> 4; cz++)
+			{
+				int chunk = cx * chunksPerSide + cz;
+				markDirty(chunk);
+				// límites de la caja dentro de las secciones de este chunk
+				int x0 = Math.max(lx0 - cx * 16, 0);
+				int x1 = Math.min(lx1 - cx * 16, 15);
+				int z0 = Math.max(lz0 - cz * 16, 0);
+				int z1 = Math.min(lz1 - cz * 16, 15);
+
+				for (int sy = minY >> 4; sy <= maxY >> 4; sy++)
+				{
+					int s = chunk * SECTIONS_PER_CHUNK + sy;
+					int y0 = Math.max(minY - sy * 16, 0);
+					int y1 = Math.min(maxY - sy * 16, 15);
+					ChunkSection section = sections[s];
+
+					if ((only == null) && shared && (x0 == 0) && (x1 == 15) && (y0 == 0) && (y1 == 15) && (z0 == 0) && (z1 == 15))
+					{
+						sections[s] = (block == null) ? null : ChunkSection.filled(block);
+						written += ChunkSection.VOLUME;
+						continue;
+					}
+
+					if (section == null)
+					{
+						if ((block == null) || (only != null))
+						{
+							continue;
+						}
+
+						section = new ChunkSection();
+						sections[s] = section;
+					}
+
+					for (int y = y0; y <= y1; y++)
+					{
+						for (int z = z0; z <= z1; z++)
+						{
+							for (int x = x0; x <= x1; x++)
+							{
+								int index = ChunkSection.index(x, y, z);
+
+								if (only != null)
+								{
+									Block old = section.get(index);
+									if ((old == null) || (old.getType() != only))
+										continue;
+								}
+
+								section.set(index, shared ? block : BlockFactory.copyOf(block));
+								written++;
+							}
+						}
+					}
+
+					if (section.isEmpty())
+					{
+						sections[s] = null;
+					}
+				}
+			}
+		}
+
+		return written;
+	}
+
+	/**
+	 * Método que elimina todos los bloques
+	 */
+	void clear()
+	{
+		sections = new ChunkSection[sections.length];
+		markAllDirty();
+	}
+
+	/**
+	 * Método que copia los estados de una columna de chunk a un buffer
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 * @param dst buffer destino
+	 * @param offset posición de dst donde empieza la columna
+	 */
+	void exportChunk(int cx, int cz, ByteBuffer dst, int offset)
+	{
+		int first = (cx * chunksPerSide + cz) * SECTIONS_PER_CHUNK;
+
+		for (int sy = 0; sy < SECTIONS_PER_CHUNK; sy++)
+		{
+			ChunkSection section = sections[first + sy];
+			int base = offset + sy * ChunkSection.VOLUME;
+
+			if (section == null)
+			{
+				dst.put(base, EMPTY_SECTION);
+			}
+
+			else
+			{
+				section.exportStates(dst, base);
+			}
+		}
+	}
+
+	/**
+	 * Método que añade a un mapa los bloques con estado propio
+	 * @param specials mapa destino, por posición empaquetada
+	 */
+	void collectSpecials(LongMap<Block> specials)
+	{
+		for (int s = 0; s < sections.length; s++)
+		{
+			ChunkSection section = sections[s];
+
+			if ((section != null) && section.hasSpecialBlocks())
+			{
+				int chunk = s / SECTIONS_PER_CHUNK;
+				int minX = minCoord + (chunk / chunksPerSide) * ChunkSection.SIZE;
+				int minZ = minCoord + (chunk % chunksPerSide) * ChunkSection.SIZE;
+				int minY = (s % SECTIONS_PER_CHUNK) * ChunkSection.SIZE;
+
+				for (int i = 0; i < ChunkSection.VOLUME; i++)
+				{
+					Block block = section.get(i);
+
+					if ((block != null) && (BlockFactory.getStateId(block) < 0))
+					{
+						specials.put(LocationKey.pack(minX + (i & 15), minY + (i >> 8), minZ + ((i >> 4) & 15)), block);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Método que sustituye una columna de chunk por los estados de un buffer
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 * @param src buffer con los estados de la columna
+	 */
+	void importChunk(int cx, int cz, ByteBuffer src)
+	{
+		int first = (cx * chunksPerSide + cz) * SECTIONS_PER_CHUNK;
+
+		for (int sy = 0; sy < SECTIONS_PER_CHUNK; sy++)
+		{
+			sections[first + sy] = ChunkSection.importStates(src, sy * ChunkSection.VOLUME);
+		}
+	}
+
+	/**
+	 * Método que calcula el índice de la sección que contiene la posición
+	 * @param lx coordenada x relativa al mínimo del mundo
+	 * @param y coordenada y
+	 * @param lz coordenada z relativa al mínimo del mundo
+	 * @return índice en el array de secciones
+	 */
+	private int sectionIndex(int lx, int y, int lz)
+	{
+		return chunkIndex(lx, lz) * SECTIONS_PER_CHUNK + (y >> 4);
+	}
+}
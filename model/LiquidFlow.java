@@ -0,0 +1,155 @@
+package model;
+
+/**
+ * Flujo de agua y lava mientras se juega. El líquido se extiende como en la generación
+ * (ver {@link FloodFill}): a las posiciones libres adyacentes, incluidas las diagonales, que
+ * no están por encima de él. Solo se revisan las posiciones donde ha cambiado algo: las que
+ * se quedan libres y las vecinas de un líquido nuevo, que se guardan en una cola sin
+ * repetidos. Cada tick revisa como mucho un número fijo de posiciones, así que el coste
+ * depende de los frentes de líquido activos y no del tamaño del mundo
+ * @author Jose MV
+ */
+class LiquidFlow
+{
+	/**
+	 * Mundo
+	 */
+	private final World world;
+
+	/**
+	 * Posiciones pendientes de revisar
+	 */
+	private final UpdateQueue pending;
+
+	/**
+	 * Constructor
+	 * @param world mundo
+	 */
+	LiquidFlow(World world)
+	{
+		this.world = world;
+		pending = new UpdateQueue();
+	}
+
+	/**
+	 * Getter
+	 * @return número de posiciones pendientes de revisar
+	 */
+	int getPending()
+	{
+		return pending.size();
+	}
+
+	/**
+	 * Getter
+	 * @return cola de posiciones pendientes de revisar, para guardarla y cargarla con el mundo
+	 */
+	UpdateQueue getQueue()
+	{
+		return pending;
+	}
+
+	/**
+	 * Método que avisa de que una posición se ha quedado libre: puede entrar líquido
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 */
+	void blockRemoved(int x, int y, int z)
+	{
+		pending.add(x, y, z);
+	}
+
+	/**
+	 * Método que avisa de que hay líquido nuevo en una posición: puede pasar a las
+	 * posiciones adyacentes de su nivel y del de debajo
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 */
+	void liquidAdded(int x, int y, int z)
+	{
+		for (int ny = y - 1; ny <= y; ny++)
+		{
+			for (int nx = x - 1; nx <= x + 1; nx++)
+			{
+				for (int nz = z - 1; nz <= z + 1; nz++)
+				{
+					if (((nx != x) || (ny != y) || (nz != z)) && Neighbourhood.isInside(world, nx, ny, nz))
+					{
+						pending.add(nx, ny, nz);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Método que avanza el flujo un tick. Solo se revisan las posiciones que estaban
+	 * pendientes al empezar, así que el líquido avanza como mucho un bloque por tick
+	 * @param budget número máximo de posiciones que se revisan
+	 * @return número de posiciones llenadas
+	 */
+	int tick(int budget)
+	{
+		int updates = Math.min(pending.size(), budget);
+		int filled = 0;
+		BlockStorage blocks = world.getBlockStorage();
+
+		for (int i = 0; i < updates; i++)
+		{
+			long key = pending.poll();
+			int x = LocationKey.getX(key);
+			int y = LocationKey.getY(key);
+			int z = LocationKey.getZ(key);
+
+			// los chunks sin generar ya tendrán sus líquidos al generarse
+			if (world.isColumnGenerated(x, z) && !blocks.containsKey(x, y, z))
+			{
+				Block liquid = findSource(blocks, x, y, z);
+
+				if (liquid != null)
+				{
+					world.flowLiquid(x, y, z, liquid);
+					liquidAdded(x, y, z);
+					filled++;
+				}
+			}
+		}
+
+		return filled;
+	}
+
+	/**
+	 * Método que busca el líquido que puede entrar en una posición libre: el de una posición
+	 * adyacente del mismo nivel o del de encima, mirando primero encima
+	 * @param blocks bloques del mundo
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @return bloque de líquido, o null si no puede entrar ninguno
+	 */
+	private Block findSource(BlockStorage blocks, int x, int y, int z)
+	{
+		for (int ny = Math.min(y + 1, BlockStorage.HEIGHT - 1); ny >= y; ny--)
+		{
+			for (int nx = x - 1; nx <= x + 1; nx++)
+			{
+				for (int nz = z - 1; nz <= z + 1; nz++)
+				{
+					if (((nx != x) || (ny != y) || (nz != z)) && Neighbourhood.isInside(world, nx, ny, nz))
+					{
+						Block block = blocks.get(nx, ny, nz);
+
+						if ((block != null) && block.getType().isLiquid())
+						{
+							return block;
+						}
+					}
+				}
+			}
+		}
+
+		return null;
+	}
+}
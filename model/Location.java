@@ -106,6 +106,15 @@ public class Location
         return z;
     }
     
+    /**
+     * Getter
+     * @return posición inmutable del bloque que contiene la localización
+     */
+    public BlockPos toBlockPos()
+    {
+        return BlockPos.of(this);
+    }
+    
     /**
      * Getter
      * @return neighborhood contine las localizaciones adyacentes
@@ -287,7 +296,7 @@ public class Location
     	
     	else
     	{
-	    	if (world.getPlayer().getLocation().equals(this))
+	    	if (world.isPlayerAt(BlockStorage.floor(x), BlockStorage.floor(y), BlockStorage.floor(z)))
 	    	{
 	    		isFree = false;
 	    	}
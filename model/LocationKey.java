@@ -0,0 +1,89 @@
+package model;
+
+/**
+ * Clase que empaqueta las coordenadas enteras de una posición en un long.
+ * Usa 26 bits para x, 26 bits para z y 12 bits para y (con signo)
+ * @author Jose MV
+ */
+public final class LocationKey
+{
+	/**
+	 * Máscara de los 26 bits de x y z
+	 */
+	private static final long XZ_MASK = (1L << 26) - 1;
+
+	/**
+	 * Máscara de los 12 bits de y
+	 */
+	private static final long Y_MASK = (1L << 12) - 1;
+
+	/**
+	 * Constructor privado: clase de utilidades
+	 */
+	private LocationKey()
+	{
+	}
+
+	/**
+	 * Método que empaqueta unas coordenadas
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @return clave empaquetada
+	 */
+	public static long pack(int x, int y, int z)
+	{
+		return ((x & XZ_MASK) << 38) | ((z & XZ_MASK) << 12) | (y & Y_MASK);
+	}
+
+	/**
+	 * Método que empaqueta la posición del bloque que contiene la localización
+	 * @param loc localización
+	 * @return clave empaquetada
+	 */
+	public static long pack(Location loc)
+	{
+		return pack((int) Math.floor(loc.getX()), (int) Math.floor(loc.getY()), (int) Math.floor(loc.getZ()));
+	}
+
+	/**
+	 * Getter
+	 * @param key clave empaquetada
+	 * @return coordenada x
+	 */
+	public static int getX(long key)
+	{
+		return (int) (key >> 38);
+	}
+
+	/**
+	 * Getter
+	 * @param key clave empaquetada
+	 * @return coordenada y
+	 */
+	public static int getY(long key)
+	{
+		return (int) ((key << 52) >> 52);
+	}
+
+	/**
+	 * Getter
+	 * @param key clave empaquetada
+	 * @return coordenada z
+	 */
+	public static int getZ(long key)
+	{
+		return (int) ((key << 26) >> 38);
+	}
+
+	/**
+	 * Método que crea la localización que representa la clave
+	 * @param world mundo de la localización
+	 * @param key clave empaquetada
+	 * @return nueva localización
+	 */
+	public static Location toLocation(World world, long key)
+	{
+		return new Location(world, getX(key), getY(key), getZ(key));
+	}
+}
@@ -0,0 +1,403 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Mapa de claves long con direccionamiento abierto y sondeo lineal. Evita
+ * objetos intermedios por entrada y está pensado para claves de {@link LocationKey}
+ * @author Jose MV
+ * @param <V> tipo de los valores
+ */
+public class LongMap<V>
+{
+	/**
+	 * Clave que marca una celda vacía de la tabla
+	 */
+	private static final long FREE = Long.MIN_VALUE;
+
+	/**
+	 * Capacidad inicial por defecto
+	 */
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	 * Claves de la tabla
+	 */
+	private long[] keys;
+
+	/**
+	 * Valores de la tabla
+	 */
+	private Object[] values;
+
+	/**
+	 * Máscara para calcular la posición en la tabla
+	 */
+	private int mask;
+
+	/**
+	 * Número de entradas en la tabla (sin contar la clave FREE)
+	 */
+	private int size;
+
+	/**
+	 * Indica si existe una entrada con la clave FREE
+	 */
+	private boolean hasFreeKey;
+
+	/**
+	 * Valor asociado a la clave FREE
+	 */
+	private V freeValue;
+
+	/**
+	 * Interfaz para recorrer las entradas del mapa
+	 * @param <V> tipo de los valores
+	 */
+	public interface Visitor<V>
+	{
+		/**
+		 * Método que se llama por cada entrada
+		 * @param key clave
+		 * @param value valor
+		 */
+		void visit(long key, V value);
+	}
+
+	/**
+	 * Constructor
+	 */
+	public LongMap()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor
+	 * @param expected número de entradas esperado
+	 */
+	public LongMap(int expected)
+	{
+		int capacity = DEFAULT_CAPACITY;
+
+		while (capacity < expected * 2)
+		{
+			capacity <<= 1;
+		}
+
+		allocate(capacity);
+	}
+
+	/**
+	 * Getter
+	 * @return número de entradas
+	 */
+	public int size()
+	{
+		return hasFreeKey ? size + 1 : size;
+	}
+
+	/**
+	 * Método que indica si el mapa está vacío
+	 * @return true si no tiene entradas
+	 */
+	public boolean isEmpty()
+	{
+		return size() == 0;
+	}
+
+	/**
+	 * Getter
+	 * @param key clave
+	 * @return valor asociado o null
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key)
+	{
+		if (key == FREE)
+		{
+			return freeValue;
+		}
+
+		int i = slot(key);
+		long k;
+
+		while ((k = keys[i]) != FREE)
+		{
+			if (k == key)
+			{
+				return (V) values[i];
+			}
+
+			i = (i + 1) & mask;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Método que indica si hay una entrada con la clave
+	 * @param key clave
+	 * @return true si existe
+	 */
+	public boolean containsKey(long key)
+	{
+		return get(key) != null;
+	}
+
+	/**
+	 * Método que asocia un valor a la clave. Un valor null elimina la entrada
+	 * @param key clave
+	 * @param value valor
+	 * @return valor anterior o null
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value)
+	{
+		if (value == null)
+		{
+			return remove(key);
+		}
+
+		if (key == FREE)
+		{
+			V old = freeValue;
+			hasFreeKey = true;
+			freeValue = value;
+			return old;
+		}
+
+		int i = slot(key);
+		long k;
+
+		while ((k = keys[i]) != FREE)
+		{
+			if (k == key)
+			{
+				V old = (V) values[i];
+				values[i] = value;
+				return old;
+			}
+
+			i = (i + 1) & mask;
+		}
+
+		keys[i] = key;
+		values[i] = value;
+		size++;
+
+		if (size * 2 > keys.length)
+		{
+			rehash(keys.length * 2);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Método que elimina la entrada de la clave
+	 * @param key clave
+	 * @return valor eliminado o null
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key)
+	{
+		if (key == FREE)
+		{
+			V old = freeValue;
+			hasFreeKey = false;
+			freeValue = null;
+			return old;
+		}
+
+		int i = slot(key);
+		long k;
+
+		while ((k = keys[i]) != FREE)
+		{
+			if (k == key)
+			{
+				V old = (V) values[i];
+				shiftKeys(i);
+				size--;
+				return old;
+			}
+
+			i = (i + 1) & mask;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Método que elimina todas las entradas
+	 */
+	public void clear()
+	{
+		allocate(DEFAULT_CAPACITY);
+		size = 0;
+		hasFreeKey = false;
+		freeValue = null;
+	}
+
+	/**
+	 * Método que recorre todas las entradas del mapa. No se debe modificar el mapa durante el recorrido
+	 * @param visitor objeto que recibe cada entrada
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEach(Visitor<? super V> visitor)
+	{
+		if (hasFreeKey)
+		{
+			visitor.visit(FREE, freeValue);
+		}
+
+		for (int i = 0; i < keys.length; i++)
+		{
+			if (keys[i] != FREE)
+			{
+				visitor.visit(keys[i], (V) values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Getter
+	 * @return copia de los valores del mapa
+	 */
+	@SuppressWarnings("unchecked")
+	public Collection<V> values()
+	{
+		Collection<V> copy = new ArrayList<V>(size());
+
+		if (hasFreeKey)
+		{
+			copy.add(freeValue);
+		}
+
+		for (int i = 0; i < keys.length; i++)
+		{
+			if (keys[i] != FREE)
+			{
+				copy.add((V) values[i]);
+			}
+		}
+
+		return copy;
+	}
+
+	/**
+	 * Getter
+	 * @return copia de las claves del mapa
+	 */
+	public long[] keys()
+	{
+		long[] copy = new long[size()];
+		int n = 0;
+
+		if (hasFreeKey)
+		{
+			copy[n++] = FREE;
+		}
+
+		for (int i = 0; i < keys.length; i++)
+		{
+			if (keys[i] != FREE)
+			{
+				copy[n++] = keys[i];
+			}
+		}
+
+		return copy;
+	}
+
+	/**
+	 * Método que calcula la posición inicial de una clave
+	 * @param key clave
+	 * @return posición en la tabla
+	 */
+	private int slot(long key)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	/**
+	 * Método que reserva una tabla vacía
+	 * @param capacity capacidad (potencia de 2)
+	 */
+	private void allocate(int capacity)
+	{
+		keys = new long[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+		Arrays.fill(keys, FREE);
+	}
+
+	/**
+	 * Método que amplía la tabla y recoloca las entradas
+	 * @param capacity nueva capacidad
+	 */
+	private void rehash(int capacity)
+	{
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(capacity);
+
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			if (oldKeys[i] != FREE)
+			{
+				int j = slot(oldKeys[i]);
+
+				while (keys[j] != FREE)
+				{
+					j = (j + 1) & mask;
+				}
+
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Método que cierra el hueco de una entrada borrada desplazando las siguientes
+	 * @param pos posición borrada
+	 */
+	private void shiftKeys(int pos)
+	{
+		int last;
+		long k;
+
+		while (true)
+		{
+			last = pos;
+			pos = (pos + 1) & mask;
+
+			while (true)
+			{
+				if ((k = keys[pos]) == FREE)
+				{
+					keys[last] = FREE;
+					values[last] = null;
+					return;
+				}
+
+				int ideal = slot(k);
+
+				if (last <= pos ? (last >= ideal || ideal > pos) : (last >= ideal && ideal > pos))
+				{
+					break;
+				}
+
+				pos = (pos + 1) & mask;
+			}
+
+			keys[last] = k;
+			values[last] = values[pos];
+		}
+	}
+}
@@ -0,0 +1,298 @@
+package model;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Exportación de un mapa del mundo visto desde arriba a una imagen PPM (P6), con un píxel por
+ * columna: x hacia la derecha y z hacia abajo. El color sale del material del bloque más alto
+ * de la columna, que se encuentra con la altura del mundo sin recorrer la columna, y se
+ * oscurece cuanto más bajo está. Las columnas sin bloques o sin generar quedan en negro.
+ * <p>
+ * La imagen se hace por franjas de 16 filas (una fila de chunks), y cada franja por chunks
+ * que se reparten entre los hilos. Mientras se escribe en disco un grupo de franjas se
+ * dibuja el siguiente, así que en memoria solo hay dos grupos y no la imagen entera
+ * @author Jose MV
+ */
+final class MapExporter
+{
+	/**
+	 * Número de chunks que dibuja cada tarea sin dividirse
+	 */
+	private static final int TILES_PER_TASK = 4;
+
+	/**
+	 * Color RGB de cada material, por ordinal
+	 */
+	private static final int[] COLORS = new int[Material.values().length];
+
+	static
+	{
+		// los materiales que no son bloques no llegan a verse
+		Arrays.fill(COLORS, 0xFF00FF);
+		COLORS[Material.BEDROCK.ordinal()] = 0x303030;
+		COLORS[Material.CHEST.ordinal()] = 0x9C6B30;
+		COLORS[Material.SAND.ordinal()] = 0xDBCB8C;
+		COLORS[Material.DIRT.ordinal()] = 0x8B5A2B;
+		COLORS[Material.GRASS.ordinal()] = 0x5DA130;
+		COLORS[Material.STONE.ordinal()] = 0x808080;
+		COLORS[Material.GRANITE.ordinal()] = 0x9A6B5A;
+		COLORS[Material.OBSIDIAN.ordinal()] = 0x2A1E3C;
+		COLORS[Material.LAVA.ordinal()] = 0xE8600A;
+		COLORS[Material.WATER.ordinal()] = 0x2F5FD0;
+	}
+
+	/**
+	 * Mundo
+	 */
+	private final World world;
+
+	/**
+	 * Tamaño del mundo, que es el ancho y el alto de la imagen
+	 */
+	private final int size;
+
+	/**
+	 * Coordenada mínima del mundo
+	 */
+	private final int minCoord;
+
+	/**
+	 * Número de chunks por fila de la imagen
+	 */
+	private final int tilesPerBand;
+
+	/**
+	 * Constructor
+	 * @param world mundo
+	 */
+	private MapExporter(World world)
+	{
+		this.world = world;
+		size = world.getSize();
+		minCoord = world.getMinCoord();
+		tilesPerBand = (size + ChunkSection.SIZE - 1) / ChunkSection.SIZE;
+	}
+
+	/**
+	 * Método que exporta el mapa de un mundo. El mundo no debe cambiar mientras tanto. El
+	 * fichero se escribe con otro nombre y se renombra al terminar
+	 * @param world mundo
+	 * @param file fichero de la imagen
+	 * @param threads número de hilos que dibujan el mapa
+	 * @throws IOException si falla la escritura
+	 */
+	static void export(World world, File file, int threads) throws IOException
+	{
+		new MapExporter(world).write(file, threads);
+	}
+
+	/**
+	 * Método que dibuja la imagen y la escribe en el fichero
+	 * @param file fichero de la imagen
+	 * @param threads número de hilos que dibujan el mapa
+	 * @throws IOException si falla la escritura
+	 */
+	private void write(File file, int threads) throws IOException
+	{
+		int bands = tilesPerBand;
+		int batch = Math.max(2, threads * 2);
+		byte[][] drawing = new byte[Math.min(batch, bands)][];
+		byte[][] writing = new byte[drawing.length][];
+		for (int i = 0; i < drawing.length; i++)
+		{
+			drawing[i] = new byte[size * ChunkSection.SIZE * 3];
+			writing[i] = new byte[size * ChunkSection.SIZE * 3];
+		}
+
+		File tmp = new File(file.getPath() + ".tmp");
+		ForkJoinPool pool = (threads > 1) ? new ForkJoinPool(threads) : null;
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16);
+
+		try
+		{
+			out.write(("P6\n" + size + " " + size + "\n255\n").getBytes(StandardCharsets.US_ASCII));
+
+			ForkJoinTask<Void> pending = draw(pool, drawing, 0, Math.min(batch, bands));
+			for (int first = 0; first < bands; first += batch)
+			{
+				int last = Math.min(first + batch, bands);
+				if (pending != null)
+				{
+					pending.join();
+				}
+
+				byte[][] temp = writing;
+				writing = drawing;
+				drawing = temp;
+
+				// el siguiente grupo se dibuja mientras se escribe este
+				pending = (last < bands) ? draw(pool, drawing, last, Math.min(last + batch, bands)) : null;
+
+				for (int band = first; band < last; band++)
+				{
+					out.write(writing[band - first], 0, bandRows(band) * size * 3);
+				}
+			}
+		}
+
+		finally
+		{
+			out.close();
+			if (pool != null)
+			{
+				pool.shutdown();
+			}
+		}
+
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Método que empieza a dibujar un grupo de franjas
+	 * @param pool hilos que dibujan, o null para dibujar en este hilo antes de volver
+	 * @param buffers una imagen por franja del grupo
+	 * @param first primera franja
+	 * @param last franja siguiente a la última
+	 * @return tarea que dibuja el grupo, o null si ya se ha dibujado
+	 */
+	private ForkJoinTask<Void> draw(ForkJoinPool pool, byte[][] buffers, int first, int last)
+	{
+		TileTask task = new TileTask(buffers, first, first * tilesPerBand, last * tilesPerBand);
+
+		if (pool == null)
+		{
+			task.invoke();
+			return null;
+		}
+
+		return pool.submit(task);
+	}
+
+	/**
+	 * Método que calcula el número de filas de una franja, que es menor en la última si el
+	 * tamaño del mundo no es múltiplo de 16
+	 * @param band franja
+	 * @return número de filas
+	 */
+	private int bandRows(int band)
+	{
+		return Math.min(ChunkSection.SIZE, size - band * ChunkSection.SIZE);
+	}
+
+	/**
+	 * Método que dibuja un chunk en la imagen de su franja
+	 * @param buffer imagen de la franja
+	 * @param band franja
+	 * @param tile chunk dentro de la franja
+	 */
+	private void drawTile(byte[] buffer, int band, int tile)
+	{
+		int x0 = minCoord + tile * ChunkSection.SIZE;
+		int x1 = Math.min(x0 + ChunkSection.SIZE, minCoord + size);
+		int z0 = minCoord + band * ChunkSection.SIZE;
+		int z1 = z0 + bandRows(band);
+		BlockStorage blocks = world.getBlockStorage();
+
+		for (int z = z0; z < z1; z++)
+		{
+			int pos = ((z - z0) * size + (x0 - minCoord)) * 3;
+
+			for (int x = x0; x < x1; x++)
+			{
+				int height = world.getColumnHeight(x, z);
+				Block block = (height < 0) ? null : blocks.get(x, height, z);
+				int color = 0;
+
+				if (block != null)
+				{
+					// de la mitad del brillo en y = 0 al brillo completo en lo más alto
+					int shade = BlockStorage.HEIGHT + height;
+					int base = COLORS[block.getType().ordinal()];
+					color = ((((base >> 16) & 0xFF) * shade / (2 * BlockStorage.HEIGHT)) << 16)
+						| ((((base >> 8) & 0xFF) * shade / (2 * BlockStorage.HEIGHT)) << 8)
+						| ((base & 0xFF) * shade / (2 * BlockStorage.HEIGHT));
+				}
+
+				buffer[pos++] = (byte) (color >> 16);
+				buffer[pos++] = (byte) (color >> 8);
+				buffer[pos++] = (byte) color;
+			}
+		}
+	}
+
+	/**
+	 * Tarea fork-join que divide un rango de chunks de un grupo de franjas hasta dejar
+	 * {@link #TILES_PER_TASK} chunks por tarea
+	 */
+	private class TileTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Una imagen por franja del grupo
+		 */
+		private final byte[][] buffers;
+
+		/**
+		 * Primera franja del grupo
+		 */
+		private final int firstBand;
+
+		/**
+		 * Primer chunk, contando desde el principio de la imagen
+		 */
+		private final int first;
+
+		/**
+		 * Chunk siguiente al último
+		 */
+		private final int last;
+
+		/**
+		 * Constructor
+		 * @param buffers una imagen por franja del grupo
+		 * @param firstBand primera franja del grupo
+		 * @param first primer chunk
+		 * @param last chunk siguiente al último
+		 */
+		TileTask(byte[][] buffers, int firstBand, int first, int last)
+		{
+			this.buffers = buffers;
+			this.firstBand = firstBand;
+			this.first = first;
+			this.last = last;
+		}
+
+		/**
+		 * Método que ejecuta la tarea
+		 */
+		protected void compute()
+		{
+			if (last - first <= TILES_PER_TASK)
+			{
+				for (int t = first; t < last; t++)
+				{
+					int band = t / tilesPerBand;
+					drawTile(buffers[band - firstBand], band, t % tilesPerBand);
+				}
+			}
+
+			else
+			{
+				int mid = (first + last) >>> 1;
+				invokeAll(new TileTask(buffers, firstBand, first, mid), new TileTask(buffers, firstBand, mid, last));
+			}
+		}
+	}
+}
@@ -135,6 +135,18 @@ public enum Material
 	 * @return número aleatorio
 	 */
 	public static Material getRandomItem(int first, int last)
+	{
+		return getRandomItem(rng, first, last);
+	}
+	
+	/**
+	 * Método que obtiene un material aleatorio entre los índices de parámetro con un generador dado
+	 * @param rng generador de números aleatorios
+	 * @param first índice primer elemento
+	 * @param last índice ultimo elemento
+	 * @return número aleatorio
+	 */
+	public static Material getRandomItem(Random rng, int first, int last)
 	{
 		int i = rng.nextInt(last - first + 1) + first;
 		
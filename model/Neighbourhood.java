@@ -0,0 +1,176 @@
+package model;
+
+/**
+ * Recorrido de las posiciones adyacentes a un bloque sin crear objetos. Los desplazamientos
+ * están en tablas constantes (primero las 6 caras, después las 12 aristas y las 8 esquinas)
+ * y los límites del mundo se comprueban una vez por eje, no para cada vecino
+ * @author Jose MV
+ */
+public final class Neighbourhood
+{
+	/**
+	 * Número de vecinos que comparten una cara
+	 */
+	public static final int FACES = 6;
+
+	/**
+	 * Número de vecinos que comparten una cara, una arista o una esquina
+	 */
+	public static final int ALL = 26;
+
+	/**
+	 * Desplazamientos de cada vecino en x, y y z
+	 */
+	private static final int[] DX = new int[ALL];
+	private static final int[] DY = new int[ALL];
+	private static final int[] DZ = new int[ALL];
+
+	static
+	{
+		int n = 0;
+
+		// al ordenar por número de ejes desplazados, las caras quedan primero
+		for (int axes = 1; axes <= 3; axes++)
+		{
+			for (int dx = -1; dx <= 1; dx++)
+			{
+				for (int dy = -1; dy <= 1; dy++)
+				{
+					for (int dz = -1; dz <= 1; dz++)
+					{
+						if (Math.abs(dx) + Math.abs(dy) + Math.abs(dz) == axes)
+						{
+							DX[n] = dx;
+							DY[n] = dy;
+							DZ[n] = dz;
+							n++;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Posición que se visita
+	 */
+	public interface Visitor
+	{
+		/**
+		 * Método que se llama con cada vecino dentro del mundo
+		 * @param x coordenada x
+		 * @param y coordenada y
+		 * @param z coordenada z
+		 * @return false para terminar el recorrido
+		 */
+		boolean visit(int x, int y, int z);
+	}
+
+	/**
+	 * Constructor privado: clase de utilidades
+	 */
+	private Neighbourhood()
+	{
+	}
+
+	/**
+	 * Método que recorre los vecinos de una posición que están dentro del mundo
+	 * @param world mundo
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @param count {@link #FACES} o {@link #ALL}
+	 * @param visitor método que se llama con cada vecino
+	 * @return false si el visitante terminó el recorrido antes de tiempo
+	 */
+	public static boolean forEach(World world, int x, int y, int z, int count, Visitor visitor)
+	{
+		// bit d + 1 activo si el desplazamiento d en el eje no sale del mundo
+		int validX = axisMask(x, world.getMinCoord(), world.getMaxCoord());
+		int validY = axisMask(y, 0, BlockStorage.HEIGHT - 1);
+		int validZ = axisMask(z, world.getMinCoord(), world.getMaxCoord());
+
+		for (int i = 0; i < count; i++)
+		{
+			if ((((validX >> (DX[i] + 1)) & (validY >> (DY[i] + 1)) & (validZ >> (DZ[i] + 1))) & 1) != 0)
+			{
+				if (!visitor.visit(x + DX[i], y + DY[i], z + DZ[i]))
+				{
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Método que recorre los vecinos de una posición que están dentro del mundo
+	 * @param world mundo
+	 * @param pos posición
+	 * @param count {@link #FACES} o {@link #ALL}
+	 * @param visitor método que se llama con cada vecino
+	 * @return false si el visitante terminó el recorrido antes de tiempo
+	 */
+	public static boolean forEach(World world, BlockPos pos, int count, Visitor visitor)
+	{
+		return forEach(world, pos.getX(), pos.getY(), pos.getZ(), count, visitor);
+	}
+
+	/**
+	 * Método que indica si una posición es uno de los 26 vecinos de otra y está dentro del mundo
+	 * @param world mundo
+	 * @param x coordenada x de la posición de referencia
+	 * @param y coordenada y de la posición de referencia
+	 * @param z coordenada z de la posición de referencia
+	 * @param nx coordenada x de la otra posición
+	 * @param ny coordenada y de la otra posición
+	 * @param nz coordenada z de la otra posición
+	 * @return true si es vecina
+	 */
+	public static boolean isNeighbour(World world, int x, int y, int z, int nx, int ny, int nz)
+	{
+		int dx = nx - x;
+		int dy = ny - y;
+		int dz = nz - z;
+
+		return (Math.abs(dx) <= 1) && (Math.abs(dy) <= 1) && (Math.abs(dz) <= 1) && ((dx | dy | dz) != 0)
+			&& isInside(world, nx, ny, nz);
+	}
+
+	/**
+	 * Método que indica si una posición está dentro del mundo
+	 * @param world mundo
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @return true si está dentro
+	 */
+	public static boolean isInside(World world, int x, int y, int z)
+	{
+		return (x >= world.getMinCoord()) && (x <= world.getMaxCoord()) && (z >= world.getMinCoord())
+			&& (z <= world.getMaxCoord()) && (y >= 0) && (y < BlockStorage.HEIGHT);
+	}
+
+	/**
+	 * Método que calcula qué desplazamientos (-1, 0 o 1) no salen de los límites en un eje
+	 * @param c coordenada
+	 * @param min valor mínimo del eje
+	 * @param max valor máximo del eje
+	 * @return bit d + 1 activo si c + d está dentro de los límites
+	 */
+	private static int axisMask(int c, int min, int max)
+	{
+		int mask = 0;
+
+		for (int d = -1; d <= 1; d++)
+		{
+			if ((c + d >= min) && (c + d <= max))
+			{
+				mask |= 1 << (d + 1);
+			}
+		}
+
+		return mask;
+	}
+}
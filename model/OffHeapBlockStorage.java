@@ -0,0 +1,310 @@
+package model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Almacén de bloques fuera del heap. Cada columna de chunk es un ByteBuffer directo
+ * con un byte de estado por bloque (ver {@link BlockFactory#getStateId(Block)}), de modo
+ * que el terreno no lo recorre el recolector de basura. Los pocos bloques con estado
+ * propio, como los cofres, se guardan aparte en el heap
+ * @author Jose MV
+ */
+class OffHeapBlockStorage extends BlockStorage
+{
+	/**
+	 * Bytes de cada columna de chunk
+	 */
+	static final int CHUNK_BYTES = ChunkSection.SIZE * ChunkSection.SIZE * HEIGHT;
+
+	/**
+	 * Columna vacía, para exportar chunks que no se han reservado
+	 */
+	private static final byte[] EMPTY_CHUNK = new byte[CHUNK_BYTES];
+
+	/**
+	 * Columnas de chunk, se reservan la primera vez que se escribe en ellas
+	 */
+	private ByteBuffer[] chunks;
+
+	/**
+	 * Bloques con estado propio, por posición empaquetada
+	 */
+	private LongMap<Block> special;
+
+	/**
+	 * Constructor
+	 * @param worldSize tamaño del mundo en x/z
+	 * @param minCoord coordenada x/z mínima del mundo
+	 */
+	OffHeapBlockStorage(int worldSize, int minCoord)
+	{
+		super(worldSize, minCoord);
+		clear();
+	}
+
+	/**
+	 * Getter
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @return bloque en la posición o null si está vacía o fuera del mundo
+	 */
+	Block get(int x, int y, int z)
+	{
+		int lx = x - minCoord;
+		int lz = z - minCoord;
+
+		if (!inBounds(lx, y, lz))
+		{
+			return null;
+		}
+
+		ByteBuffer chunk = chunks[chunkIndex(lx, lz)];
+
+		if (chunk == null)
+		{
+			return null;
+		}
+
+		int state = chunk.get(index(lx, y, lz)) & 0xFF;
+
+		if (state == BlockFactory.SPECIAL_STATE)
+		{
+			return special.get(LocationKey.pack(x, y, z));
+		}
+
+		return BlockFactory.getBlockForState(state);
+	}
+
+	/**
+	 * Método que guarda un bloque en la posición. Las posiciones fuera del mundo se ignoran
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @param block bloque, null para vaciar la posición
+	 * @return bloque que había antes en la posición
+	 */
+	Block put(int x, int y, int z, Block block)
+	{
+		int lx = x - minCoord;
+		int lz = z - minCoord;
+
+		if (!inBounds(lx, y, lz))
+		{
+			return null;
+		}
+
+		int c = chunkIndex(lx, lz);
+		ByteBuffer chunk = chunks[c];
+		markDirty(c);
+
+		if (chunk == null)
+		{
+			if (block == null)
+			{
+				return null;
+			}
+
+			chunk = ByteBuffer.allocateDirect(CHUNK_BYTES);
+			chunks[c] = chunk;
+		}
+
+		int i = index(lx, y, lz);
+		int oldState = chunk.get(i) & 0xFF;
+		Block old;
+
+		if (oldState == BlockFactory.SPECIAL_STATE)
+		{
+			old = special.remove(LocationKey.pack(x, y, z));
+		}
+
+		else
+		{
+			old = BlockFactory.getBlockForState(oldState);
+		}
+
+		int state = BlockFactory.getStateId(block);
+
+		if (state < 0)
+		{
+			state = BlockFactory.SPECIAL_STATE;
+			special.put(LocationKey.pack(x, y, z), block);
+		}
+
+		chunk.put(i, (byte) state);
+
+		return old;
+	}
+
+	/**
+	 * Método que indica si la sección que contiene una posición está vacía. Los chunks se
+	 * guardan enteros, así que solo se sabe de los chunks que aún no tienen ningún bloque
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @return true si su chunk no tiene bloques o está fuera del mundo
+	 */
+	boolean isSectionEmpty(int x, int y, int z)
+	{
+		int lx = x - minCoord;
+		int lz = z - minCoord;
+		return !inBounds(lx, y, lz) || (chunks[chunkIndex(lx, lz)] == null);
+	}
+
+	/**
+	 * Método que escribe un bloque en todas las posiciones de una caja, chunk a chunk,
+	 * escribiendo directamente los estados en el buffer de cada chunk
+	 * @param minX coordenada x mínima
+	 * @param minY coordenada y mínima
+	 * @param minZ coordenada z mínima
+	 * @param maxX coordenada x máxima (incluida)
+	 * @param maxY coordenada y máxima (incluida)
+	 * @param maxZ coordenada z máxima (incluida)
+	 * @param only material de los bloques que se sustituyen, o null para todas las posiciones
+	 * @param block bloque, null para vaciar las posiciones
+	 * @return número de posiciones escritas
+	 */
+	int fillBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Material only, Block block)
+	{
+		int state = BlockFactory.getStateId(block);
+		int written = 0;
+
+		for (int cx = (minX - minCoord) >> 4; cx <= (maxX - minCoord) >> 4; cx++)
+		{
+			for (int cz = (minZ - minCoord) >> 4; cz <= (maxZ - minCoord) >> 4; cz++)
+			{
+				int c = cx * chunksPerSide + cz;
+				ByteBuffer chunk = chunks[c];
+				markDirty(c);
+
+				if (chunk == null)
+				{
+					if ((block == null) || (only != null))
+					{
+						continue;
+					}
+
+					chunk = ByteBuffer.allocateDirect(CHUNK_BYTES);
+					chunks[c] = chunk;
+				}
+
+				int x0 = Math.max(minX, minCoord + cx * 16);
+				int x1 = Math.min(maxX, minCoord + cx * 16 + 15);
+				int z0 = Math.max(minZ, minCoord + cz * 16);
+				int z1 = Math.min(maxZ, minCoord + cz * 16 + 15);
+
+				for (int y = minY; y <= maxY; y++)
+				{
+					for (int z = z0; z <= z1; z++)
+					{
+						for (int x = x0; x <= x1; x++)
+						{
+							int i = index(x - minCoord, y, z - minCoord);
+							int oldState = chunk.get(i) & 0xFF;
+
+							if (only != null)
+							{
+								Block old = (oldState == BlockFactory.SPECIAL_STATE) ? special.get(LocationKey.pack(x, y, z))
+									: BlockFactory.getBlockForState(oldState);
+								if ((old == null) || (old.getType() != only))
+									continue;
+							}
+
+							if (oldState == BlockFactory.SPECIAL_STATE)
+							{
+								special.remove(LocationKey.pack(x, y, z));
+							}
+
+							if (state < 0)
+							{
+								special.put(LocationKey.pack(x, y, z), BlockFactory.copyOf(block));
+								chunk.put(i, (byte) BlockFactory.SPECIAL_STATE);
+							}
+
+							else
+							{
+								chunk.put(i, (byte) state);
+							}
+
+							written++;
+						}
+					}
+				}
+			}
+		}
+
+		return written;
+	}
+
+	/**
+	 * Método que elimina todos los bloques
+	 */
+	void clear()
+	{
+		chunks = new ByteBuffer[chunksPerSide * chunksPerSide];
+		special = new LongMap<Block>();
+		markAllDirty();
+	}
+
+	/**
+	 * Método que copia los estados de una columna de chunk a un buffer
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 * @param dst buffer destino
+	 * @param offset posición de dst donde empieza la columna
+	 */
+	void exportChunk(int cx, int cz, ByteBuffer dst, int offset)
+	{
+		ByteBuffer chunk = chunks[cx * chunksPerSide + cz];
+
+		if (chunk == null)
+		{
+			dst.put(offset, EMPTY_CHUNK);
+		}
+
+		else
+		{
+			dst.put(offset, chunk, 0, CHUNK_BYTES);
+		}
+	}
+
+	/**
+	 * Método que añade a un mapa los bloques con estado propio
+	 * @param specials mapa destino, por posición empaquetada
+	 */
+	void collectSpecials(final LongMap<Block> specials)
+	{
+		special.forEach(new LongMap.Visitor<Block>()
+		{
+			public void visit(long key, Block block)
+			{
+				specials.put(key, block);
+			}
+		});
+	}
+
+	/**
+	 * Método que sustituye una columna de chunk por un buffer. El buffer se usa directamente
+	 * como almacén de la columna, así que un buffer de un fichero mapeado solo se lee del
+	 * disco cuando se accede a sus páginas
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 * @param src buffer con los estados de la columna
+	 */
+	void importChunk(int cx, int cz, ByteBuffer src)
+	{
+		chunks[cx * chunksPerSide + cz] = src;
+	}
+
+	/**
+	 * Método que calcula la posición de un bloque dentro del buffer de su chunk
+	 * @param lx coordenada x relativa al mínimo del mundo
+	 * @param y coordenada y
+	 * @param lz coordenada z relativa al mínimo del mundo
+	 * @return índice en el buffer
+	 */
+	private static int index(int lx, int y, int lz)
+	{
+		return (y << 8) | ((lz & 15) << 4) | (lx & 15);
+	}
+}
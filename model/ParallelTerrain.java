@@ -0,0 +1,113 @@
+package model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Utilidades para repartir los pasos de generación del terreno entre varios hilos sin
+ * cambiar el resultado. Los pasos se reparten por filas de chunks (16 valores de x y todas
+ * las z), así que cada tarea escribe en chunks distintos. Los números aleatorios de cada
+ * chunk salen de {@link RandomStreams}, así que no dependen del reparto
+ * @author Jose MV
+ */
+class ParallelTerrain
+{
+	/**
+	 * Paso de generación que se aplica a un rango de filas x del mundo
+	 */
+	interface RowPass
+	{
+		/**
+		 * Método que aplica el paso a las filas x0 &lt;= x &lt; x1, relativas al mínimo del mundo
+		 * @param x0 primera fila
+		 * @param x1 fila siguiente a la última
+		 */
+		void run(int x0, int x1);
+	}
+
+	/**
+	 * Constructor privado: clase de utilidades
+	 */
+	private ParallelTerrain()
+	{
+	}
+
+	/**
+	 * Método que aplica un paso a todas las filas del mundo
+	 * @param pool hilos que ejecutan el paso, o null para ejecutarlo en este hilo de una vez
+	 * @param size tamaño del mundo
+	 * @param pass paso de generación
+	 */
+	static void forEachRow(ForkJoinPool pool, int size, RowPass pass)
+	{
+		if (pool == null)
+		{
+			pass.run(0, size);
+		}
+
+		else
+		{
+			pool.invoke(new RowTask(pass, size, 0, (size + ChunkSection.SIZE - 1) / ChunkSection.SIZE));
+		}
+	}
+
+	/**
+	 * Tarea fork-join que divide un rango de filas de chunks hasta dejar una fila por tarea
+	 */
+	private static class RowTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Paso que se aplica
+		 */
+		private final RowPass pass;
+
+		/**
+		 * Tamaño del mundo
+		 */
+		private final int size;
+
+		/**
+		 * Primera fila de chunks
+		 */
+		private final int first;
+
+		/**
+		 * Fila de chunks siguiente a la última
+		 */
+		private final int last;
+
+		/**
+		 * Constructor
+		 * @param pass paso que se aplica
+		 * @param size tamaño del mundo
+		 * @param first primera fila de chunks
+		 * @param last fila de chunks siguiente a la última
+		 */
+		RowTask(RowPass pass, int size, int first, int last)
+		{
+			this.pass = pass;
+			this.size = size;
+			this.first = first;
+			this.last = last;
+		}
+
+		/**
+		 * Método que ejecuta la tarea
+		 */
+		protected void compute()
+		{
+			if (last - first <= 1)
+			{
+				pass.run(first * ChunkSection.SIZE, Math.min(size, last * ChunkSection.SIZE));
+			}
+
+			else
+			{
+				int mid = (first + last) >>> 1;
+				invokeAll(new RowTask(pass, size, first, mid), new RowTask(pass, size, mid, last));
+			}
+		}
+	}
+}
@@ -0,0 +1,582 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Búsqueda de caminos A* para las criaturas. Una criatura puede estar en una posición libre
+ * (sin bloque o con un líquido, como en {@link Location#isFree()}) que tenga debajo un bloque
+ * sólido, y en cada paso se mueve a una de las 8 columnas vecinas subiendo o bajando como
+ * mucho un bloque. Las criaturas no bloquean el camino porque se mueven en cada tick.
+ * <p>
+ * Los nodos explorados se guardan en arrays que se reservan una vez y se reutilizan en cada
+ * búsqueda, así que buscar un camino no crea objetos por nodo. Los caminos encontrados se
+ * guardan por pareja (chunk de origen, chunk de destino): otra criatura del mismo chunk que
+ * va al mismo destino aprovecha el camino si puede llegar a él en un paso.
+ * <p>
+ * No es seguro usar un buscador desde varios hilos a la vez
+ * @author Jose MV
+ */
+class PathFinder
+{
+	/**
+	 * Número máximo de nodos que se exploran por defecto en cada búsqueda
+	 */
+	static final int DEFAULT_MAX_NODES = 4096;
+
+	/**
+	 * Número máximo de caminos guardados antes de vaciar la caché
+	 */
+	private static final int MAX_CACHED_ROUTES = 1024;
+
+	/**
+	 * Coste de un paso recto y de un paso en diagonal
+	 */
+	private static final int STRAIGHT_COST = 10;
+	private static final int DIAGONAL_COST = 14;
+
+	/**
+	 * Coste añadido al subir o bajar un bloque
+	 */
+	private static final int CLIMB_COST = 5;
+
+	/**
+	 * Mundo en el que se buscan caminos
+	 */
+	private final World world;
+
+	/**
+	 * Número máximo de nodos que se exploran en cada búsqueda
+	 */
+	private final int maxNodes;
+
+	/**
+	 * Posición empaquetada, coste desde el origen, coste estimado total y nodo anterior de
+	 * cada nodo descubierto en la búsqueda actual
+	 */
+	private final long[] nodeKey;
+	private final int[] nodeCost;
+	private final int[] nodeScore;
+	private final int[] nodeParent;
+
+	/**
+	 * Posición de cada nodo en el montículo, -1 si ya se ha explorado
+	 */
+	private final int[] heapIndex;
+
+	/**
+	 * Montículo binario con los nodos abiertos ordenados por coste estimado total
+	 */
+	private final int[] heap;
+
+	/**
+	 * Tabla hash de posición empaquetada a nodo. Una celda solo es válida si su marca es la
+	 * de la búsqueda actual, así no hay que vaciar la tabla entre búsquedas
+	 */
+	private final long[] tableKey;
+	private final int[] tableNode;
+	private final int[] tableStamp;
+	private final int tableMask;
+
+	/**
+	 * Marca de la búsqueda actual
+	 */
+	private int stamp;
+
+	/**
+	 * Número de nodos descubiertos y de nodos en el montículo
+	 */
+	private int nodeCount;
+	private int heapSize;
+
+	/**
+	 * Caminos guardados por pareja de chunks
+	 */
+	private final LongMap<Route> routes;
+
+	/**
+	 * Constructor
+	 * @param world mundo en el que se buscan caminos
+	 * @param maxNodes número máximo de nodos que se exploran en cada búsqueda
+	 */
+	PathFinder(World world, int maxNodes)
+	{
+		this.world = world;
+		this.maxNodes = maxNodes;
+		// cada nodo explorado descubre como mucho 2 vecinos por columna: si se puede estar
+		// en y no se puede estar ni en y - 1 ni en y + 1
+		int capacity = maxNodes * 16 + 1;
+		nodeKey = new long[capacity];
+		nodeCost = new int[capacity];
+		nodeScore = new int[capacity];
+		nodeParent = new int[capacity];
+		heapIndex = new int[capacity];
+		heap = new int[capacity];
+		int tableSize = Integer.highestOneBit(capacity) << 2;
+		tableKey = new long[tableSize];
+		tableNode = new int[tableSize];
+		tableStamp = new int[tableSize];
+		tableMask = tableSize - 1;
+		routes = new LongMap<Route>();
+	}
+
+	/**
+	 * Método que indica si una criatura puede estar en una posición: dentro del mundo, libre
+	 * y con un bloque sólido debajo. Los chunks sin generar no tienen suelo
+	 * @param world mundo
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @return true si puede estar
+	 */
+	static boolean isWalkable(World world, int x, int y, int z)
+	{
+		if ((y < 1) || !Neighbourhood.isInside(world, x, y, z))
+		{
+			return false;
+		}
+
+		BlockStorage blocks = world.getBlockStorage();
+		Block block = blocks.get(x, y, z);
+		Block ground = blocks.get(x, y - 1, z);
+		return ((block == null) || block.getType().isLiquid()) && (ground != null) && !ground.getType().isLiquid();
+	}
+
+	/**
+	 * Método que indica si una criatura puede ir de una posición a otra en un paso
+	 * @param from posición de origen empaquetada
+	 * @param to posición de destino empaquetada
+	 * @return true si es un paso válido
+	 */
+	boolean canStep(long from, long to)
+	{
+		int dx = LocationKey.getX(to) - LocationKey.getX(from);
+		int dy = LocationKey.getY(to) - LocationKey.getY(from);
+		int dz = LocationKey.getZ(to) - LocationKey.getZ(from);
+
+		return (Math.abs(dx) <= 1) && (Math.abs(dy) <= 1) && (Math.abs(dz) <= 1) && ((dx | dz) != 0)
+			&& isWalkable(world, LocationKey.getX(to), LocationKey.getY(to), LocationKey.getZ(to));
+	}
+
+	/**
+	 * Método que busca un camino entre dos posiciones
+	 * @param from posición de origen empaquetada
+	 * @param to posición de destino empaquetada
+	 * @return posiciones del camino sin el origen y con el destino (vacío si ya está en el
+	 * destino), o null si no hay camino o no se encuentra explorando el máximo de nodos
+	 */
+	long[] find(long from, long to)
+	{
+		if (from == to)
+		{
+			return new long[0];
+		}
+
+		int tx = LocationKey.getX(to);
+		int ty = LocationKey.getY(to);
+		int tz = LocationKey.getZ(to);
+
+		if (!isWalkable(world, tx, ty, tz))
+		{
+			return null;
+		}
+
+		long routeKey = routeKey(from, to);
+		Route route = routes.get(routeKey);
+
+		if ((route != null) && (route.goal == to))
+		{
+			long[] cached = route.follow(this, from);
+
+			if (cached != null)
+			{
+				return cached;
+			}
+		}
+
+		long[] steps = search(from, tx, ty, tz);
+
+		if (steps != null)
+		{
+			if (routes.size() >= MAX_CACHED_ROUTES)
+			{
+				routes.clear();
+			}
+
+			routes.put(routeKey, new Route(from, to, steps));
+		}
+
+		return steps;
+	}
+
+	/**
+	 * Método que olvida los caminos guardados. Se llama cuando cambian los bloques del mundo
+	 */
+	void invalidate()
+	{
+		if (!routes.isEmpty())
+		{
+			routes.clear();
+		}
+	}
+
+	/**
+	 * Método que ejecuta la búsqueda A*
+	 * @param from posición de origen empaquetada
+	 * @param tx coordenada x del destino
+	 * @param ty coordenada y del destino
+	 * @param tz coordenada z del destino
+	 * @return posiciones del camino sin el origen, o null si no se encuentra
+	 */
+	private long[] search(long from, int tx, int ty, int tz)
+	{
+		stamp++;
+		if (stamp == 0)
+		{
+			// la marca ha dado la vuelta: las celdas antiguas podrían parecer válidas
+			Arrays.fill(tableStamp, 0);
+			stamp = 1;
+		}
+
+		nodeCount = 0;
+		heapSize = 0;
+		int start = addNode(from, 0, heuristic(LocationKey.getX(from), LocationKey.getY(from), LocationKey.getZ(from), tx, ty, tz), -1);
+		int slot = find(from);
+		tableStamp[slot] = stamp;
+		tableKey[slot] = from;
+		tableNode[slot] = start;
+		int explored = 0;
+
+		while ((heapSize > 0) && (explored < maxNodes))
+		{
+			int node = poll();
+			long key = nodeKey[node];
+			int x = LocationKey.getX(key);
+			int y = LocationKey.getY(key);
+			int z = LocationKey.getZ(key);
+
+			if ((x == tx) && (y == ty) && (z == tz))
+			{
+				return buildPath(node, start);
+			}
+
+			explored++;
+
+			for (int dx = -1; dx <= 1; dx++)
+			{
+				for (int dz = -1; dz <= 1; dz++)
+				{
+					if ((dx != 0) || (dz != 0))
+					{
+						expand(node, x + dx, y, z + dz, ((dx != 0) && (dz != 0)) ? DIAGONAL_COST : STRAIGHT_COST, tx, ty, tz);
+					}
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Método que descubre o mejora el vecino de un nodo en una columna
+	 * @param node nodo que se explora
+	 * @param nx coordenada x de la columna vecina
+	 * @param y coordenada y del nodo
+	 * @param nz coordenada z de la columna vecina
+	 * @param cost coste del paso sin cambiar de altura
+	 * @param tx coordenada x del destino
+	 * @param ty coordenada y del destino
+	 * @param tz coordenada z del destino
+	 */
+	private void expand(int node, int nx, int y, int nz, int cost, int tx, int ty, int tz)
+	{
+		for (int dy = -1; dy <= 1; dy++)
+		{
+			int ny = y + dy;
+
+			if (isWalkable(world, nx, ny, nz))
+			{
+				long key = LocationKey.pack(nx, ny, nz);
+				int g = nodeCost[node] + cost + ((dy != 0) ? CLIMB_COST : 0);
+				int slot = find(key);
+
+				if (tableStamp[slot] != stamp)
+				{
+					tableStamp[slot] = stamp;
+					tableKey[slot] = key;
+					tableNode[slot] = addNode(key, g, g + heuristic(nx, ny, nz, tx, ty, tz), node);
+				}
+
+				else
+				{
+					int other = tableNode[slot];
+
+					if ((heapIndex[other] >= 0) && (g < nodeCost[other]))
+					{
+						nodeScore[other] += g - nodeCost[other];
+						nodeCost[other] = g;
+						nodeParent[other] = node;
+						siftUp(heapIndex[other]);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Método que calcula el coste estimado hasta el destino: pasos en diagonal y rectos en x/z
+	 * más la diferencia de altura. Nunca es mayor que el coste real
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @param tx coordenada x del destino
+	 * @param ty coordenada y del destino
+	 * @param tz coordenada z del destino
+	 * @return coste estimado
+	 */
+	private static int heuristic(int x, int y, int z, int tx, int ty, int tz)
+	{
+		int dx = Math.abs(tx - x);
+		int dz = Math.abs(tz - z);
+		return DIAGONAL_COST * Math.min(dx, dz) + STRAIGHT_COST * Math.abs(dx - dz) + CLIMB_COST * Math.abs(ty - y);
+	}
+
+	/**
+	 * Método que añade un nodo nuevo al montículo
+	 * @param key posición empaquetada
+	 * @param cost coste desde el origen
+	 * @param score coste estimado total
+	 * @param parent nodo anterior, -1 para el origen
+	 * @return número del nodo
+	 */
+	private int addNode(long key, int cost, int score, int parent)
+	{
+		int node = nodeCount++;
+		nodeKey[node] = key;
+		nodeCost[node] = cost;
+		nodeScore[node] = score;
+		nodeParent[node] = parent;
+		heap[heapSize] = node;
+		heapIndex[node] = heapSize;
+		siftUp(heapSize++);
+		return node;
+	}
+
+	/**
+	 * Método que saca del montículo el nodo con menor coste estimado
+	 * @return número del nodo
+	 */
+	private int poll()
+	{
+		int node = heap[0];
+		heapIndex[node] = -1;
+		heapSize--;
+
+		if (heapSize > 0)
+		{
+			heap[0] = heap[heapSize];
+			heapIndex[heap[0]] = 0;
+			siftDown(0);
+		}
+
+		return node;
+	}
+
+	/**
+	 * Método que sube un nodo del montículo hasta su sitio
+	 * @param pos posición en el montículo
+	 */
+	private void siftUp(int pos)
+	{
+		int node = heap[pos];
+
+		while (pos > 0)
+		{
+			int parent = (pos - 1) >>> 1;
+
+			if (!less(node, heap[parent]))
+			{
+				break;
+			}
+
+			heap[pos] = heap[parent];
+			heapIndex[heap[pos]] = pos;
+			pos = parent;
+		}
+
+		heap[pos] = node;
+		heapIndex[node] = pos;
+	}
+
+	/**
+	 * Método que baja un nodo del montículo hasta su sitio
+	 * @param pos posición en el montículo
+	 */
+	private void siftDown(int pos)
+	{
+		int node = heap[pos];
+
+		while (true)
+		{
+			int child = 2 * pos + 1;
+
+			if (child >= heapSize)
+			{
+				break;
+			}
+
+			if ((child + 1 < heapSize) && less(heap[child + 1], heap[child]))
+			{
+				child++;
+			}
+
+			if (!less(heap[child], node))
+			{
+				break;
+			}
+
+			heap[pos] = heap[child];
+			heapIndex[heap[pos]] = pos;
+			pos = child;
+		}
+
+		heap[pos] = node;
+		heapIndex[node] = pos;
+	}
+
+	/**
+	 * Método que compara dos nodos: menor coste estimado total y, si empatan, mayor coste
+	 * desde el origen (el que está más cerca del destino)
+	 * @param a primer nodo
+	 * @param b segundo nodo
+	 * @return true si a va antes que b
+	 */
+	private boolean less(int a, int b)
+	{
+		return (nodeScore[a] < nodeScore[b]) || ((nodeScore[a] == nodeScore[b]) && (nodeCost[a] > nodeCost[b]));
+	}
+
+	/**
+	 * Método que busca la celda de la tabla hash de una posición: la que la contiene o la
+	 * primera celda libre de la búsqueda actual
+	 * @param key posición empaquetada
+	 * @return índice de la celda
+	 */
+	private int find(long key)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		int slot = (int) (h ^ (h >>> 32)) & tableMask;
+
+		while ((tableStamp[slot] == stamp) && (tableKey[slot] != key))
+		{
+			slot = (slot + 1) & tableMask;
+		}
+
+		return slot;
+	}
+
+	/**
+	 * Método que reconstruye el camino desde el destino siguiendo los nodos anteriores
+	 * @param node nodo del destino
+	 * @param start nodo del origen
+	 * @return posiciones del camino sin el origen
+	 */
+	private long[] buildPath(int node, int start)
+	{
+		int length = 0;
+
+		for (int n = node; n != start; n = nodeParent[n])
+		{
+			length++;
+		}
+
+		long[] steps = new long[length];
+
+		for (int n = node; n != start; n = nodeParent[n])
+		{
+			steps[--length] = nodeKey[n];
+		}
+
+		return steps;
+	}
+
+	/**
+	 * Método que calcula la clave de la caché de una pareja de posiciones: los chunks de
+	 * origen y de destino
+	 * @param from posición de origen empaquetada
+	 * @param to posición de destino empaquetada
+	 * @return clave de la caché
+	 */
+	private static long routeKey(long from, long to)
+	{
+		return ((long) (LocationKey.getX(from) >> 4 & 0xFFFF) << 48) | ((long) (LocationKey.getZ(from) >> 4 & 0xFFFF) << 32)
+			| ((long) (LocationKey.getX(to) >> 4 & 0xFFFF) << 16) | (LocationKey.getZ(to) >> 4 & 0xFFFF);
+	}
+
+	/**
+	 * Camino guardado en la caché
+	 */
+	private static class Route
+	{
+		/**
+		 * Destino del camino
+		 */
+		private final long goal;
+
+		/**
+		 * Posiciones del camino, con el origen
+		 */
+		private final long[] steps;
+
+		/**
+		 * Constructor
+		 * @param from origen
+		 * @param goal destino
+		 * @param path posiciones del camino sin el origen
+		 */
+		Route(long from, long goal, long[] path)
+		{
+			this.goal = goal;
+			steps = new long[path.length + 1];
+			steps[0] = from;
+			System.arraycopy(path, 0, steps, 1, path.length);
+		}
+
+		/**
+		 * Método que aprovecha el camino desde otra posición: si la posición está en el
+		 * camino, o si puede llegar en un paso a una posición del camino, se sigue desde la
+		 * posición más avanzada posible
+		 * @param finder buscador, para comprobar los pasos
+		 * @param from posición de origen empaquetada
+		 * @return posiciones del camino sin el origen, o null si no se puede aprovechar
+		 */
+		long[] follow(PathFinder finder, long from)
+		{
+			for (int i = steps.length - 1; i >= 0; i--)
+			{
+				if (steps[i] == from)
+				{
+					return copy(i + 1);
+				}
+
+				if (finder.canStep(from, steps[i]))
+				{
+					return copy(i);
+				}
+			}
+
+			return null;
+		}
+
+		/**
+		 * Método que copia el final del camino
+		 * @param first primera posición que se copia
+		 * @return posiciones desde first hasta el destino
+		 */
+		private long[] copy(int first)
+		{
+			long[] path = new long[steps.length - first];
+			System.arraycopy(steps, first, path, 0, path.length);
+			return path;
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package model;
+
+import java.util.Random;
+
+/**
+ * Números aleatorios de la generación del mundo. Cada paso de generación de cada chunk
+ * tiene su propio generador, cuya semilla se obtiene mezclando la semilla del mundo, el
+ * paso y las coordenadas del chunk. Así un chunk se puede generar (o volver a generar)
+ * solo, en cualquier orden y en cualquier hilo, y cambiar un paso no altera los demás
+ * @author Jose MV
+ */
+class RandomStreams
+{
+	/**
+	 * Pasos de generación con números aleatorios propios
+	 */
+	enum Pass
+	{
+		/**
+		 * Cuevas que nacen en el chunk
+		 */
+		CAVES,
+
+		/**
+		 * Vetas de mineral que nacen en el chunk (una secuencia por mineral)
+		 */
+		VEINS,
+
+		/**
+		 * Fuentes de agua y lava
+		 */
+		LIQUIDS,
+
+		/**
+		 * Si los bloques de los estratos y de la superficie sueltan su material
+		 */
+		BLOCK_DROPS,
+
+		/**
+		 * Criaturas e items sobre la superficie
+		 */
+		SPAWNS,
+
+		/**
+		 * Decisiones de las criaturas en cada tick del mundo
+		 */
+		CREATURES
+	}
+
+	/**
+	 * Semilla del mundo
+	 */
+	private final long seed;
+
+	/**
+	 * Constructor
+	 * @param seed semilla del mundo
+	 */
+	RandomStreams(long seed)
+	{
+		this.seed = seed;
+	}
+
+	/**
+	 * Método que crea el generador de números aleatorios de un paso en un chunk
+	 * @param pass paso de generación
+	 * @param cx coordenada x del chunk (0 es el chunk de la coordenada mínima)
+	 * @param cz coordenada z del chunk
+	 * @return generador de números aleatorios
+	 */
+	Random forChunk(Pass pass, int cx, int cz)
+	{
+		return forChunk(pass, 0, cx, cz);
+	}
+
+	/**
+	 * Método que crea el generador de números aleatorios de una variante de un paso en un
+	 * chunk, p.ej. las vetas de cada mineral
+	 * @param pass paso de generación
+	 * @param variant número de la variante
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 * @return generador de números aleatorios
+	 */
+	Random forChunk(Pass pass, int variant, int cx, int cz)
+	{
+		return new Random(seedFor(pass, variant, cx, cz));
+	}
+
+	/**
+	 * Método que calcula la semilla de una variante de un paso en un chunk
+	 * @param pass paso de generación
+	 * @param variant número de la variante
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 * @return semilla
+	 */
+	long seedFor(Pass pass, int variant, int cx, int cz)
+	{
+		long h = mix(seed ^ (((long) pass.ordinal() << 32) | (variant & 0xFFFFFFFFL)));
+		h = mix(h + cx * 0x9E3779B97F4A7C15L);
+		h = mix(h + cz * 0xC2B2AE3D27D4EB4FL);
+		return h;
+	}
+
+	/**
+	 * Método que calcula un valor aleatorio de un paso a partir de dos valores, sin crear
+	 * un generador. Sirve cuando cada decisión necesita pocos bits, p.ej. una por criatura y tick
+	 * @param pass paso
+	 * @param a primer valor, p.ej. el número de tick
+	 * @param b segundo valor, p.ej. la posición empaquetada
+	 * @return valor aleatorio de 64 bits
+	 */
+	long hash(Pass pass, long a, long b)
+	{
+		long h = mix(seed ^ ((long) pass.ordinal() << 32));
+		h = mix(h + a * 0x9E3779B97F4A7C15L);
+		h = mix(h + b * 0xC2B2AE3D27D4EB4FL);
+		return h;
+	}
+
+	/**
+	 * Método que mezcla los bits de un valor (función de mezcla de SplitMix64)
+	 * @param z valor
+	 * @return valor mezclado
+	 */
+	private static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,202 @@
+package model;
+
+import model.entities.Creature;
+
+/**
+ * Resultado de un rayo lanzado con {@link World#raycast(Location, Location, double)}: lo
+ * primero que encuentra el rayo. Es modificable para poder reutilizar el mismo objeto en
+ * muchos rayos sin crear objetos nuevos
+ * @author Jose MV
+ */
+public final class RayHit
+{
+	/**
+	 * Tipos de cosas que puede encontrar un rayo
+	 */
+	public enum Type
+	{
+		/**
+		 * Bloque sólido
+		 */
+		BLOCK,
+
+		/**
+		 * Criatura
+		 */
+		CREATURE,
+
+		/**
+		 * Items en el suelo
+		 */
+		ITEMS
+	}
+
+	/**
+	 * Tipo de lo encontrado
+	 */
+	private Type type;
+
+	/**
+	 * Posición del bloque encontrado
+	 */
+	private int x;
+	private int y;
+	private int z;
+
+	/**
+	 * Posición del bloque anterior del rayo, desde el que se llega a lo encontrado
+	 */
+	private int previousX;
+	private int previousY;
+	private int previousZ;
+
+	/**
+	 * Distancia desde el origen del rayo hasta el bloque encontrado
+	 */
+	private double distance;
+
+	/**
+	 * Bloque, criatura o items encontrados (solo el del tipo encontrado no es null)
+	 */
+	private Block block;
+	private Creature creature;
+	private ItemStack items;
+
+	/**
+	 * Constructor: resultado vacío, para pasarlo a
+	 * {@link World#raycast(double, double, double, double, double, double, double, RayHit)}
+	 */
+	public RayHit()
+	{
+	}
+
+	/**
+	 * Método que guarda lo encontrado por un rayo
+	 * @param type tipo
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @param previousX coordenada x del bloque anterior
+	 * @param previousY coordenada y del bloque anterior
+	 * @param previousZ coordenada z del bloque anterior
+	 * @param distance distancia desde el origen
+	 * @param block bloque, o null
+	 * @param creature criatura, o null
+	 * @param items items, o null
+	 */
+	void set(Type type, int x, int y, int z, int previousX, int previousY, int previousZ, double distance,
+		Block block, Creature creature, ItemStack items)
+	{
+		this.type = type;
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.previousX = previousX;
+		this.previousY = previousY;
+		this.previousZ = previousZ;
+		this.distance = distance;
+		this.block = block;
+		this.creature = creature;
+		this.items = items;
+	}
+
+	/**
+	 * Getter
+	 * @return tipo de lo encontrado
+	 */
+	public Type getType()
+	{
+		return type;
+	}
+
+	/**
+	 * Getter
+	 * @return x coordenada x del bloque encontrado
+	 */
+	public int getX()
+	{
+		return x;
+	}
+
+	/**
+	 * Getter
+	 * @return y coordenada y del bloque encontrado
+	 */
+	public int getY()
+	{
+		return y;
+	}
+
+	/**
+	 * Getter
+	 * @return z coordenada z del bloque encontrado
+	 */
+	public int getZ()
+	{
+		return z;
+	}
+
+	/**
+	 * Getter
+	 * @return nueva posición del bloque encontrado
+	 */
+	public BlockPos getPos()
+	{
+		return new BlockPos(x, y, z);
+	}
+
+	/**
+	 * Getter
+	 * @return nueva posición del bloque anterior del rayo, p.ej. para colocar un bloque junto
+	 * al encontrado
+	 */
+	public BlockPos getPreviousPos()
+	{
+		return new BlockPos(previousX, previousY, previousZ);
+	}
+
+	/**
+	 * Getter
+	 * @return distancia desde el origen del rayo hasta el borde del bloque encontrado
+	 */
+	public double getDistance()
+	{
+		return distance;
+	}
+
+	/**
+	 * Getter
+	 * @return bloque encontrado, o null si no es un bloque
+	 */
+	public Block getBlock()
+	{
+		return block;
+	}
+
+	/**
+	 * Getter
+	 * @return criatura encontrada, o null si no es una criatura
+	 */
+	public Creature getCreature()
+	{
+		return creature;
+	}
+
+	/**
+	 * Getter
+	 * @return items encontrados, o null si no son items
+	 */
+	public ItemStack getItems()
+	{
+		return items;
+	}
+
+	/**
+	 * Método toString para imprimir objeto
+	 * @return String imprime el tipo y la posición
+	 */
+	public String toString()
+	{
+		return "RayHit{" + type + ",x=" + x + ",y=" + y + ",z=" + z + ",distance=" + distance + "}";
+	}
+}
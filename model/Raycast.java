@@ -0,0 +1,188 @@
+package model;
+
+import model.entities.Creature;
+
+/**
+ * Recorrido de los bloques que atraviesa un rayo con el algoritmo DDA de Amanatides y Woo:
+ * en cada paso se avanza al bloque vecino por la cara que el rayo cruza antes, así que se
+ * visitan exactamente los bloques atravesados, en orden, sin crear objetos. Las secciones
+ * sin bloques (y las celdas sin criaturas del índice de criaturas) se reconocen al entrar en
+ * ellas y dentro solo se avanza, sin consultar el almacén
+ * @author Jose MV
+ */
+final class Raycast
+{
+	/**
+	 * Valor que devuelve {@link #cast} cuando el rayo no encuentra nada
+	 */
+	static final long NO_HIT = Long.MIN_VALUE;
+
+	/**
+	 * Constructor privado: clase de utilidades
+	 */
+	private Raycast()
+	{
+	}
+
+	/**
+	 * Método que lanza un rayo y busca lo primero que encuentra, sin contar el bloque de
+	 * origen. Los líquidos no lo detienen
+	 * @param world mundo
+	 * @param ox coordenada x del origen
+	 * @param oy coordenada y del origen
+	 * @param oz coordenada z del origen
+	 * @param dx componente x de la dirección (no hace falta que sea unitaria)
+	 * @param dy componente y de la dirección
+	 * @param dz componente z de la dirección
+	 * @param maxDistance distancia máxima
+	 * @param entities true para detenerse también en criaturas e items, false solo en bloques
+	 * @param hit resultado que se rellena si encuentra algo, o null
+	 * @return posición empaquetada de lo encontrado, o {@link #NO_HIT}
+	 */
+	static long cast(World world, double ox, double oy, double oz, double dx, double dy, double dz, double maxDistance,
+		boolean entities, RayHit hit)
+	{
+		double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+		int x = BlockStorage.floor(ox);
+		int y = BlockStorage.floor(oy);
+		int z = BlockStorage.floor(oz);
+
+		if (!(length > 0) || !Neighbourhood.isInside(world, x, y, z))
+		{
+			return NO_HIT;
+		}
+
+		dx /= length;
+		dy /= length;
+		dz /= length;
+
+		// distancia entre dos caras de bloque seguidas en cada eje, y hasta la primera
+		int stepX = (dx > 0) ? 1 : ((dx < 0) ? -1 : 0);
+		int stepY = (dy > 0) ? 1 : ((dy < 0) ? -1 : 0);
+		int stepZ = (dz > 0) ? 1 : ((dz < 0) ? -1 : 0);
+		double deltaX = (stepX != 0) ? 1 / Math.abs(dx) : Double.POSITIVE_INFINITY;
+		double deltaY = (stepY != 0) ? 1 / Math.abs(dy) : Double.POSITIVE_INFINITY;
+		double deltaZ = (stepZ != 0) ? 1 / Math.abs(dz) : Double.POSITIVE_INFINITY;
+		double nextX = (stepX > 0) ? (x + 1 - ox) * deltaX : ((stepX < 0) ? (ox - x) * deltaX : Double.POSITIVE_INFINITY);
+		double nextY = (stepY > 0) ? (y + 1 - oy) * deltaY : ((stepY < 0) ? (oy - y) * deltaY : Double.POSITIVE_INFINITY);
+		double nextZ = (stepZ > 0) ? (z + 1 - oz) * deltaZ : ((stepZ < 0) ? (oz - z) * deltaZ : Double.POSITIVE_INFINITY);
+
+		BlockStorage blocks = world.getBlockStorage();
+		CreatureIndex creatures = world.getCreatureIndex();
+		LongMap<ItemStack> items = world.getItemMap();
+		boolean checkItems = entities && !items.isEmpty();
+		int minCoord = world.getMinCoord();
+		long section = NO_HIT;
+		long cell = NO_HIT;
+		boolean noBlocks = true;
+		boolean noCreatures = true;
+
+		while (true)
+		{
+			int px = x;
+			int py = y;
+			int pz = z;
+			double t;
+
+			if ((nextX < nextY) && (nextX < nextZ))
+			{
+				x += stepX;
+				t = nextX;
+				nextX += deltaX;
+			}
+
+			else if (nextY < nextZ)
+			{
+				y += stepY;
+				t = nextY;
+				nextY += deltaY;
+			}
+
+			else
+			{
+				z += stepZ;
+				t = nextZ;
+				nextZ += deltaZ;
+			}
+
+			// el mundo es una caja: al salir de él ya no se vuelve a entrar
+			if ((t > maxDistance) || !Neighbourhood.isInside(world, x, y, z))
+			{
+				return NO_HIT;
+			}
+
+			// las secciones del almacén empiezan en la coordenada mínima del mundo
+			long s = LocationKey.pack((x - minCoord) >> 4, y >> 4, (z - minCoord) >> 4);
+			if (s != section)
+			{
+				section = s;
+				noBlocks = blocks.isSectionEmpty(x, y, z);
+			}
+
+			if (!noBlocks)
+			{
+				Block block = blocks.get(x, y, z);
+
+				if ((block != null) && !block.getType().isLiquid())
+				{
+					return found(hit, RayHit.Type.BLOCK, x, y, z, px, py, pz, t, block, null, null);
+				}
+			}
+
+			if (entities)
+			{
+				long c = LocationKey.pack(x >> 4, y >> 4, z >> 4);
+				if (c != cell)
+				{
+					cell = c;
+					noCreatures = creatures.isCellEmpty(x, y, z);
+				}
+
+				if (!noCreatures || checkItems)
+				{
+					long key = LocationKey.pack(x, y, z);
+					Creature creature = noCreatures ? null : creatures.get(key);
+
+					if (creature != null)
+					{
+						return found(hit, RayHit.Type.CREATURE, x, y, z, px, py, pz, t, null, creature, null);
+					}
+
+					ItemStack stack = checkItems ? items.get(key) : null;
+
+					if (stack != null)
+					{
+						return found(hit, RayHit.Type.ITEMS, x, y, z, px, py, pz, t, null, null, stack);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Método que guarda lo encontrado en el resultado
+	 * @param hit resultado, o null
+	 * @param type tipo
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @param px coordenada x del bloque anterior
+	 * @param py coordenada y del bloque anterior
+	 * @param pz coordenada z del bloque anterior
+	 * @param t distancia desde el origen
+	 * @param block bloque, o null
+	 * @param creature criatura, o null
+	 * @param items items, o null
+	 * @return posición empaquetada de lo encontrado
+	 */
+	private static long found(RayHit hit, RayHit.Type type, int x, int y, int z, int px, int py, int pz, double t,
+		Block block, Creature creature, ItemStack items)
+	{
+		if (hit != null)
+		{
+			hit.set(type, x, y, z, px, py, pz, t, block, creature, items);
+		}
+
+		return LocationKey.pack(x, y, z);
+	}
+}
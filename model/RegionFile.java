@@ -0,0 +1,179 @@
+package model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Fichero de región con 32x32 columnas de chunk. Tiene una cabecera de tamaño fijo
+ * con la posición de cada chunk y, a continuación, los chunks guardados, todos del
+ * mismo tamaño. Se lee y escribe mapeando el fichero en memoria
+ * @author Jose MV
+ */
+class RegionFile implements Closeable
+{
+	/**
+	 * Chunks por lado de una región
+	 */
+	static final int CHUNKS_PER_SIDE = 32;
+
+	/**
+	 * Identificador del formato
+	 */
+	private static final int MAGIC = 0x4A435247; // "JCRG"
+
+	/**
+	 * Versión del formato
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * Bytes de la cabecera: identificador, versión, número de chunks y una entrada por chunk
+	 */
+	static final int HEADER_BYTES = 12 + CHUNKS_PER_SIDE * CHUNKS_PER_SIDE * 4;
+
+	/**
+	 * Bytes de las alturas de las 16x16 columnas de un chunk
+	 */
+	static final int HEIGHTS_BYTES = ChunkSection.SIZE * ChunkSection.SIZE * 2;
+
+	/**
+	 * Bytes de un chunk guardado: estados de los bloques y alturas de las columnas
+	 */
+	static final int PAYLOAD_BYTES = OffHeapBlockStorage.CHUNK_BYTES + HEIGHTS_BYTES;
+
+	/**
+	 * Canal del fichero
+	 */
+	private FileChannel channel;
+
+	/**
+	 * Cabecera mapeada del fichero
+	 */
+	private MappedByteBuffer header;
+
+	/**
+	 * Número de chunks guardados en el fichero
+	 */
+	private int chunkCount;
+
+	/**
+	 * Constructor: abre el fichero y, si es nuevo, escribe una cabecera vacía
+	 * @param file fichero de la región
+	 * @param write true para poder escribir chunks
+	 * @throws IOException si no se puede abrir o el formato no es válido
+	 */
+	RegionFile(File file, boolean write) throws IOException
+	{
+		if (write)
+		{
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		}
+
+		else
+		{
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		}
+
+		boolean empty = channel.size() == 0;
+		header = channel.map(write ? MapMode.READ_WRITE : MapMode.READ_ONLY, 0, HEADER_BYTES);
+
+		if (empty)
+		{
+			header.putInt(0, MAGIC);
+			header.putInt(4, VERSION);
+			header.putInt(8, 0);
+		}
+
+		else if ((header.getInt(0) != MAGIC) || (header.getInt(4) != VERSION))
+		{
+			channel.close();
+			throw new IOException("Bad region file " + file);
+		}
+
+		chunkCount = header.getInt(8);
+	}
+
+	/**
+	 * Método que obtiene el nombre del fichero de una región
+	 * @param rx coordenada x de la región
+	 * @param rz coordenada z de la región
+	 * @return nombre del fichero
+	 */
+	static String fileName(int rx, int rz)
+	{
+		return "r." + rx + "." + rz + ".jcr";
+	}
+
+	/**
+	 * Método que obtiene la entrada de la cabecera de un chunk
+	 * @param cx coordenada x del chunk dentro de la región (0-31)
+	 * @param cz coordenada z del chunk dentro de la región (0-31)
+	 * @return índice del chunk en la zona de datos, o -1 si no está guardado
+	 */
+	int getSlot(int cx, int cz)
+	{
+		return header.getInt(12 + (cx * CHUNKS_PER_SIDE + cz) * 4) - 1;
+	}
+
+	/**
+	 * Método que reserva espacio para un chunk si todavía no lo tiene
+	 * @param cx coordenada x del chunk dentro de la región (0-31)
+	 * @param cz coordenada z del chunk dentro de la región (0-31)
+	 * @return índice del chunk en la zona de datos
+	 */
+	int allocate(int cx, int cz)
+	{
+		int slot = getSlot(cx, cz);
+
+		if (slot < 0)
+		{
+			slot = chunkCount++;
+			header.putInt(12 + (cx * CHUNKS_PER_SIDE + cz) * 4, slot + 1);
+			header.putInt(8, chunkCount);
+		}
+
+		return slot;
+	}
+
+	/**
+	 * Método que mapea la zona de datos con todos los chunks reservados
+	 * @param mode modo de mapeo; PRIVATE carga las páginas bajo demanda sin modificar el fichero
+	 * @return buffer mapeado; el chunk del índice i empieza en i * PAYLOAD_BYTES
+	 * @throws IOException si no se puede mapear
+	 */
+	MappedByteBuffer mapChunks(MapMode mode) throws IOException
+	{
+		return channel.map(mode, HEADER_BYTES, (long) chunkCount * PAYLOAD_BYTES);
+	}
+
+	/**
+	 * Método que obtiene el trozo de la zona de datos de un chunk
+	 * @param data buffer de {@link #mapChunks(MapMode)}
+	 * @param slot índice del chunk
+	 * @return buffer del chunk que empieza en la posición 0
+	 */
+	static ByteBuffer slice(ByteBuffer data, int slot)
+	{
+		return data.slice(slot * PAYLOAD_BYTES, PAYLOAD_BYTES);
+	}
+
+	/**
+	 * Método que cierra el fichero y vuelca la cabecera al disco
+	 * @throws IOException si falla el volcado
+	 */
+	public void close() throws IOException
+	{
+		if (!header.isReadOnly())
+		{
+			header.force();
+		}
+
+		channel.close();
+	}
+}
@@ -14,6 +14,16 @@ public class SolidBlock extends Block
 	 */
 	private ItemStack drops;	
 	
+	/**
+	 * Indica que el bloque suelta una unidad de su propio material. Los items se crean al pedirlos
+	 */
+	private boolean dropsSelf;
+	
+	/**
+	 * Indica que el bloque es una instancia compartida e inmutable de {@link BlockFactory}
+	 */
+	private boolean shared;
+	
 	/**
 	 * Constructor
 	 * @param type objeto Material
@@ -30,6 +40,19 @@ public class SolidBlock extends Block
 		}
 	}
 	
+	/**
+	 * Constructor de las instancias compartidas
+	 * @param type objeto Material
+	 * @param dropsSelf indica si el bloque suelta una unidad de su material
+	 * @throws WrongMaterialException excepción de material incorrecto
+	 */
+	SolidBlock(Material type, boolean dropsSelf) throws WrongMaterialException
+	{
+		this(type);
+		this.dropsSelf = dropsSelf;
+		shared = true;
+	}
+	
 	/**
 	 * Constructor de copia
 	 * @param b objeto SolidBlock a copiar
@@ -45,7 +68,32 @@ public class SolidBlock extends Block
 	 */
 	public ItemStack getDrops()
 	{
-		return drops;
+		ItemStack is = drops;
+		
+		if (dropsSelf)
+		{
+			try
+			{
+				is = new ItemStack(getType(), 1);
+			}
+			
+			catch (StackSizeException e)
+			{
+				// Una unidad de un bloque siempre es válida
+				e.printStackTrace();
+			}
+		}
+		
+		return is;
+	}
+	
+	/**
+	 * Getter
+	 * @return indica si el bloque suelta algún item
+	 */
+	public boolean hasDrops()
+	{
+		return dropsSelf || (drops != null);
 	}
 	
 	/**
@@ -53,9 +101,15 @@ public class SolidBlock extends Block
 	 * @param type tipo de Material
 	 * @param amount cantidad de items
 	 * @throws StackSizeException excepción por cantidad del item incorrecta
+	 * @throws UnsupportedOperationException si el bloque es una instancia compartida
 	 */
 	public void setDrops(Material type, int amount) throws StackSizeException
 	{
+		if (shared)
+		{
+			throw new UnsupportedOperationException("Los bloques compartidos no se pueden modificar");
+		}
+		
 		ItemStack is = new ItemStack(type, amount);
 		
 		if (!is.checkAmount(type, amount))
@@ -116,7 +170,7 @@ public class SolidBlock extends Block
 	{
 		final int prime = 31;
 		int result = super.hashCode();
-		result = prime * result + ((drops == null) ? 0 : drops.hashCode());
+		result = prime * result + (hasDrops() ? (prime * (prime + dropAmount()) + dropType().hashCode()) : 0);
 		return result;
 	}
 	
@@ -140,16 +194,32 @@ public class SolidBlock extends Block
 			return false;
 		}
 		SolidBlock other = (SolidBlock) obj;
-		if (drops == null)
+		if (hasDrops() != other.hasDrops())
 		{
-			if (other.drops != null)
-			{
-				return false;
-			}
-		} else if (!drops.equals(other.drops))
+			return false;
+		}
+		if (hasDrops() && ((dropType() != other.dropType()) || (dropAmount() != other.dropAmount())))
 		{
 			return false;
 		}
 		return true;
 	}
+	
+	/**
+	 * Getter
+	 * @return material que suelta el bloque, sin crear el ItemStack
+	 */
+	private Material dropType()
+	{
+		return dropsSelf ? getType() : drops.getType();
+	}
+	
+	/**
+	 * Getter
+	 * @return cantidad que suelta el bloque, sin crear el ItemStack
+	 */
+	private int dropAmount()
+	{
+		return dropsSelf ? 1 : drops.getAmount();
+	}
 }
\ No newline at end of file
@@ -0,0 +1,147 @@
+package model;
+
+/**
+ * Cola de posiciones pendientes de actualizar, sin repetidos. Las posiciones se guardan
+ * empaquetadas (ver {@link LocationKey}) en una cola circular de longs, y un mapa indica
+ * cuáles están en la cola para no añadir dos veces la misma
+ * @author Jose MV
+ */
+class UpdateQueue
+{
+	/**
+	 * Capacidad inicial de la cola
+	 */
+	private static final int INITIAL_CAPACITY = 256;
+
+	/**
+	 * Cola circular de posiciones
+	 */
+	private long[] queue;
+
+	/**
+	 * Posición del primer elemento de la cola
+	 */
+	private int head;
+
+	/**
+	 * Número de elementos de la cola
+	 */
+	private int count;
+
+	/**
+	 * Posiciones que están en la cola
+	 */
+	private final LongMap<Boolean> queued;
+
+	/**
+	 * Constructor
+	 */
+	UpdateQueue()
+	{
+		queue = new long[INITIAL_CAPACITY];
+		queued = new LongMap<Boolean>();
+	}
+
+	/**
+	 * Getter
+	 * @return número de posiciones pendientes
+	 */
+	int size()
+	{
+		return count;
+	}
+
+	/**
+	 * Método que indica si no hay posiciones pendientes
+	 * @return true si la cola está vacía
+	 */
+	boolean isEmpty()
+	{
+		return count == 0;
+	}
+
+	/**
+	 * Getter
+	 * @param i número de posición desde el principio de la cola, menor que {@link #size()}
+	 * @return posición empaquetada
+	 */
+	long get(int i)
+	{
+		return queue[(head + i) & (queue.length - 1)];
+	}
+
+	/**
+	 * Método que añade una posición al final de la cola si no estaba ya
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @return true si se ha añadido
+	 */
+	boolean add(int x, int y, int z)
+	{
+		return add(LocationKey.pack(x, y, z));
+	}
+
+	/**
+	 * Método que añade una posición al final de la cola si no estaba ya
+	 * @param key posición empaquetada
+	 * @return true si se ha añadido
+	 */
+	boolean add(long key)
+	{
+		if (queued.containsKey(key))
+		{
+			return false;
+		}
+
+		queued.put(key, Boolean.TRUE);
+
+		if (count == queue.length)
+		{
+			grow();
+		}
+
+		queue[(head + count) & (queue.length - 1)] = key;
+		count++;
+		return true;
+	}
+
+	/**
+	 * Método que saca la primera posición de la cola. Después se puede volver a añadir
+	 * @return posición empaquetada
+	 */
+	long poll()
+	{
+		long key = queue[head];
+		head = (head + 1) & (queue.length - 1);
+		count--;
+		queued.remove(key);
+		return key;
+	}
+
+	/**
+	 * Método que vacía la cola
+	 */
+	void clear()
+	{
+		head = 0;
+		count = 0;
+		queued.clear();
+	}
+
+	/**
+	 * Método que duplica la capacidad de la cola manteniendo el orden de los elementos
+	 */
+	private void grow()
+	{
+		long[] larger = new long[queue.length * 2];
+
+		for (int i = 0; i < count; i++)
+		{
+			larger[i] = queue[(head + i) & (queue.length - 1)];
+		}
+
+		queue = larger;
+		head = 0;
+	}
+}
@@ -0,0 +1,431 @@
+package model;
+
+import model.entities.Creature;
+import model.entities.Player;
+import model.exceptions.BadLocationException;
+
+/**
+ * Dibujo en texto de los bloques que rodean una posición, con el formato de
+ * {@link World#getNeighbourhoodString(Location)} pero con un radio configurable: una fila de
+ * texto por cada z, y en cada fila una capa por cada y (de arriba abajo) separadas por un
+ * espacio, con un carácter por cada x.
+ * <p>
+ * Los bloques se consultan por secciones del almacén, saltando las vacías, y las criaturas
+ * por celdas del índice de criaturas. El dibujo se escribe en un buffer que se reutiliza, así
+ * que dibujar de nuevo no crea objetos
+ * @author Jose MV
+ */
+public final class ViewportRenderer
+{
+	/**
+	 * Radio por defecto, el del alrededor del jugador
+	 */
+	public static final int DEFAULT_RADIUS = 1;
+
+	/**
+	 * Radio del dibujo: se dibujan los bloques a esa distancia como mucho en cada eje
+	 */
+	private final int radius;
+
+	/**
+	 * Número de bloques por eje (2 * radio + 1)
+	 */
+	private final int side;
+
+	/**
+	 * Longitud de una fila de texto, sin el salto de línea
+	 */
+	private final int rowLength;
+
+	/**
+	 * Buffer del último dibujo, para {@link #render(Location, StringBuilder)}
+	 */
+	private final char[] frame;
+
+	/**
+	 * Datos del dibujo en curso, para {@link #itemVisitor}
+	 */
+	private char[] out;
+	private int offset;
+	private int originX;
+	private int originY;
+	private int originZ;
+
+	/**
+	 * Objeto que dibuja los items del mapa de items que caen dentro del dibujo
+	 */
+	private final LongMap.Visitor<ItemStack> itemVisitor = new LongMap.Visitor<ItemStack>()
+	{
+		public void visit(long key, ItemStack stack)
+		{
+			int dx = LocationKey.getX(key) - originX;
+			int dy = LocationKey.getY(key) - originY;
+			int dz = LocationKey.getZ(key) - originZ;
+
+			if ((Math.abs(dx) <= radius) && (Math.abs(dy) <= radius) && (Math.abs(dz) <= radius))
+			{
+				out[offset + position(dx, dy, dz)] = Character.toUpperCase(stack.getType().getSymbol());
+			}
+		}
+	};
+
+	/**
+	 * Constructor
+	 * @param radius radio del dibujo
+	 * @throws IllegalArgumentException si el radio es negativo
+	 */
+	public ViewportRenderer(int radius)
+	{
+		if (radius < 0)
+		{
+			throw new IllegalArgumentException("El radio no puede ser negativo: " + radius);
+		}
+
+		this.radius = radius;
+		side = 2 * radius + 1;
+		rowLength = side * side + side - 1;
+		frame = new char[getFrameLength()];
+	}
+
+	/**
+	 * Getter
+	 * @return radio del dibujo
+	 */
+	public int getRadius()
+	{
+		return radius;
+	}
+
+	/**
+	 * Getter
+	 * @return número de caracteres de un dibujo
+	 */
+	public int getFrameLength()
+	{
+		return side * (rowLength + 1) - 1;
+	}
+
+	/**
+	 * Método que dibuja el alrededor de una posición y lo añade al final de un StringBuilder.
+	 * Si el StringBuilder ya tiene capacidad suficiente no se crea ningún objeto
+	 * @param loc posición central
+	 * @param str StringBuilder donde se añade el dibujo
+	 * @throws BadLocationException si la posición no tiene mundo
+	 */
+	public void render(Location loc, StringBuilder str) throws BadLocationException
+	{
+		if (loc.getWorld() == null)
+		{
+			throw new BadLocationException("Bad Location in render");
+		}
+
+		int length = render(loc.getWorld(), BlockStorage.floor(loc.getX()), BlockStorage.floor(loc.getY()),
+			BlockStorage.floor(loc.getZ()), frame, 0);
+		str.append(frame, 0, length);
+	}
+
+	/**
+	 * Método que dibuja el alrededor de una posición en un array de caracteres. Genera los
+	 * chunks del dibujo que aún no se han generado
+	 * @param world mundo
+	 * @param x coordenada x central
+	 * @param y coordenada y central
+	 * @param z coordenada z central
+	 * @param out array donde se escribe el dibujo
+	 * @param offset posición del array donde empieza el dibujo
+	 * @return número de caracteres escritos ({@link #getFrameLength()})
+	 * @throws IllegalArgumentException si el dibujo no cabe en el array
+	 */
+	public int render(World world, int x, int y, int z, char[] out, int offset)
+	{
+		int length = getFrameLength();
+
+		if ((offset < 0) || (out.length - offset < length))
+		{
+			throw new IllegalArgumentException("El dibujo necesita " + length + " caracteres desde la posición " + offset);
+		}
+
+		int minCoord = world.getMinCoord();
+		int maxCoord = world.getMaxCoord();
+		int minX = Math.max(x - radius, minCoord);
+		int minY = Math.max(y - radius, 0);
+		int minZ = Math.max(z - radius, minCoord);
+		int maxX = Math.min(x + radius, maxCoord);
+		int maxY = Math.min(y + radius, BlockStorage.HEIGHT - 1);
+		int maxZ = Math.min(z + radius, maxCoord);
+		boolean inside = (minX <= maxX) && (minY <= maxY) && (minZ <= maxZ);
+
+		clear(x, y, z, minX, minY, minZ, maxX, maxY, maxZ, out, offset);
+
+		if (inside)
+		{
+			world.generateColumns(minX, minZ, maxX, maxZ);
+			drawBlocks(world.getBlockStorage(), minCoord, x, y, z, minX, minY, minZ, maxX, maxY, maxZ, out, offset);
+			drawCreatures(world.getCreatureIndex(), x, y, z, minX, minY, minZ, maxX, maxY, maxZ, out, offset);
+			drawItems(world.getItemMap(), x, y, z, minX, minY, minZ, maxX, maxY, maxZ, out, offset);
+
+			for (Player player : world.getPlayerArray())
+			{
+				int px = player.getBlockX();
+				int py = player.getBlockY();
+				int pz = player.getBlockZ();
+
+				if ((Math.abs(px - x) <= radius) && (Math.abs(py - y) <= radius) && (Math.abs(pz - z) <= radius)
+					&& Neighbourhood.isInside(world, px, py, pz))
+				{
+					out[offset + position(px - x, py - y, pz - z)] = 'P';
+				}
+			}
+		}
+
+		return length;
+	}
+
+	/**
+	 * Método que escribe los separadores del dibujo, 'X' fuera del mundo y '.' en el resto
+	 * @param x coordenada x central
+	 * @param y coordenada y central
+	 * @param z coordenada z central
+	 * @param minX coordenada x mínima dentro del mundo
+	 * @param minY coordenada y mínima dentro del mundo
+	 * @param minZ coordenada z mínima dentro del mundo
+	 * @param maxX coordenada x máxima dentro del mundo
+	 * @param maxY coordenada y máxima dentro del mundo
+	 * @param maxZ coordenada z máxima dentro del mundo
+	 * @param out array del dibujo
+	 * @param offset posición del array donde empieza el dibujo
+	 */
+	private void clear(int x, int y, int z, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, char[] out,
+		int offset)
+	{
+		int pos = offset;
+
+		for (int dz = -radius; dz <= radius; dz++)
+		{
+			for (int dy = radius; dy >= -radius; dy--)
+			{
+				boolean layerInside = (z + dz >= minZ) && (z + dz <= maxZ) && (y + dy >= minY) && (y + dy <= maxY);
+
+				for (int dx = -radius; dx <= radius; dx++)
+				{
+					out[pos++] = (layerInside && (x + dx >= minX) && (x + dx <= maxX)) ? '.' : 'X';
+				}
+
+				if (dy > -radius)
+				{
+					out[pos++] = ' ';
+				}
+			}
+
+			if (dz < radius)
+			{
+				out[pos++] = '\n';
+			}
+		}
+	}
+
+	/**
+	 * Método que dibuja los bloques, recorriendo la caja por secciones del almacén y saltando
+	 * las secciones vacías
+	 * @param blocks bloques del mundo
+	 * @param minCoord coordenada mínima del mundo, donde empiezan las secciones en x y z
+	 * @param x coordenada x central
+	 * @param y coordenada y central
+	 * @param z coordenada z central
+	 * @param minX coordenada x mínima dentro del mundo
+	 * @param minY coordenada y mínima dentro del mundo
+	 * @param minZ coordenada z mínima dentro del mundo
+	 * @param maxX coordenada x máxima dentro del mundo
+	 * @param maxY coordenada y máxima dentro del mundo
+	 * @param maxZ coordenada z máxima dentro del mundo
+	 * @param out array del dibujo
+	 * @param offset posición del array donde empieza el dibujo
+	 */
+	private void drawBlocks(BlockStorage blocks, int minCoord, int x, int y, int z, int minX, int minY, int minZ,
+		int maxX, int maxY, int maxZ, char[] out, int offset)
+	{
+		for (int sx = minX; sx <= maxX; sx = sectionEnd(sx, minCoord) + 1)
+		{
+			int ex = Math.min(sectionEnd(sx, minCoord), maxX);
+
+			for (int sy = minY; sy <= maxY; sy = sectionEnd(sy, 0) + 1)
+			{
+				int ey = Math.min(sectionEnd(sy, 0), maxY);
+
+				for (int sz = minZ; sz <= maxZ; sz = sectionEnd(sz, minCoord) + 1)
+				{
+					int ez = Math.min(sectionEnd(sz, minCoord), maxZ);
+
+					if (!blocks.isSectionEmpty(sx, sy, sz))
+					{
+						for (int bx = sx; bx <= ex; bx++)
+						{
+							for (int by = sy; by <= ey; by++)
+							{
+								for (int bz = sz; bz <= ez; bz++)
+								{
+									Block block = blocks.get(bx, by, bz);
+
+									if (block != null)
+									{
+										out[offset + position(bx - x, by - y, bz - z)] = block.getType().getSymbol();
+									}
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Método que dibuja las criaturas, recorriendo la caja por celdas del índice de criaturas
+	 * y saltando las celdas vacías. Las criaturas tapan a los bloques
+	 * @param creatures índice de criaturas
+	 * @param x coordenada x central
+	 * @param y coordenada y central
+	 * @param z coordenada z central
+	 * @param minX coordenada x mínima dentro del mundo
+	 * @param minY coordenada y mínima dentro del mundo
+	 * @param minZ coordenada z mínima dentro del mundo
+	 * @param maxX coordenada x máxima dentro del mundo
+	 * @param maxY coordenada y máxima dentro del mundo
+	 * @param maxZ coordenada z máxima dentro del mundo
+	 * @param out array del dibujo
+	 * @param offset posición del array donde empieza el dibujo
+	 */
+	private void drawCreatures(CreatureIndex creatures, int x, int y, int z, int minX, int minY, int minZ, int maxX,
+		int maxY, int maxZ, char[] out, int offset)
+	{
+		if (creatures.size() == 0)
+		{
+			return;
+		}
+
+		for (int cx = minX; cx <= maxX; cx = cellEnd(cx) + 1)
+		{
+			int ex = Math.min(cellEnd(cx), maxX);
+
+			for (int cy = minY; cy <= maxY; cy = cellEnd(cy) + 1)
+			{
+				int ey = Math.min(cellEnd(cy), maxY);
+
+				for (int cz = minZ; cz <= maxZ; cz = cellEnd(cz) + 1)
+				{
+					int ez = Math.min(cellEnd(cz), maxZ);
+
+					if (!creatures.isCellEmpty(cx, cy, cz))
+					{
+						for (int bx = cx; bx <= ex; bx++)
+						{
+							for (int by = cy; by <= ey; by++)
+							{
+								for (int bz = cz; bz <= ez; bz++)
+								{
+									Creature creature = creatures.get(LocationKey.pack(bx, by, bz));
+
+									if (creature != null)
+									{
+										out[offset + position(bx - x, by - y, bz - z)] = Character.toUpperCase(creature.getSymbol());
+									}
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Método que dibuja los items, que tapan a las criaturas y a los bloques. Si hay menos
+	 * items que posiciones en el dibujo se recorre el mapa de items; si no, se consulta cada
+	 * posición
+	 * @param items mapa de items
+	 * @param x coordenada x central
+	 * @param y coordenada y central
+	 * @param z coordenada z central
+	 * @param minX coordenada x mínima dentro del mundo
+	 * @param minY coordenada y mínima dentro del mundo
+	 * @param minZ coordenada z mínima dentro del mundo
+	 * @param maxX coordenada x máxima dentro del mundo
+	 * @param maxY coordenada y máxima dentro del mundo
+	 * @param maxZ coordenada z máxima dentro del mundo
+	 * @param out array del dibujo
+	 * @param offset posición del array donde empieza el dibujo
+	 */
+	private void drawItems(LongMap<ItemStack> items, int x, int y, int z, int minX, int minY, int minZ, int maxX,
+		int maxY, int maxZ, char[] out, int offset)
+	{
+		if (items.isEmpty())
+		{
+			return;
+		}
+
+		if (items.size() < (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1))
+		{
+			this.out = out;
+			this.offset = offset;
+			originX = x;
+			originY = y;
+			originZ = z;
+			items.forEach(itemVisitor);
+			this.out = null;
+		}
+
+		else
+		{
+			for (int bx = minX; bx <= maxX; bx++)
+			{
+				for (int by = minY; by <= maxY; by++)
+				{
+					for (int bz = minZ; bz <= maxZ; bz++)
+					{
+						ItemStack stack = items.get(LocationKey.pack(bx, by, bz));
+
+						if (stack != null)
+						{
+							out[offset + position(bx - x, by - y, bz - z)] = Character.toUpperCase(stack.getType().getSymbol());
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Método que calcula la posición de un bloque dentro del dibujo
+	 * @param dx distancia en x al centro
+	 * @param dy distancia en y al centro
+	 * @param dz distancia en z al centro
+	 * @return posición desde el principio del dibujo
+	 */
+	private int position(int dx, int dy, int dz)
+	{
+		return (dz + radius) * (rowLength + 1) + (radius - dy) * (side + 1) + dx + radius;
+	}
+
+	/**
+	 * Método que calcula la última coordenada de la sección del almacén que contiene una
+	 * coordenada
+	 * @param c coordenada
+	 * @param origin coordenada donde empiezan las secciones en ese eje
+	 * @return última coordenada de la sección
+	 */
+	private static int sectionEnd(int c, int origin)
+	{
+		return origin + ((c - origin) | (ChunkSection.SIZE - 1));
+	}
+
+	/**
+	 * Método que calcula la última coordenada de la celda del índice de criaturas que
+	 * contiene una coordenada
+	 * @param c coordenada
+	 * @return última coordenada de la celda
+	 */
+	private static int cellEnd(int c)
+	{
+		return c | (CreatureIndex.CELL_SIZE - 1);
+	}
+}
@@ -0,0 +1,280 @@
+package model;
+
+import model.entities.Player;
+import model.exceptions.BadLocationException;
+
+/**
+ * Sesión de un observador que ve la información del jugador y su alrededor en un terminal.
+ * Recuerda lo último que se le envió y en cada actualización solo envía lo que ha cambiado,
+ * con secuencias de escape ANSI que colocan el cursor: las líneas de información que han
+ * cambiado y los tramos de cada fila del dibujo con casillas distintas. Así lo que se envía y
+ * lo que cuesta formatearlo depende de lo que cambia y no del tamaño del dibujo.
+ * <p>
+ * La primera actualización (y la siguiente a {@link #reset()}) envía todo. La pantalla del
+ * observador empieza en la fila indicada: primero las líneas de {@link Player#toString()} y
+ * debajo el dibujo de {@link ViewportRenderer}. Al terminar el cursor se deja en la línea
+ * siguiente al dibujo
+ * @author Jose MV
+ */
+public final class ViewportSession
+{
+	/**
+	 * Carácter de escape de las secuencias ANSI
+	 */
+	private static final char ESC = '\u001b';
+
+	/**
+	 * Número de casillas sin cambios entre dos tramos de una fila que se vuelven a enviar
+	 * para unirlos, porque cuesta menos que mover el cursor
+	 */
+	private static final int MAX_GAP = 4;
+
+	/**
+	 * Dibujo del alrededor del jugador
+	 */
+	private final ViewportRenderer renderer;
+
+	/**
+	 * Fila del terminal (desde 1) donde empieza la pantalla del observador
+	 */
+	private final int originRow;
+
+	/**
+	 * Último dibujo enviado y dibujo nuevo, que se intercambian en cada actualización
+	 */
+	private char[] previous;
+	private char[] current;
+
+	/**
+	 * Última información del jugador enviada, o null si hay que enviarlo todo
+	 */
+	private String previousInfo;
+
+	/**
+	 * Número de líneas de la última información enviada
+	 */
+	private int infoLines;
+
+	/**
+	 * Constructor
+	 * @param radius radio del dibujo
+	 * @param originRow fila del terminal (desde 1) donde empieza la pantalla
+	 * @throws IllegalArgumentException si el radio es negativo o la fila es menor que 1
+	 */
+	public ViewportSession(int radius, int originRow)
+	{
+		if (originRow < 1)
+		{
+			throw new IllegalArgumentException("La fila de inicio debe ser al menos 1: " + originRow);
+		}
+
+		renderer = new ViewportRenderer(radius);
+		this.originRow = originRow;
+		previous = new char[renderer.getFrameLength()];
+		current = new char[renderer.getFrameLength()];
+		previousInfo = null;
+	}
+
+	/**
+	 * Getter
+	 * @return radio del dibujo
+	 */
+	public int getRadius()
+	{
+		return renderer.getRadius();
+	}
+
+	/**
+	 * Método que hace que la siguiente actualización lo envíe todo, p.ej. si se ha borrado la
+	 * pantalla del observador
+	 */
+	public void reset()
+	{
+		previousInfo = null;
+	}
+
+	/**
+	 * Método que añade a un StringBuilder lo que ha cambiado desde la última actualización
+	 * @param player jugador
+	 * @param str StringBuilder donde se añaden los cambios
+	 * @return true si ha cambiado algo, false si no se ha añadido nada
+	 * @throws BadLocationException si la posición del jugador no tiene mundo
+	 */
+	public boolean update(Player player, StringBuilder str) throws BadLocationException
+	{
+		Location loc = player.getLocation();
+
+		if (loc.getWorld() == null)
+		{
+			throw new BadLocationException("Bad Location in update");
+		}
+
+		String info = player.toString();
+		renderer.render(loc.getWorld(), BlockStorage.floor(loc.getX()), BlockStorage.floor(loc.getY()),
+			BlockStorage.floor(loc.getZ()), current, 0);
+
+		boolean changed;
+		if ((previousInfo == null) || (countLines(info) != infoLines))
+		{
+			sendAll(info, str);
+			changed = true;
+		}
+
+		else
+		{
+			changed = sendInfoChanges(info, str);
+			changed |= sendFrameChanges(str);
+		}
+
+		if (changed)
+		{
+			moveCursor(originRow + infoLines + renderer.getRadius() * 2 + 1, 1, str);
+		}
+
+		char[] temp = previous;
+		previous = current;
+		current = temp;
+		previousInfo = info;
+
+		return changed;
+	}
+
+	/**
+	 * Método que envía la pantalla completa
+	 * @param info información del jugador
+	 * @param str StringBuilder donde se añade
+	 */
+	private void sendAll(String info, StringBuilder str)
+	{
+		infoLines = countLines(info);
+		moveCursor(originRow, 1, str);
+		str.append(ESC).append("[J").append(info).append('\n').append(current);
+	}
+
+	/**
+	 * Método que envía las líneas de información que han cambiado, borrando cada línea antes
+	 * de escribirla
+	 * @param info información del jugador
+	 * @param str StringBuilder donde se añade
+	 * @return true si ha cambiado alguna línea
+	 */
+	private boolean sendInfoChanges(String info, StringBuilder str)
+	{
+		if (info.equals(previousInfo))
+		{
+			return false;
+		}
+
+		int start = 0;
+		int previousStart = 0;
+
+		for (int line = 0; line < infoLines; line++)
+		{
+			int end = lineEnd(info, start);
+			int previousEnd = lineEnd(previousInfo, previousStart);
+
+			if ((end - start != previousEnd - previousStart)
+				|| !info.regionMatches(start, previousInfo, previousStart, end - start))
+			{
+				moveCursor(originRow + line, 1, str);
+				str.append(ESC).append("[2K").append(info, start, end);
+			}
+
+			start = end + 1;
+			previousStart = previousEnd + 1;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Método que envía los tramos del dibujo que han cambiado. En cada fila se mueve el cursor
+	 * al principio de cada tramo, y los tramos separados por pocas casillas se unen
+	 * @param str StringBuilder donde se añade
+	 * @return true si ha cambiado alguna casilla
+	 */
+	private boolean sendFrameChanges(StringBuilder str)
+	{
+		boolean changed = false;
+		int row = originRow + infoLines;
+		int rowStart = 0;
+
+		// posición siguiente al último carácter enviado, o -1 si no se ha enviado nada en la fila
+		int sent = -1;
+
+		for (int i = 0; i < current.length; i++)
+		{
+			char c = current[i];
+
+			if (c == '\n')
+			{
+				row++;
+				rowStart = i + 1;
+				sent = -1;
+			}
+
+			else if (c != previous[i])
+			{
+				if ((sent >= 0) && (i - sent <= MAX_GAP))
+				{
+					str.append(current, sent, i - sent);
+				}
+
+				else
+				{
+					moveCursor(row, i - rowStart + 1, str);
+				}
+
+				str.append(c);
+				sent = i + 1;
+				changed = true;
+			}
+		}
+
+		return changed;
+	}
+
+	/**
+	 * Método que añade la secuencia que mueve el cursor a una posición del terminal
+	 * @param row fila, desde 1
+	 * @param column columna, desde 1
+	 * @param str StringBuilder donde se añade
+	 */
+	private static void moveCursor(int row, int column, StringBuilder str)
+	{
+		str.append(ESC).append('[').append(row).append(';').append(column).append('H');
+	}
+
+	/**
+	 * Método que cuenta las líneas de un texto
+	 * @param text texto
+	 * @return número de líneas
+	 */
+	private static int countLines(String text)
+	{
+		int lines = 1;
+
+		for (int i = 0; i < text.length(); i++)
+		{
+			if (text.charAt(i) == '\n')
+			{
+				lines++;
+			}
+		}
+
+		return lines;
+	}
+
+	/**
+	 * Método que busca el final de una línea de un texto
+	 * @param text texto
+	 * @param start posición donde empieza la línea
+	 * @return posición del salto de línea, o la longitud del texto si es la última línea
+	 */
+	private static int lineEnd(String text, int start)
+	{
+		int end = text.indexOf('\n', start);
+
+		return (end < 0) ? text.length() : end;
+	}
+}
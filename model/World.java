@@ -1,26 +1,21 @@
 package model;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Random;
-import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.lang.Character;
 
-import org.bukkit.util.noise.CombinedNoiseGenerator;
-import org.bukkit.util.noise.OctaveGenerator;
-import org.bukkit.util.noise.PerlinOctaveGenerator;
-
-import model.entities.Animal;
 import model.entities.Creature;
-import model.entities.LivingEntity;
-import model.entities.Monster;
 import model.entities.Player;
 import model.exceptions.BadLocationException;
-import model.exceptions.StackSizeException;
-import model.exceptions.WrongMaterialException;
 
 /**
  * Clase que trabaja con el mundo
@@ -44,25 +39,112 @@ public class World
 	private long seed;
 	
 	/**
-	 * Mapa que indica la relación entre las localizaciones y los bloques que ahi se encuentran
+	 * Almacén por chunks de los bloques del mundo
 	 */
-	private Map<Location, Block> blocks;
+	private BlockStorage blocks;
 	
 	/**
-	 * Mapa que indica la relación entre las localizaciones y los items que ahi se encuentran
+	 * Mapa que indica la relación entre las posiciones empaquetadas y los items que ahi se encuentran
 	 */
-	private Map<Location, ItemStack> items;
+	private LongMap<ItemStack> items;
 	
 	/**
-	 * Mapa que indica la relación entre las localizaciones y las criaturas
+	 * Criaturas por posición empaquetada, agrupadas también por celdas para las consultas por zona
 	 */
-	private Map<Location, Creature> creatures;
+	private CreatureIndex creatures;
 	
 	/**
 	 * Establece el jugador del mundo
 	 */
 	private Player player;
 	
+	/**
+	 * Jugadores del mundo por nombre, incluido el principal ({@link #getPlayer()})
+	 */
+	private final Map<String, Player> players = new LinkedHashMap<String, Player>();
+	
+	/**
+	 * Los mismos jugadores en un array, que se recorre sin crear objetos y se cambia entero
+	 * al añadir o quitar uno
+	 */
+	private Player[] playerList = new Player[0];
+	
+	/**
+	 * Directorio donde se guardó o del que se cargó el mundo por última vez
+	 */
+	private File storeDirectory;
+	
+	/**
+	 * Generador de los chunks del mundo, que genera bajo demanda los que aún faltan
+	 */
+	private ChunkGenerator generator;
+	
+	/**
+	 * Radio en chunks que se genera alrededor del jugador cuando se mueve
+	 */
+	private int generationRadius;
+	
+	/**
+	 * Número máximo de posiciones que llena cada fuente de agua o lava al generar, 0 sin límite
+	 */
+	private int liquidVolumeCap;
+	
+	/**
+	 * Número de hilos con los que deciden las criaturas en cada tick
+	 */
+	private int tickThreads;
+	
+	/**
+	 * Hilos de los ticks, se crean en el primer tick con más de un hilo
+	 */
+	private ForkJoinPool tickPool;
+	
+	/**
+	 * Simulación de las criaturas, se crea en el primer tick
+	 */
+	private CreatureTicker ticker;
+	
+	/**
+	 * Número de ticks ejecutados
+	 */
+	private long ticks;
+	
+	/**
+	 * Duración en nanosegundos del último tick
+	 */
+	private long lastTickNanos;
+	
+	/**
+	 * Buscador de caminos, se crea en la primera búsqueda
+	 */
+	private PathFinder pathFinder;
+	
+	/**
+	 * Dibujo de radio 1 de {@link #getNeighbourhoodString(Location)}, se crea en el primer dibujo
+	 */
+	private ViewportRenderer neighbourhood;
+	
+	/**
+	 * Flujo de agua y lava junto a los bloques que cambian
+	 */
+	private LiquidFlow liquidFlow;
+	
+	/**
+	 * Número máximo de posiciones que revisa el flujo de líquidos en cada tick
+	 */
+	private int liquidUpdateBudget;
+	
+	/**
+	 * Gravedad de la arena junto a los bloques que cambian
+	 */
+	private FallingBlocks fallingBlocks;
+	
+	/**
+	 * Diario en el que se guardan los ticks, las acciones y los jugadores que entran y salen,
+	 * o null si no se están guardando
+	 */
+	private CommandJournal journal;
+	
 	/**
 	 * @deprecated no usar a partir de la práctica 2
 	 * @param name nombre del mundo
@@ -80,6 +162,33 @@ public class World
 	 * @throws IllegalArgumentException excepción que indica que el parámetro size no es válido
 	 */
 	public World(long seed, int size, String name) throws IllegalArgumentException
+	{
+		this(seed, size, name, new WorldOptions());
+	}
+	
+	/**
+	 * Constructor con opciones
+	 * @param seed semilla
+	 * @param size tamaño del mundo
+	 * @param name nombre del mundo
+	 * @param options opciones de creación del mundo
+	 * @throws IllegalArgumentException excepción que indica que el parámetro size no es válido
+	 */
+	public World(long seed, int size, String name, WorldOptions options) throws IllegalArgumentException
+	{
+		this(seed, size, name, options, true);
+	}
+	
+	/**
+	 * Constructor
+	 * @param seed semilla
+	 * @param size tamaño del mundo
+	 * @param name nombre del mundo
+	 * @param options opciones de creación del mundo
+	 * @param generate false para crear un mundo vacío, p.ej. para cargarlo de disco
+	 * @throws IllegalArgumentException excepción que indica que el parámetro size no es válido
+	 */
+	World(long seed, int size, String name, WorldOptions options, boolean generate) throws IllegalArgumentException
 	{
 		if (size < 1)
 		{
@@ -88,25 +197,69 @@ public class World
 		
 		else
 		{
-			blocks = new HashMap<Location, Block>();
-			items = new HashMap<Location, ItemStack>();
-			creatures = new HashMap<Location, Creature>();
+			int minCoord = (size % 2 == 0) ? -(size / 2 - 1) : -(size / 2);
+			if (options.isOffHeap())
+			{
+				blocks = new OffHeapBlockStorage(size, minCoord);
+			}
+			else
+			{
+				blocks = new HeapBlockStorage(size, minCoord);
+			}
+			items = new LongMap<ItemStack>();
+			creatures = new CreatureIndex();
 			this.name = name;
 			this.seed = seed;
 			worldSize = size;
-			generate(seed, size);
+			generationRadius = options.getGenerationRadius();
+			liquidVolumeCap = options.getLiquidVolumeCap();
+			tickThreads = options.getParallelism();
+			liquidFlow = new LiquidFlow(this);
+			fallingBlocks = new FallingBlocks(this);
+			liquidUpdateBudget = options.getLiquidUpdateBudget();
+			if (generate && !options.isLazy())
+			{
+				generate(options.getParallelism());
+			}
+			else
+			{
+				// los chunks se generan la primera vez que se usan; al cargar de disco,
+				// solo los que no se habían generado al guardar
+				heightMap = new HeightMap(size);
+				generator = new ChunkGenerator(this);
+				if (generate)
+				{
+					spawnPlayer();
+					generateAround(player.getLocation());
+				}
+			}
 		}
 	}
 	
 	/**
-	 * Clase que trabaja con la altura del mundo
+	 * Clase que trabaja con la altura del mundo: la coordenada y del bloque más alto de cada
+	 * columna. Cada columna guarda además qué secciones de 16 bloques pueden tener bloques,
+	 * para que al quitar el bloque más alto solo se busque el siguiente en esas secciones
 	 */
 	class HeightMap 
 	{
 		/**
-		 * Altura del mundo
+		 * Altura del bloque más alto de cada columna, por chunks: cada entrada guarda las
+		 * 16x16 columnas de un chunk y se reserva la primera vez que se escribe en él.
+		 * -1 si la columna no tiene bloques
+		 */
+		short[][] heightMap;
+		
+		/**
+		 * Secciones ocupadas de cada columna, por chunks: el bit s indica que puede haber
+		 * bloques entre las alturas 16*s y 16*s+15. Si el bit es 0 seguro que no los hay
+		 */
+		char[][] sections;
+		
+		/**
+		 * Número de chunks por lado del mundo
 		 */
-		double[][] heightMap;
+		int chunksPerSide;
 		
 		/**
 		 * Límite de coordenada positiva de altura
@@ -124,7 +277,9 @@ public class World
     	 */
 		HeightMap(int worldsize) 
 		{
-			heightMap = new double[worldsize][worldsize];
+			chunksPerSide = (worldsize + ChunkSection.SIZE - 1) / ChunkSection.SIZE;
+			heightMap = new short[chunksPerSide * chunksPerSide][];
+			sections = new char[chunksPerSide * chunksPerSide][];
 			positiveWorldLimit  = worldsize/2;
 			negativeWorldLimit = (worldsize % 2 == 0) ? -(positiveWorldLimit-1) : -positiveWorldLimit;
 		}
@@ -133,452 +288,758 @@ public class World
 		 * Getter
 		 * @param x coordenada 'x' entre 'positiveWorldLimit' y 'negativeWorldLimit'
 		 * @param z coordenada 'z' entre 'positiveWorldLimit' y 'negativeWorldLimit'
-		 * @return altura del mundo
+		 * @return altura del bloque más alto (-1 si la columna no tiene bloques o no se ha generado)
+		 */
+		int get(int x, int z) 
+		{
+			int lx = x - negativeWorldLimit;
+			int lz = z - negativeWorldLimit;
+			short[] chunk = heightMap[(lx >> 4) * chunksPerSide + (lz >> 4)];
+			return (chunk == null) ? -1 : chunk[((lx & 15) << 4) | (lz & 15)];
+		}
+		
+		/**
+		 * Setter. Todas las secciones hasta la altura se dan por ocupadas
+		 * @param x coordenada x
+		 * @param z coordenada z
+		 * @param y altura del bloque más alto, -1 si la columna no tiene bloques
+		 */
+		void set(int x, int z, int y) 
+		{
+			int c = chunkOf(x, z);
+			int i = columnOf(x, z);
+			heightMap[c][i] = (short) y;
+			sections[c][i] = (char) ((y < 0) ? 0 : (2 << (y >> 4)) - 1);
+		}
+		
+		/**
+		 * Método que actualiza la altura cuando se coloca un bloque
+		 * @param x coordenada x
+		 * @param y coordenada y
+		 * @param z coordenada z
 		 */
-		double get(double x, double z) 
+		void blockAdded(int x, int y, int z)
+		{
+			int c = chunkOf(x, z);
+			int i = columnOf(x, z);
+			sections[c][i] |= 1 << (y >> 4);
+			if (y > heightMap[c][i])
+				heightMap[c][i] = (short) y;
+		}
+		
+		/**
+		 * Método que actualiza la altura cuando se quita un bloque. Si era el más alto, busca
+		 * el siguiente hacia abajo saltando las secciones vacías
+		 * @param x coordenada x
+		 * @param y coordenada y
+		 * @param z coordenada z
+		 */
+		void blockRemoved(int x, int y, int z)
+		{
+			int c = chunkOf(x, z);
+			int i = columnOf(x, z);
+			if (y != heightMap[c][i])
+				return;
+			
+			int mask = sections[c][i];
+			int top = -1;
+			y--;
+			while (y >= 0)
+			{
+				int section = y >> 4;
+				if ((mask & (1 << section)) != 0)
+				{
+					for (; y >= section * ChunkSection.SIZE; y--)
+					{
+						if (blocks.containsKey(x, y, z))
+							break;
+					}
+					if (y >= section * ChunkSection.SIZE)
+					{
+						top = y;
+						break;
+					}
+					// por encima de y no quedan bloques, así que la sección está vacía
+					mask &= ~(1 << section);
+				}
+				int below = mask & ((1 << section) - 1);
+				y = (below == 0) ? -1 : (31 - Integer.numberOfLeadingZeros(below)) * ChunkSection.SIZE + ChunkSection.SIZE - 1;
+			}
+			
+			heightMap[c][i] = (short) top;
+			sections[c][i] = (char) ((top < 0) ? 0 : mask & ((2 << (top >> 4)) - 1));
+		}
+		
+		/**
+		 * Método que actualiza la altura cuando se han cambiado a la vez los bloques de un
+		 * tramo de la columna: si el bloque más alto estaba por debajo o dentro del tramo,
+		 * se busca de nuevo desde lo alto del tramo
+		 * @param x coordenada x
+		 * @param z coordenada z
+		 * @param minY coordenada y más baja del tramo
+		 * @param maxY coordenada y más alta del tramo
+		 */
+		void rangeEdited(int x, int z, int minY, int maxY)
+		{
+			int c = chunkOf(x, z);
+			int i = columnOf(x, z);
+			sections[c][i] |= ((2 << (maxY >> 4)) - 1) & ~((1 << (minY >> 4)) - 1);
+			if (heightMap[c][i] > maxY)
+				return;
+			
+			heightMap[c][i] = (short) (maxY + 1);
+			blockRemoved(x, maxY + 1, z);
+		}
+		
+		/**
+		 * Método que obtiene el chunk de una columna, reservándolo si aún no existe
+		 * @param x coordenada x
+		 * @param z coordenada z
+		 * @return índice del chunk
+		 */
+		private int chunkOf(int x, int z)
+		{
+			int c = ((x - negativeWorldLimit) >> 4) * chunksPerSide + ((z - negativeWorldLimit) >> 4);
+			if (heightMap[c] == null)
+			{
+				short[] heights = new short[ChunkSection.SIZE * ChunkSection.SIZE];
+				Arrays.fill(heights, (short) -1);
+				sections[c] = new char[ChunkSection.SIZE * ChunkSection.SIZE];
+				heightMap[c] = heights;
+			}
+			return c;
+		}
+		
+		/**
+		 * Método que calcula la posición de una columna dentro de su chunk
+		 * @param x coordenada x
+		 * @param z coordenada z
+		 * @return índice de la columna
+		 */
+		private int columnOf(int x, int z)
+		{
+			return (((x - negativeWorldLimit) & 15) << 4) | ((z - negativeWorldLimit) & 15);
+		}
+
+	}	
+	
+	/**
+	 * Coordenadas 'y' de la superficie del mundo. Se inicializa al generar o cargar cada chunk y
+	 * se actualiza cada vez que se coloca o se quita un bloque.
+	 * Puedes usarlo para localizar el bloque de la superficie de tu mundo.
+	 */
+	private HeightMap heightMap;
+
+	/**
+     * Genera un mundo nuevo del tamaño size*size en el plano (x,z). Si existían elementos anteriores en el mundo,  
+     * serán eliminados. Usando la misma semilla y el mismo tamaño podemos generar mundos iguales: cada chunk
+     * se genera con sus propios números aleatorios, así que el resultado es el mismo con cualquier número
+     * de hilos y el mismo que si los chunks se generan bajo demanda
+     * @param threads número de hilos entre los que se reparten los chunks
+     */
+    private  void generate(int threads) {
+    	blocks.clear();
+    	creatures.clear();
+    	items.clear();
+    	heightMap = new HeightMap(worldSize);
+    	generator = new ChunkGenerator(this);
+    	
+    	System.out.println("Generando terreno, cuevas, vetas, líquidos, entidades e items...");
+    	generator.generateAll(threads);
+
+    	// TODO: Crear plantas
+    	    	
+    	spawnPlayer();
+    }
+    
+    /**
+     * Crea el jugador en la superficie (posición (0,*,0)) y elimina lo que hubiera en su posición
+     */
+    private void spawnPlayer() {
+    	setPlayer(new Player("Steve",this));
+    	Location playerLocation = player.getLocation();
+    	creatures.remove(LocationKey.pack(playerLocation));
+    	items.remove(LocationKey.pack(playerLocation));
+    }
+	
+	/**
+	 * Método que guarda el mundo en un directorio. Si es el mismo directorio del último
+	 * guardado o carga, solo se escriben las regiones con chunks modificados
+	 * @param dir directorio del mundo
+	 * @throws IOException si falla la escritura
+	 */
+	public void save(File dir) throws IOException
+	{
+		WorldStore.save(this, dir);
+	}
+	
+	/**
+	 * Método que exporta un mapa del mundo visto desde arriba a una imagen PPM, con un píxel
+	 * por columna coloreado según el bloque más alto (ver {@link MapExporter}). El mapa se
+	 * dibuja entre los hilos de {@link WorldOptions#getParallelism()} y se escribe por franjas,
+	 * sin tener la imagen entera en memoria. Los chunks sin generar no se generan
+	 * @param file fichero de la imagen
+	 * @throws IOException si falla la escritura
+	 */
+	public void exportMap(File file) throws IOException
+	{
+		MapExporter.export(this, file, tickThreads);
+	}
+	
+	/**
+	 * Método que carga un mundo guardado con {@link #save(File)}
+	 * @param dir directorio del mundo
+	 * @return mundo cargado
+	 * @throws IOException si falla la lectura o el formato no es válido
+	 */
+	public static World load(File dir) throws IOException
+	{
+		return WorldStore.load(dir, new WorldOptions());
+	}
+	
+	/**
+	 * Método que carga un mundo guardado con {@link #save(File)}. Con bloques fuera del heap,
+	 * los chunks se mapean desde los ficheros de región y se leen del disco al usarlos
+	 * @param dir directorio del mundo
+	 * @param options opciones del mundo cargado
+	 * @return mundo cargado
+	 * @throws IOException si falla la lectura o el formato no es válido
+	 */
+	public static World load(File dir, WorldOptions options) throws IOException
+	{
+		return WorldStore.load(dir, options);
+	}
+	
+	/**
+	 * Método que genera los chunks que faltan alrededor de una posición, dentro del radio de
+	 * {@link WorldOptions#getGenerationRadius()}. No hace nada si el mundo ya está generado entero
+	 * @param loc posición, normalmente la del jugador
+	 */
+	public void generateAround(Location loc)
+	{
+		if ((generator != null) && checkWorld(loc))
+		{
+			generator.generateAround(BlockStorage.floor(loc.getX()), BlockStorage.floor(loc.getZ()), generationRadius);
+		}
+	}
+	
+	/**
+	 * Método que avanza el mundo un tick: cada criatura deambula y cada monstruo persigue al
+	 * jugador si lo ve, o le hace {@link CreatureTicker#CONTACT_DAMAGE} de daño si está a su
+	 * lado. Las decisiones se reparten entre los hilos de {@link WorldOptions#getParallelism()}
+	 * y el resultado es el mismo con cualquier número de hilos. Después cae la arena que se
+	 * ha quedado sin nada debajo y el agua y la lava avanzan un bloque hacia las posiciones
+	 * que se han quedado libres
+	 * @return número de criaturas que se han movido
+	 */
+	public int tick()
+	{
+		long start = System.nanoTime();
+		
+		if (ticker == null)
+		{
+			ticker = new CreatureTicker(this);
+		}
+		
+		if ((tickPool == null) && (tickThreads > 1))
+		{
+			tickPool = new ForkJoinPool(tickThreads);
+		}
+		
+		record(Command.Type.TICK, null, 0, 0, 0);
+		int moved = ticker.tick(ticks, tickPool);
+		fallingBlocks.tick();
+		liquidFlow.tick(liquidUpdateBudget);
+		ticks++;
+		lastTickNanos = System.nanoTime() - start;
+		return moved;
+	}
+	
+	/**
+	 * Getter
+	 * @return número de ticks ejecutados
+	 */
+	public long getTicks()
+	{
+		return ticks;
+	}
+	
+	/**
+	 * Setter
+	 * @param ticks número de ticks ejecutados, al cargar el mundo
+	 */
+	void setTicks(long ticks)
+	{
+		this.ticks = ticks;
+	}
+	
+	/**
+	 * Getter
+	 * @return duración en nanosegundos del último tick, para medir los ticks por segundo
+	 */
+	public long getLastTickNanos()
+	{
+		return lastTickNanos;
+	}
+	
+	/**
+	 * Método que genera el chunk de la posición si aún no se ha generado
+	 * @param loc posición
+	 */
+	private void generateChunkAt(Location loc)
+	{
+		generateChunkAt(BlockStorage.floor(loc.getX()), BlockStorage.floor(loc.getZ()));
+	}
+	
+	/**
+	 * Método que indica si el chunk de una columna está generado
+	 * @param x coordenada x
+	 * @param z coordenada z
+	 * @return true si está generado, false si no o si la columna está fuera del mundo
+	 */
+	boolean isColumnGenerated(int x, int z)
+	{
+		return (generator == null) ? Neighbourhood.isInside(this, x, 0, z) : generator.isGeneratedAt(x, z);
+	}
+	
+	/**
+	 * Método que genera el chunk de la columna si aún no se ha generado
+	 * @param x coordenada x
+	 * @param z coordenada z
+	 */
+	private void generateChunkAt(int x, int z)
+	{
+		if (generator != null)
+		{
+			generator.ensureGenerated(x, z);
+		}
+	}
+	
+	// ------ GETTERS ------
+	
+   /**
+    * Getter
+    * @return worldSize tamaño del mundo
+    */
+	public int getSize()
+	{
+		return worldSize;
+	}
+	
+	/**
+	 * Getter
+	 * @return seed semilla del mundo
+	 */
+	public long getSeed()
+	{
+		return seed;
+	}
+	
+	/**
+	 * Getter
+	 * @return nombre del mundo
+	 */
+	public String getName()
+	{
+		return name;
+    }
+    
+	/**
+	 * Getter
+	 * @return player jugador
+	 */
+	public Player getPlayer()
+	{
+		return player;
+	}
+	
+	/**
+	 * Setter
+	 * @param player jugador del mundo
+	 */
+	void setPlayer(Player player)
+	{
+		if (this.player != null)
+		{
+			players.remove(this.player.getName());
+		}
+		this.player = player;
+		players.put(player.getName(), player);
+		playerList = players.values().toArray(new Player[players.size()]);
+	}
+	
+	/**
+	 * Método que añade un jugador nuevo en la superficie, como el principal, en la columna
+	 * libre más cercana a (0,*,0): se buscan en cuadrados cada vez mayores alrededor de ella
+	 * hasta encontrar una en la que no haya ningún jugador encima del bloque más alto
+	 * @param name nombre del jugador
+	 * @return jugador añadido
+	 * @throws IllegalArgumentException si ya hay un jugador con ese nombre
+	 * @throws IllegalStateException si no queda ninguna columna libre
+	 */
+	public Player addPlayer(String name)
+	{
+		if (players.containsKey(name))
+		{
+			throw new IllegalArgumentException("Ya hay un jugador llamado " + name);
+		}
+		
+		// se busca antes de guardarlo en el diario para no guardar un jugador que no cabe
+		Location spawn = findSpawn();
+		
+		if (journal != null)
+		{
+			try
+			{
+				journal.recordAddPlayer(this, name);
+			}
+			
+			catch (IOException e)
+			{
+				e.printStackTrace();
+			}
+		}
+		
+		Player added = new Player(name, spawn);
+		long key = LocationKey.pack(added.getLocation());
+		creatures.remove(key);
+		items.remove(key);
+		players.put(name, added);
+		playerList = players.values().toArray(new Player[players.size()]);
+		
+		return added;
+	}
+	
+	/**
+	 * Método que busca la columna en la que aparece un jugador nuevo (ver {@link #addPlayer(String)})
+	 * @return posición de la columna
+	 * @throws IllegalStateException si no queda ninguna columna libre
+	 */
+	private Location findSpawn()
+	{
+		int radius = Math.max(Math.abs(getMinCoord()), Math.abs(getMaxCoord()));
+		
+		for (int r = 0; r <= radius; r++)
+		{
+			for (int x = -r; x <= r; x++)
+			{
+				for (int z = -r; z <= r; z++)
+				{
+					if (((Math.abs(x) == r) || (Math.abs(z) == r)) && Neighbourhood.isInside(this, x, 0, z))
+					{
+						Location ground = new Location(this, x, 0, z);
+						
+						try
+						{
+							if (!isPlayerAt(x, (int) getHighestLocationAt(ground).getY() + 1, z))
+							{
+								return ground;
+							}
+						}
+						
+						catch (BadLocationException e)
+						{
+							// la columna está dentro del mundo, así que no se lanza
+						}
+					}
+				}
+			}
+		}
+		
+		throw new IllegalStateException("No queda sitio para más jugadores");
+	}
+	
+	/**
+	 * Método que quita un jugador del mundo. El principal no se puede quitar
+	 * @param name nombre del jugador
+	 * @return true si se ha quitado
+	 */
+	public boolean removePlayer(String name)
+	{
+		if ((player != null) && player.getName().equals(name))
+		{
+			return false;
+		}
+		
+		Player removed = players.get(name);
+		if (removed == null)
+		{
+			return false;
+		}
+		
+		record(Command.Type.REMOVE_PLAYER, null, indexOf(removed), 0, 0);
+		players.remove(name);
+		playerList = players.values().toArray(new Player[players.size()]);
+		return true;
+	}
+	
+	/**
+	 * Getter
+	 * @param name nombre del jugador
+	 * @return jugador con ese nombre, o null si no hay ninguno
+	 */
+	public Player getPlayer(String name)
+	{
+		return players.get(name);
+	}
+	
+	/**
+	 * Getter
+	 * @return todos los jugadores del mundo, empezando por el principal (no modificable)
+	 */
+	public Collection<Player> getPlayers()
+	{
+		return Collections.unmodifiableCollection(players.values());
+	}
+	
+	/**
+	 * Getter
+	 * @return jugadores del mundo en un array que no se debe modificar
+	 */
+	Player[] getPlayerArray()
+	{
+		return playerList;
+	}
+	
+	/**
+	 * Método que añade un jugador ya creado sin moverlo, al cargar el mundo
+	 * @param loaded jugador
+	 * @throws IllegalArgumentException si ya hay un jugador con ese nombre
+	 */
+	void putPlayer(Player loaded)
+	{
+		if (players.containsKey(loaded.getName()))
+		{
+			throw new IllegalArgumentException("Ya hay un jugador llamado " + loaded.getName());
+		}
+		
+		players.put(loaded.getName(), loaded);
+		playerList = players.values().toArray(new Player[players.size()]);
+	}
+	
+	/**
+	 * Método que busca un jugador en {@link #getPlayerArray()}
+	 * @param p jugador
+	 * @return número del jugador, o -1 si no está en el mundo
+	 */
+	private int indexOf(Player p)
+	{
+		for (int i = 0; i < playerList.length; i++)
+		{
+			if (playerList[i] == p)
+			{
+				return i;
+			}
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * Getter
+	 * @return diario en el que se guarda lo que cambia el mundo, o null si no se guarda
+	 */
+	CommandJournal getJournal()
+	{
+		return journal;
+	}
+	
+	/**
+	 * Setter
+	 * @param journal diario en el que guardar lo que cambia el mundo, o null para dejar de guardarlo
+	 */
+	void setJournal(CommandJournal journal)
+	{
+		this.journal = journal;
+	}
+	
+	/**
+	 * Método que guarda una acción en el diario, si se está guardando, antes de hacerla.
+	 * Las de jugadores que no están en el mundo no se guardan porque no se podrían repetir
+	 * @param type tipo de acción, que no es {@link Command.Type#ADD_PLAYER}
+	 * @param p jugador que hace la acción, o null si no es de un jugador
+	 * @param arg0 primer argumento
+	 * @param arg1 segundo argumento
+	 * @param arg2 tercer argumento
+	 */
+	void record(Command.Type type, Player p, int arg0, int arg1, int arg2)
+	{
+		if (journal == null)
+		{
+			return;
+		}
+		
+		int index = (p == null) ? 0 : indexOf(p);
+		if (index < 0)
+		{
+			return;
+		}
+		
+		try
+		{
+			journal.record(this, type, index, arg0, arg1, arg2);
+		}
+		
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Método que indica si algún jugador está en una posición
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @return true si hay un jugador
+	 */
+	boolean isPlayerAt(int x, int y, int z)
+	{
+		for (Player p : playerList)
 		{
-			return heightMap[(int)x - negativeWorldLimit][(int)z - negativeWorldLimit];
+			if ((p.getBlockX() == x) && (p.getBlockY() == y) && (p.getBlockZ() == z))
+			{
+				return true;
+			}
 		}
 		
-		/**
-		 * Setter
-		 * @param x coordenada x
-		 * @param z coordenada y
-		 * @param y coordenada z
-		 */
-		void set(double x, double z, double y) 
-		{
-			heightMap[(int)x - negativeWorldLimit][(int)z - negativeWorldLimit] = y;
-		}
-
-	}	
+		return false;
+	}
 	
 	/**
-	 * Coordenadas 'y' de la superficie del mundo. Se inicializa en generate() y debe actualizarse
-	 * cada vez que el jugador coloca un nuevo bloque en una posición vacía
-	 * Puedes usarlo para localizar el bloque de la superficie de tu mundo.
+	 * Getter
+	 * @return flujo de líquidos
 	 */
-	private HeightMap heightMap;
-
+	LiquidFlow getLiquidFlow()
+	{
+		return liquidFlow;
+	}
+	
 	/**
-     * Genera un mundo nuevo del tamaño size*size en el plano (x,z). Si existían elementos anteriores en el mundo,  
-     * serán eliminados. Usando la misma semilla y el mismo tamaño podemos generar mundos iguales
-     * @param seed semilla para el algoritmo de generación. 
-     * @param size tamaño del mundo para las dimensiones x y z
-     */
-    private  void generate(long seed, int size) {
-    	
-    	Random rng = new Random(getSeed());
-
-    	blocks.clear();
-    	creatures.clear();
-    	items.clear();
-    	
-    	// Paso 1: generar nuevo mapa de alturas del terreno
-    	heightMap = new HeightMap(size);
-    	CombinedNoiseGenerator noise1 = new CombinedNoiseGenerator(this);
-    	CombinedNoiseGenerator noise2 = new CombinedNoiseGenerator(this);
-    	OctaveGenerator noise3 = new PerlinOctaveGenerator(this, 6);
-    	
-    	System.out.println("Generando superficie del mundo...");
-    	for (int x=0; x<size; x++) {
-    		for (int z=0; z<size; z++) {
-    	    	double heightLow = noise1.noise(x*1.3, z*1.3) / 6.0 - 4.0;
-    	    	double heightHigh = noise2.noise(x*1.3, z*1.3) / 5.0 + 6.0;
-    	    	double heightResult = 0.0;
-    	    	if (noise3.noise(x, z, 0.5, 2) / 8.0 > 0.0)
-    	    		heightResult = heightLow;
-    	    	else
-    	    		heightResult = Math.max(heightHigh, heightLow);
-    	    	heightResult /= 2.0;
-    	    	if (heightResult < 0.0)
-    	    		heightResult = heightResult * 8.0 / 10.0;
-    	    	heightMap.heightMap[x][z] = Math.floor(heightResult + Location.SEA_LEVEL);
-    		}
-    	}
-    	
-    	// Paso 2: generar estratos
-    	SolidBlock block = null;
-    	Location location = null;
-    	Material material = null;
-    	OctaveGenerator noise = new PerlinOctaveGenerator(this, 8);
-    	System.out.println("Generando terreno...");
-    	for (int x=0; x<size; x++) {
-    		for (int z=0; z<size; z++) {
-    	    	double dirtThickness = noise.noise(x, z, 0.5, 2.0) / 24 - 4;
-    	    	double dirtTransition = heightMap.heightMap[x][z];
-    	    	double stoneTransition = dirtTransition + dirtThickness;
-    	    	for (int y=0; y<= dirtTransition; y++) {
-    	    		if (y==0) material = Material.BEDROCK;
-    	    		else if (y <= stoneTransition) 
-    	    			material = Material.STONE;
-    	    		else // if (y <= dirtTransition)
-    	    			material = Material.DIRT;
-					try {
-						location = new Location(this,x+heightMap.negativeWorldLimit,y,z+heightMap.negativeWorldLimit);
-						block = new SolidBlock(material);
-						if (rng.nextDouble() < 0.5) // los bloques contendrán item con un 50% de probabilidad
-							block.setDrops(block.getType(), 1);
-						blocks.put(location, block);
-					} catch (WrongMaterialException | StackSizeException e) {
-						// Should never happen
-						e.printStackTrace();
-					}
-    	    	}
-
-    		}
-    	}
-    	
-    	// Paso 3: Crear cuevas
-    	int numCuevas = size * size * 256 / 8192;
-		double theta = 0.0;
-		double deltaTheta = 0.0;
-		double phi = 0.0;
-		double deltaPhi = 0.0;
-
-		System.out.print("Generando cuevas");
-    	for (int cueva=0; cueva<numCuevas; cueva++) {
-    		System.out.print("."); System.out.flush();
-    		Location cavePos = new Location(this,rng.nextInt(size),rng.nextInt((int)Location.UPPER_Y_VALUE), rng.nextInt(size));
-    		double caveLength = rng.nextDouble() * rng.nextDouble() * 200;
-    		//cave direction is given by two angles and corresponding rate of change in those angles,
-    		//spherical coordinates perhaps?
-    		theta = rng.nextDouble() * Math.PI * 2;
-    		deltaTheta = 0.0;
-    		phi = rng.nextDouble() * Math.PI * 2;
-    		deltaPhi = 0.0;
-    		double caveRadius = rng.nextDouble() * rng.nextDouble();
-
-    		for (int i=1; i <= (int)caveLength ; i++) {
-    			cavePos.setX(cavePos.getX()+ Math.sin(theta)*Math.cos(phi));
-    			cavePos.setY(cavePos.getY()+ Math.cos(theta)*Math.cos(phi));
-    			cavePos.setZ(cavePos.getZ()+ Math.sin(phi));
-    			theta += deltaTheta*0.2;
-    			deltaTheta *= 0.9;
-    			deltaTheta += rng.nextDouble();
-    			deltaTheta -= rng.nextDouble();
-    			phi /= 2.0;
-    			phi += deltaPhi/4.0;
-    			deltaPhi *= 0.75;
-    			deltaPhi += rng.nextDouble();
-    			deltaPhi -= rng.nextDouble();
-    			if (rng.nextDouble() >= 0.25) {
-    				Location centerPos = new Location(cavePos);
-    				centerPos.setX(centerPos.getX() + (rng.nextDouble()*4.0-2.0)*0.2);
-    				centerPos.setY(centerPos.getY() + (rng.nextDouble()*4.0-2.0)*0.2);
-    				centerPos.setZ(centerPos.getZ() + (rng.nextDouble()*4.0-2.0)*0.2);
-    				double radius = (Location.UPPER_Y_VALUE - centerPos.getY()) / Location.UPPER_Y_VALUE;
-    				radius = 1.2 + (radius * 3.5 + 1) * caveRadius;
-    				radius *= Math.sin(i * Math.PI / caveLength);
-    				try {
-    					fillOblateSpheroid( centerPos, radius, null);
-    				} catch (WrongMaterialException e) {
-    					// Should not occur
-    					e.printStackTrace();
-    				}
-    			}
-
-    		}
-    	}
-    	System.out.println();
-    	
-    	// Paso 4: crear vetas de minerales
-    	// Abundancia de cada mineral
-    	double abundance[] = new double[2];
-    	abundance[0] = 0.5; // GRANITE
-    	abundance[1] =  0.3; // OBSIDIAN
-    	int numVeins[] = new int[2];
-    	numVeins[0] = (int) (size * size * 256 * abundance[0]) / 16384; // GRANITE
-    	numVeins[1] =  (int) (size * size * 256 * abundance[1]) / 16384; // OBSIDIAN
-
-    	Material vein = Material.GRANITE;
-    	for (int numVein=0 ; numVein<2 ; numVein++, vein = Material.OBSIDIAN) { 
-    		System.out.print("Generando vetas de "+vein);
-    		for (int v=0; v<numVeins[numVein]; v++) {
-    			System.out.print(vein.getSymbol());
-    			Location veinPos = new Location(this,rng.nextInt(size),rng.nextInt((int)Location.UPPER_Y_VALUE), rng.nextInt(size));
-    			double veinLength = rng.nextDouble() * rng.nextDouble() * 75 * abundance[numVein];
-    			//cave direction is given by two angles and corresponding rate of change in those angles,
-    			//spherical coordinates perhaps?
-    			theta = rng.nextDouble() * Math.PI * 2;
-    			deltaTheta = 0.0;
-    			phi = rng.nextDouble() * Math.PI * 2;
-    			deltaPhi = 0.0;
-    			//double caveRadius = rng.nextDouble() * rng.nextDouble();
-    			for (int len=0; len<(int)veinLength; len++) {
-    				veinPos.setX(veinPos.getX()+ Math.sin(theta)*Math.cos(phi));
-    				veinPos.setY(veinPos.getY()+ Math.cos(theta)*Math.cos(phi));
-    				veinPos.setZ(veinPos.getZ()+ Math.sin(phi));
-    				theta += deltaTheta*0.2;
-    				deltaTheta *= 0.9;
-    				deltaTheta += rng.nextDouble();
-    				deltaTheta -= rng.nextDouble();
-    				phi /= 2.0;
-    				phi += deltaPhi/4.0;
-    				deltaPhi *= 0.9; // 0.9 for veins
-    				deltaPhi += rng.nextDouble();
-    				deltaPhi -= rng.nextDouble();
-    				double radius = abundance[numVein] * Math.sin(len * Math.PI / veinLength) + 1;
-
-    				try {
-    					fillOblateSpheroid(veinPos, radius, vein);
-    				} catch (WrongMaterialException ex) {
-    					// should not ocuur
-    					ex.printStackTrace();
-    				}
-    			}
-    		}
-    		System.out.println();
-    	}
-    	
-    	System.out.println();
-
-    	// flood-fill water     	
-    	char water= Material.WATER.getSymbol();
-
-    	int numWaterSources = size*size/800;
-    	
-    	System.out.print("Creando fuentes de agua subterráneas");
-    	int x = 0;
-    	int z = 0;
-    	int y = 0;
-    	for (int w=0; w<numWaterSources; w++) {
-    		System.out.print(water);
-    		x = rng.nextInt(size)+heightMap.negativeWorldLimit;
-    		z = rng.nextInt(size)+heightMap.negativeWorldLimit;
-    		y = (int)Location.SEA_LEVEL - 1 - rng.nextInt(2);
-    		try {
-				floodFill(Material.WATER, new Location(this,x,y,z));
-			} catch (WrongMaterialException | BadLocationException e) {
-				// no debe suceder
-				throw new RuntimeException(e);
-			}
-    	}
-    	System.out.println();
-   
-    	System.out.print("Creando erupciones de lava");
-    	char lava = Material.LAVA.getSymbol();
-    	// flood-fill lava
-    	int numLavaSources = size*size/2000;
-    	for (int w=0; w<numLavaSources; w++) {
-    		System.out.print(lava);
-    		x = rng.nextInt(size)+heightMap.negativeWorldLimit;
-    		z = rng.nextInt(size)+heightMap.negativeWorldLimit;
-    		y = (int)((Location.SEA_LEVEL - 3) * rng.nextDouble()* rng.nextDouble());
-    		try {
-				floodFill(Material.LAVA, new Location(this,x,y,z));
-			} catch (WrongMaterialException  | BadLocationException e) {
-				// no debe suceder
-				throw new RuntimeException(e);			
-			}
-    	}
-    	System.out.println();
-
-    	// Paso 5. crear superficie, criaturas e items
-    	// Las entidades aparecen sólo en superficie (no en cuevas, por ejemplo)
-
-    	OctaveGenerator onoise1 = new PerlinOctaveGenerator(this, 8);
-    	OctaveGenerator onoise2 = new PerlinOctaveGenerator(this, 8);
-    	boolean sandChance = false;
-    	double entitySpawnChance = 0.05;
-    	double itemsSpawnChance = 0.10;
-    	double foodChance = 0.8;
-    	double toolChance = 0.1;
-    	double weaponChance = 0.1;
-    	
-    	System.out.println("Generando superficie del terreno, entidades e items...");
-    	for (x=0; x<size; x++) {    		
-    		for (z=0; z<size; z++) {
-    			sandChance = onoise1.noise(x, z, 0.5, 2.0) > 8.0;
-    			y = (int)heightMap.heightMap[(int)x][(int)z];
-    			Location surface = new Location(this,x+heightMap.negativeWorldLimit,y,z+heightMap.negativeWorldLimit); // la posición (x,y+1,z) no está ocupada (es AIR)
-    			try {
-	    			if (sandChance) {
-	    				SolidBlock sand = new SolidBlock(Material.SAND);
-	    				if (rng.nextDouble() < 0.5)
-	    					sand.setDrops(Material.SAND, 1);
-	    				blocks.put(surface, sand);
-	    			}
-	    			else {
-	    				SolidBlock grass = new SolidBlock(Material.GRASS);
-	    				if (rng.nextDouble() < 0.5)
-	    					grass.setDrops(Material.GRASS, 1);
-	    				blocks.put(surface, grass);
-	    			}
-    			} catch (WrongMaterialException | StackSizeException ex) {
-    				// will never happen
-    				ex.printStackTrace();
-    			}
-    			// intenta crear una entidad en superficie
-    			try {
-    				Location aboveSurface = surface.above();
-    				
-    				if (rng.nextDouble() < entitySpawnChance) {
-    					Creature entity =null;
-    					double entityHealth = rng.nextInt((int)LivingEntity.MAX_HEALTH)+1;
-    					if (rng.nextDouble() < 0.75) // generamos Monster (75%) o Animal (25%) de las veces
-    						entity = new Monster(aboveSurface, entityHealth);
-    					else 
-    						entity = new Animal(aboveSurface, entityHealth);
-    					creatures.put(aboveSurface, entity);
-    				} else { 
-    					// si no, intentamos crear unos items de varios tipos (comida, armas, herramientas)
-    					// dentro de cofres
-    					Material itemMaterial = null;
-    					int amount = 1; // p. def. para herramientas y armas
-    					if (rng.nextDouble() < itemsSpawnChance) {
-    						double rand = rng.nextDouble();
-    						if (rand < foodChance) { // crear comida
-    							// hay cuatro tipos de item de comida, en las posiciones 8 a 11 del array 'materiales'
-    							itemMaterial = Material.getRandomItem(8, 11);
-    							amount = rng.nextInt(5)+1;
-    						}
-    						else if (rand < foodChance+toolChance)
-    							// hay dos tipos de item herramienta, en las posiciones 12 a 13 del array 'materiales'
-    							itemMaterial = Material.getRandomItem(12, 13);
-    						else
-    							// hay dos tipos de item arma, en las posiciones 14 a 15 del array 'materiales'
-    							itemMaterial = Material.getRandomItem(14, 15);
-    						
-    						items.put(aboveSurface, new ItemStack(itemMaterial, amount));
-    					}
-    				}
-    			} catch (BadLocationException | StackSizeException e) {
-    				// BadLocationException : no hay posiciones más arriba, ignoramos creación de entidad/item sin hacer nada 
-    				// StackSizeException : no se producirá
-    				throw new RuntimeException(e);    			}
-
-    		}
-    	}
-
-    	// TODO: Crear plantas
-    	    	
-    	// Generar jugador
-    	player = new Player("Steve",this);
-    	// El jugador se crea en la superficie (posición (0,*,0)). Asegurémonos de que no hay nada más ahí
-    	Location playerLocation = player.getLocation();
-    	creatures.remove(playerLocation);
-    	items.remove(playerLocation);
-    	
-    }
+	 * Getter
+	 * @return gravedad de la arena
+	 */
+	FallingBlocks getFallingBlocks()
+	{
+		return fallingBlocks;
+	}
 	
-    /**
-     * Where fillOblateSpheroid() is a method which takes a central point, a radius and a material to fill to use on the block array.
-     * @param centerPos central point
-     * @param radius radius around central point
-     * @param material material to fill with
-     * @throws WrongMaterialException if 'material' is not a block material
-     */
-    private void fillOblateSpheroid(Location centerPos, double radius, Material material) throws WrongMaterialException {
-    	
-				for (double x=centerPos.getX() - radius; x< centerPos.getX() + radius; x += 1.0) {					
-					for (double y=centerPos.getY() - radius; y< centerPos.getY() + radius; y += 1.0) {
-						for (double z=centerPos.getZ() - radius; z< centerPos.getZ() + radius; z += 1.0) {
-							double dx = x - centerPos.getX();
-							double dy = y - centerPos.getY();
-							double dz = z - centerPos.getZ();
-							
-							if ((dx*dx + 2*dy*dy + dz*dz) < radius*radius) {
-								// point (x,y,z) falls within level bounds ?
-								// we don't need to check it, just remove or replace that location from the blocks map.
-								Location loc = new Location(this,Math.floor(x+heightMap.negativeWorldLimit),Math.floor(y),Math.floor(z+heightMap.negativeWorldLimit));
-								if (material==null)
-									blocks.remove(loc);
-								else try { //if ((Math.abs(x) < worldSize/2.0-1.0) && (Math.abs(z) < worldSize/2.0-1.0) && y>0.0 && y<=Location.UPPER_Y_VALUE)
-									SolidBlock veinBlock = new SolidBlock(material);
-									// los bloques de veta siempre contienen material
-									veinBlock.setDrops(material, 1);
-									blocks.replace(loc, veinBlock);
-								} catch  (StackSizeException ex) {
-									// will never happen
-									ex.printStackTrace();
-								}
-							}
-						}
-					}
-				}
+	/**
+	 * Getter
+	 * @return almacén de bloques
+	 */
+	BlockStorage getBlockStorage()
+	{
+		return blocks;
 	}
-
-    /**
-     * Método que inunda posiciones de líquido
-     * @param liquid liquido
-     * @param from posición
-     * @throws WrongMaterialException excepción que indica material incorrecto
-     * @throws BadLocationException excepción que indica posición incorrecta
-     */
-    private void floodFill(Material liquid, Location from) throws WrongMaterialException, BadLocationException {
-    	if (!liquid.isLiquid())
-    		throw new WrongMaterialException(liquid);
-    	if (!blocks.containsKey(from))
-    	{
-    		blocks.put(from, BlockFactory.createBlock(liquid));
-    		items.remove(from);
-    		Set<Location> floodArea = getFloodNeighborhood(from);
-    		for (Location loc : floodArea) 
-    			floodFill(liquid, loc);
-    	}
-    }
-    
+	
 	/**
-	 * Obtiene las posiciones adyacentes a esta que no están por encima y están libres
-	 * @param location posición 
-	 * @return si esta posición pertenece a un mundo, devuelve sólo aquellas posiciones adyacentes válidas para ese mundo,  si no, devuelve todas las posiciones adyacentes
-	 * @throws BadLocationException cuando la posición es de otro mundo
-	 */
-	private Set<Location> getFloodNeighborhood(Location location) throws BadLocationException {
-		if (location.getWorld() !=null && location.getWorld() != this)
-			throw new BadLocationException("Esta posición no es de este mundo");
-		Set<Location> neighborhood = location.getNeighborhood();
-		Iterator<Location> iter = neighborhood.iterator();
-		while (iter.hasNext()) {
-			Location loc = iter.next();
-			try {
-				if ((loc.getY() > location.getY()) || getBlockAt(loc)!=null)
-					iter.remove();
-			} catch (BadLocationException e) {
-				throw new RuntimeException(e);
-				// no sucederá
-			}
-		}
-		return neighborhood;
+	 * Getter
+	 * @return mapa de items por posición empaquetada
+	 */
+	LongMap<ItemStack> getItemMap()
+	{
+		return items;
 	}
-  
-	// ------ GETTERS ------
 	
-   /**
-    * Getter
-    * @return worldSize tamaño del mundo
-    */
-	public int getSize()
+	/**
+	 * Getter
+	 * @return índice de criaturas por posición empaquetada
+	 */
+	CreatureIndex getCreatureIndex()
 	{
-		return worldSize;
+		return creatures;
 	}
 	
 	/**
 	 * Getter
-	 * @return seed semilla del mundo
+	 * @param x coordenada x
+	 * @param z coordenada z
+	 * @return altura del bloque más alto de la columna, -1 si no tiene bloques
 	 */
-	public long getSeed()
+	int getColumnHeight(int x, int z)
 	{
-		return seed;
+		return heightMap.get(x, z);
+	}
+	
+	/**
+	 * Setter
+	 * @param x coordenada x
+	 * @param z coordenada z
+	 * @param y altura del bloque más alto de la columna, -1 si no tiene bloques
+	 */
+	void setColumnHeight(int x, int z, int y)
+	{
+		heightMap.set(x, z, y);
 	}
 	
 	/**
 	 * Getter
-	 * @return nombre del mundo
+	 * @return coordenada x/z mínima del mundo
 	 */
-	public String getName()
+	int getMinCoord()
 	{
-		return name;
-    }
-    
+		return blocks.getMinCoord();
+	}
+	
 	/**
 	 * Getter
-	 * @return player jugador
+	 * @return coordenada x/z máxima del mundo
 	 */
-	public Player getPlayer()
+	int getMaxCoord()
 	{
-		return player;
+		return blocks.getMinCoord() + worldSize - 1;
+	}
+	
+	/**
+	 * Getter
+	 * @return número máximo de posiciones que llena cada fuente de líquido al generar, 0 sin límite
+	 */
+	int getLiquidVolumeCap()
+	{
+		return liquidVolumeCap;
+	}
+	
+	/**
+	 * Método que indica si un chunk está generado
+	 * @param cx coordenada x del chunk (0 es el chunk de la coordenada mínima)
+	 * @param cz coordenada z del chunk
+	 * @return true si está generado o el mundo se generó entero
+	 */
+	boolean isChunkGenerated(int cx, int cz)
+	{
+		return (generator == null) || generator.isGenerated(cx, cz);
+	}
+	
+	/**
+	 * Método que marca un chunk cargado de disco como generado
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 */
+	void markChunkGenerated(int cx, int cz)
+	{
+		if (generator != null)
+		{
+			generator.markGenerated(cx, cz);
+		}
+	}
+	
+	/**
+	 * Getter
+	 * @return directorio del último guardado o carga, o null
+	 */
+	File getStoreDirectory()
+	{
+		return storeDirectory;
+	}
+	
+	/**
+	 * Setter
+	 * @param dir directorio del último guardado o carga
+	 */
+	void setStoreDirectory(File dir)
+	{
+		storeDirectory = dir;
 	}
 	
 	/**
@@ -597,7 +1058,8 @@ public class World
 			{
 				if (checkWorld(loc))
 				{
-					creature = creatures.get(loc);
+					generateChunkAt(loc);
+					creature = creatures.get(LocationKey.pack(loc));
 				}
 				
 				else
@@ -620,6 +1082,19 @@ public class World
 		return creature;		
 	}
 	
+	/**
+	 * Getter
+	 * @param pos posición
+	 * @return criatura en la posición o null si no hay
+	 * @throws BadLocationException Excepción que indica que la posición es null
+	 */
+	public Creature getCreatureAt(BlockPos pos) throws BadLocationException
+	{
+		checkPos(pos, "getCreatureAt");
+		generateChunkAt(pos.getX(), pos.getZ());
+		return creatures.get(pos.pack());
+	}
+	
 	/**
 	 * Getter
 	 * @param loc Localizacion del bloque
@@ -634,6 +1109,7 @@ public class World
 		{
 			if (checkWorld(loc))
 			{
+				generateChunkAt(loc);
 				block = blocks.get(loc);
 			}
 			
@@ -651,6 +1127,19 @@ public class World
 		return block;
 	}
 	
+	/**
+	 * Getter
+	 * @param pos posición del bloque
+	 * @return bloque en la posición o null si está vacía o fuera del mundo
+	 * @throws BadLocationException excepción que indica que la posición es null
+	 */
+	public Block getBlockAt(BlockPos pos) throws BadLocationException
+	{
+		checkPos(pos, "getBlockAt");
+		generateChunkAt(pos.getX(), pos.getZ());
+		return blocks.get(pos.getX(), pos.getY(), pos.getZ());
+	}
+	
 	/**
 	 * Getter
 	 * @param ground Localización
@@ -665,7 +1154,8 @@ public class World
 		{
 			if (checkWorld(ground))
 			{
-				double y = heightMap.get(ground.getX(),ground.getZ());
+				generateChunkAt(ground);
+				int y = heightMap.get(BlockStorage.floor(ground.getX()), BlockStorage.floor(ground.getZ()));
 				highestLoc.setY(y);
 			}
 			
@@ -683,6 +1173,24 @@ public class World
 		return highestLoc;
 	}
 	
+	/**
+	 * Getter
+	 * @param x coordenada x
+	 * @param z coordenada z
+	 * @return posición del bloque más alto de la columna
+	 * @throws BadLocationException excepción que indica que la columna está fuera del mundo
+	 */
+	public BlockPos getHighestBlockPos(int x, int z) throws BadLocationException
+	{
+		if (!Location.check(this, x, 0, z))
+		{
+			throw new BadLocationException("Bad column in getHighestBlockPos");
+		}
+		
+		generateChunkAt(x, z);
+		return new BlockPos(x, heightMap.get(x, z), z);
+	}
+	
 	/**
 	 * Getter
 	 * @param loc Localización
@@ -695,7 +1203,8 @@ public class World
 		
 		if (this == loc.getWorld())
 		{
-			item = items.get(loc);
+			generateChunkAt(loc);
+			item = items.get(LocationKey.pack(loc));
 		}
 		
 		else
@@ -706,6 +1215,19 @@ public class World
 		return item;
 	}
 	
+	/**
+	 * Getter
+	 * @param pos posición
+	 * @return item en la posición o null si no hay
+	 * @throws BadLocationException excepción que indica que la posición es null
+	 */
+	public ItemStack getItemsAt(BlockPos pos) throws BadLocationException
+	{
+		checkPos(pos, "getItemsAt");
+		generateChunkAt(pos.getX(), pos.getZ());
+		return items.get(pos.pack());
+	}
+	
 	/**
 	 * Getter
 	 * @param loc Localización
@@ -714,12 +1236,7 @@ public class World
 	 */
 	public String getNeighbourhoodString(Location loc) throws BadLocationException
 	{
-		String str = "";
-		char temp_char;
-		Block temp_block;
-		ItemStack temp_item;
-		Creature temp_creature;
-		Location temp_loc;
+		StringBuilder str = new StringBuilder();
 		
 		if (!loc.getWorld().equals(this))
 		{
@@ -728,67 +1245,14 @@ public class World
 		
 		else
 		{
-			for (int i = -1; i < 2; i++) 			// Z
+			if (neighbourhood == null)
 			{
-				for (int j = 1; j > -2; j--)		// Y
-				{
-					for (int l = -1; l < 2; l++)	// X
-					{
-						temp_loc = new Location(loc.getWorld(), loc.getX() + l, loc.getY() + j, loc.getZ() + i);
-						if (!Location.check(temp_loc))
-						{
-							str += "X"; // Fuera del mundo
-						}					
-						
-						else if (player.getLocation().equals(temp_loc))
-						{
-							str += "P"; // Player
-						}
-						
-						else
-						{							
-							temp_block = blocks.get(temp_loc); // Crea bloque con location como clave del mapa							
-							temp_item = items.get(temp_loc); // Crea item con location como clave del mapa
-							temp_creature = creatures.get(temp_loc); // Crea criatura con location como clave del mapa
-							
-							if ((temp_block != null) && (temp_item == null) && (temp_creature == null))
-							{							
-								str += temp_block.getType().getSymbol();							
-							}
-							
-							else if (temp_item != null)
-							{
-								temp_char = temp_item.getType().getSymbol();
-								temp_char = Character.toUpperCase(temp_char);
-								str += temp_char;
-							}
-							
-							else if (temp_creature != null)
-							{
-								temp_char = temp_creature.getSymbol();
-								temp_char = Character.toUpperCase(temp_char);
-								str += temp_char;
-							}
-							
-							else
-							{
-								str += ".";
-							}
-						}
-					}
-					if (j > -1)
-					{
-						str += " ";
-					}
-				}
-				if (i < 1)
-				{
-					str += "\n";					
-				}
+				neighbourhood = new ViewportRenderer(ViewportRenderer.DEFAULT_RADIUS);
 			}
+			neighbourhood.render(loc, str);
 		}
 		
-		return str;
+		return str.toString();
 	}
 	
 	/**
@@ -799,41 +1263,27 @@ public class World
 	 */
 	public Collection<Creature> getNearbyCreatures(Location loc) throws BadLocationException
 	{
-    	Collection<Creature> nearbyCreatures = new HashSet<Creature>();
-    	Location temp_loc;
-    	double temp_x, temp_y, temp_z = 0;
+    	final Collection<Creature> nearbyCreatures = new HashSet<Creature>();
     	if (loc != null)
     	{
     		if (loc.getWorld() != null)
     		{
 	    		if (checkWorld(loc))
 	    		{
-			    	for (int i = -1; i < 2; i++) // z
-			    	{
-			    		for (int j = 1; j > -2; j--) // y
-			    		{
-			    			for (int l = -1; l < 2; l++) // x
-			    			{
-			    				if ((i != 0) || (j != 0) || (l != 0))
-			    				{
-			    					temp_x = loc.getX() + i;
-			    					temp_y = loc.getY() + j;
-			    					temp_z = loc.getZ() + l;
-			    					temp_loc = new Location(loc.getWorld(), temp_x, temp_y, temp_z);
-			    					
-			    					if ((loc.getWorld() == null && (creatures.containsKey(temp_loc))))
-			    					{
-			    						nearbyCreatures.add(creatures.get(temp_loc));    						
-			    					}
-			    					
-			    					else if ((checkWorld(temp_loc)) && (creatures.containsKey(temp_loc)))
-			    					{
-			    						nearbyCreatures.add(creatures.get(temp_loc));    						
-			    					}
-			    				}
-			    			}
-			    		}
-			    	}
+	    			Neighbourhood.forEach(this, BlockStorage.floor(loc.getX()), BlockStorage.floor(loc.getY()), BlockStorage.floor(loc.getZ()),
+	    				Neighbourhood.ALL, new Neighbourhood.Visitor()
+	    			{
+	    				public boolean visit(int x, int y, int z)
+	    				{
+	    					generateChunkAt(x, z);
+	    					Creature temp_creature = creatures.get(LocationKey.pack(x, y, z));
+	    					if (temp_creature != null)
+	    					{
+	    						nearbyCreatures.add(temp_creature);
+	    					}
+	    					return true;
+	    				}
+	    			});
 	    		}
 	        	
 	        	else
@@ -856,6 +1306,162 @@ public class World
     	return nearbyCreatures;
 	}
 	
+	/**
+	 * Getter. Solo tiene en cuenta los chunks ya generados
+	 * @param center centro de la consulta
+	 * @param radius distancia máxima entre el bloque del centro y el de cada criatura
+	 * @return criaturas a una distancia menor o igual que el radio
+	 * @throws BadLocationException indica que el centro es null o de otro mundo
+	 */
+	public List<Creature> getCreaturesWithin(Location center, double radius) throws BadLocationException
+	{
+		if ((center == null) || (center.getWorld() != this))
+		{
+			throw new BadLocationException("Bad Location in getCreaturesWithin");
+		}
+		
+		final List<Creature> found = new ArrayList<Creature>();
+		creatures.forEachInRadius(BlockStorage.floor(center.getX()), BlockStorage.floor(center.getY()), BlockStorage.floor(center.getZ()),
+			radius, new LongMap.Visitor<Creature>()
+		{
+			public void visit(long key, Creature creature)
+			{
+				found.add(creature);
+			}
+		});
+		return found;
+	}
+	
+	/**
+	 * Getter. Solo tiene en cuenta los chunks ya generados
+	 * @param min esquina de coordenadas mínimas de la caja
+	 * @param max esquina de coordenadas máximas de la caja (incluida)
+	 * @return criaturas dentro de la caja
+	 * @throws BadLocationException indica que alguna esquina es null
+	 */
+	public List<Creature> getCreaturesInBox(BlockPos min, BlockPos max) throws BadLocationException
+	{
+		checkPos(min, "getCreaturesInBox");
+		checkPos(max, "getCreaturesInBox");
+		final List<Creature> found = new ArrayList<Creature>();
+		creatures.forEachInBox(min.getX(), min.getY(), min.getZ(), max.getX(), max.getY(), max.getZ(), new LongMap.Visitor<Creature>()
+		{
+			public void visit(long key, Creature creature)
+			{
+				found.add(creature);
+			}
+		});
+		return found;
+	}
+	
+	/**
+	 * Método que busca un camino para una criatura entre dos posiciones con A*. Las búsquedas
+	 * reutilizan la memoria de la anterior y exploran como mucho
+	 * {@link PathFinder#DEFAULT_MAX_NODES} posiciones, y los caminos se guardan hasta que cambia
+	 * algún bloque. Solo tiene en cuenta los chunks ya generados
+	 * @param from posición de origen
+	 * @param to posición de destino, p.ej. la del jugador
+	 * @return posiciones del camino sin el origen y con el destino, o null si no hay camino
+	 * @throws BadLocationException indica que alguna posición es null
+	 */
+	public List<BlockPos> findPath(BlockPos from, BlockPos to) throws BadLocationException
+	{
+		checkPos(from, "findPath");
+		checkPos(to, "findPath");
+		List<BlockPos> path = null;
+		
+		if (Neighbourhood.isInside(this, from.getX(), from.getY(), from.getZ()))
+		{
+			if (pathFinder == null)
+			{
+				pathFinder = new PathFinder(this, PathFinder.DEFAULT_MAX_NODES);
+			}
+			
+			long[] steps = pathFinder.find(from.pack(), to.pack());
+			
+			if (steps != null)
+			{
+				path = new ArrayList<BlockPos>(steps.length);
+				for (long step : steps)
+				{
+					path.add(BlockPos.fromKey(step));
+				}
+			}
+		}
+		
+		return path;
+	}
+	
+	/**
+	 * Método que lanza un rayo desde el centro del bloque de una localización y devuelve lo
+	 * primero que encuentra: un bloque sólido, una criatura o items. No cuenta el bloque de
+	 * origen y atraviesa los líquidos. Solo tiene en cuenta los chunks ya generados
+	 * @param origin localización de origen, p.ej. la del jugador
+	 * @param direction dirección del rayo, p.ej. la orientación del jugador
+	 * @param maxDistance distancia máxima en bloques
+	 * @return lo encontrado, o null si no encuentra nada antes de la distancia máxima
+	 * @throws BadLocationException indica que el origen o la dirección son null o el origen
+	 * es de otro mundo
+	 */
+	public RayHit raycast(Location origin, Location direction, double maxDistance) throws BadLocationException
+	{
+		if ((origin == null) || (direction == null) || !checkWorld(origin))
+		{
+			throw new BadLocationException("Bad location in raycast");
+		}
+		
+		RayHit hit = new RayHit();
+		boolean found = raycast(BlockStorage.floor(origin.getX()) + 0.5, BlockStorage.floor(origin.getY()) + 0.5,
+			BlockStorage.floor(origin.getZ()) + 0.5, direction.getX(), direction.getY(), direction.getZ(), maxDistance, hit);
+		return found ? hit : null;
+	}
+	
+	/**
+	 * Método que lanza un rayo como {@link #raycast(Location, Location, double)} sin crear
+	 * objetos, para lanzar muchos rayos reutilizando el resultado
+	 * @param ox coordenada x del origen
+	 * @param oy coordenada y del origen
+	 * @param oz coordenada z del origen
+	 * @param dx componente x de la dirección
+	 * @param dy componente y de la dirección
+	 * @param dz componente z de la dirección
+	 * @param maxDistance distancia máxima en bloques
+	 * @param hit resultado que se rellena si encuentra algo
+	 * @return true si encuentra algo
+	 */
+	public boolean raycast(double ox, double oy, double oz, double dx, double dy, double dz, double maxDistance, RayHit hit)
+	{
+		return Raycast.cast(this, ox, oy, oz, dx, dy, dz, maxDistance, true, hit) != Raycast.NO_HIT;
+	}
+	
+	/**
+	 * Método que indica si desde una posición se ve otra: si el segmento entre los centros de
+	 * sus bloques no atraviesa ningún bloque sólido. Las criaturas y los items no tapan. No
+	 * crea objetos, así que sirve para que muchos monstruos miren al jugador en cada tick
+	 * @param from posición de origen
+	 * @param to posición de destino
+	 * @return true si se ve
+	 * @throws BadLocationException indica que alguna posición es null
+	 */
+	public boolean hasLineOfSight(BlockPos from, BlockPos to) throws BadLocationException
+	{
+		checkPos(from, "hasLineOfSight");
+		checkPos(to, "hasLineOfSight");
+		int dx = to.getX() - from.getX();
+		int dy = to.getY() - from.getY();
+		int dz = to.getZ() - from.getZ();
+		double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+		
+		if (distance == 0)
+		{
+			return true;
+		}
+		
+		// el rayo termina en el centro del destino: si se para ahí, el destino se ve
+		long hit = Raycast.cast(this, from.getX() + 0.5, from.getY() + 0.5, from.getZ() + 0.5, dx, dy, dz, distance, false, null);
+		return (hit == Raycast.NO_HIT) || (hit == to.pack());
+	}
+	
 	/**
 	 * Método que comprueba si la localización está libre de bloques sólidos y entidades
 	 * @param loc Localización
@@ -886,14 +1492,36 @@ public class World
 	 */
     public void removeItemsAt(Location loc) throws BadLocationException
     {
-    	if ((this != loc.getWorld()) || (items.get(loc) == null))
+    	if ((this != loc.getWorld()) || (items.remove(LocationKey.pack(loc)) == null))
     	{
     		throw new BadLocationException("Bad Location in removeItemsAt");
     	}
-    	
-    	else
+    }
+	
+	/**
+	 * Método que elimina los items en la posición dada
+	 * @param pos posición
+	 * @throws BadLocationException excepción que indica que la posición es null o no tiene items
+	 */
+    public void removeItemsAt(BlockPos pos) throws BadLocationException
+    {
+    	if ((pos == null) || (items.remove(pos.pack()) == null))
+    	{
+    		throw new BadLocationException("Bad BlockPos in removeItemsAt");
+    	}
+    }
+    
+    /**
+     * Método que comprueba que una posición no es null
+     * @param pos posición
+     * @param method nombre del método, para el mensaje de la excepción
+     * @throws BadLocationException si la posición es null
+     */
+    private static void checkPos(BlockPos pos, String method) throws BadLocationException
+    {
+    	if (pos == null)
     	{
-    		items.remove(loc);
+    		throw new BadLocationException("Null BlockPos in " + method);
     	}
     }
     
@@ -926,12 +1554,9 @@ public class World
     	{
 	    	if ((checkWorld(loc)) && (loc.getWorld() != null))
 	    	{
-	    		if (Location.check(loc) && (!player.getLocation().equals(loc)))
+	    		if (Location.check(loc) && !isPlayerAt(BlockStorage.floor(loc.getX()), BlockStorage.floor(loc.getY()), BlockStorage.floor(loc.getZ())))
 	    		{
-		    		items.remove(loc);
-		    		creatures.remove(loc);
-		    		blocks.put(loc, block);
-		    		heightMap.set(loc.getX(), loc.getZ(), loc.getY());
+	    			placeBlock(BlockStorage.floor(loc.getX()), BlockStorage.floor(loc.getY()), BlockStorage.floor(loc.getZ()), block);
 	    		}
 	    		
 	    		else
@@ -952,6 +1577,103 @@ public class World
     	}
     }
     
+    /**
+     * Método que añade un bloque en la posición
+     * @param pos posición
+     * @param block bloque
+     * @throws BadLocationException indica que la posición es null, está fuera del mundo o es la de un jugador
+     */
+    public void addBlock(BlockPos pos, Block block) throws BadLocationException
+    {
+    	if ((pos != null) && Location.check(this, pos.getX(), pos.getY(), pos.getZ()) && !isPlayerAt(pos.getX(), pos.getY(), pos.getZ()))
+    	{
+    		placeBlock(pos.getX(), pos.getY(), pos.getZ(), block);
+    	}
+    	
+    	else
+    	{
+    		throw new BadLocationException("Bad BlockPos in addBlock");
+    	}
+    }
+    
+    /**
+     * Método que coloca un bloque, quitando el item o la criatura que hubiera en la posición
+     * @param x coordenada x
+     * @param y coordenada y
+     * @param z coordenada z
+     * @param block bloque
+     */
+    private void placeBlock(int x, int y, int z, Block block)
+    {
+    	generateChunkAt(x, z);
+    	long key = LocationKey.pack(x, y, z);
+    	items.remove(key);
+    	creatures.remove(key);
+    	blocks.put(x, y, z, block);
+    	heightMap.blockAdded(x, y, z);
+    	if (pathFinder != null)
+    	{
+    		pathFinder.invalidate();
+    	}
+    	if (block.getType().isLiquid())
+    	{
+    		liquidFlow.liquidAdded(x, y, z);
+    	}
+    	fallingBlocks.blockAdded(x, y, z, block);
+    }
+    
+    /**
+     * Método que hace caer una columna de bloques. Lo que hubiera donde caen (items o
+     * criaturas) desaparece, y las posiciones que dejan libres pueden llenarse de líquido
+     * @param x coordenada x
+     * @param z coordenada z
+     * @param bottom coordenada y del bloque más bajo de la columna
+     * @param top coordenada y del bloque más alto de la columna
+     * @param distance número de posiciones que cae
+     */
+    void dropColumn(int x, int z, int bottom, int top, int distance)
+    {
+    	for (int y = bottom; y <= top; y++)
+    	{
+    		long key = LocationKey.pack(x, y - distance, z);
+    		items.remove(key);
+    		creatures.remove(key);
+    		blocks.put(x, y - distance, z, blocks.get(x, y, z));
+    		heightMap.blockAdded(x, y - distance, z);
+    	}
+    	
+    	for (int y = Math.max(bottom, top - distance + 1); y <= top; y++)
+    	{
+    		blocks.remove(x, y, z);
+    		heightMap.blockRemoved(x, y, z);
+    		liquidFlow.blockRemoved(x, y, z);
+    	}
+    	
+    	if (pathFinder != null)
+    	{
+    		pathFinder.invalidate();
+    	}
+    }
+    
+    /**
+     * Método que llena de líquido una posición libre al extenderse el agua o la lava. Quita
+     * el item que hubiera; las criaturas pueden estar en el líquido
+     * @param x coordenada x
+     * @param y coordenada y
+     * @param z coordenada z
+     * @param liquid bloque de líquido
+     */
+    void flowLiquid(int x, int y, int z, Block liquid)
+    {
+    	items.remove(LocationKey.pack(x, y, z));
+    	blocks.put(x, y, z, liquid);
+    	heightMap.blockAdded(x, y, z);
+    	if (pathFinder != null)
+    	{
+    		pathFinder.invalidate();
+    	}
+    }
+    
     /**
      * Método que añade un item en la posición
      * @param loc posición
@@ -964,8 +1686,7 @@ public class World
 		{
 			if (isFree(loc))
 			{
-				items.remove(loc);
-				items.put(loc, is);
+				items.put(LocationKey.pack(loc), is);
 			}
 			
 			else
@@ -992,16 +1713,9 @@ public class World
         	Location starting_loc = new Location(creature.getLocation());
 	    	if (isFree(starting_loc))
 	    	{
-	    		if (items.containsKey(starting_loc))
-	    		{
-	    			items.remove(starting_loc);
-	    			creatures.put(starting_loc, creature);
-	    		}
-	    		
-	    		else
-	    		{
-	    			creatures.put(starting_loc, creature);
-	    		}
+	    		long key = LocationKey.pack(starting_loc);
+	    		items.remove(key);
+	    		creatures.put(key, creature);
 	    	}
 	    	
 	    	else
@@ -1027,25 +1741,7 @@ public class World
     	{
 			if (checkWorld(loc))
 			{
-				if ((blocks.containsKey(loc)) && (loc.getY() != 0))
-				{
-					if (blocks.get(loc).getType().isLiquid())
-					{
-						blocks.remove(loc);
-			    		heightMap.set(loc.getX(), loc.getZ(), loc.getY() - 1);						
-					}
-					
-					else
-					{
-						Block temp_block = blocks.get(loc);
-						ItemStack temp_item = ((SolidBlock)temp_block).getDrops();
-						items.put(loc, temp_item);
-						blocks.remove(loc);
-			    		heightMap.set(loc.getX(), loc.getZ(), loc.getY() - 1);							
-					}
-				}
-				
-				else
+				if ((loc.getY() == 0) || !breakBlock(BlockStorage.floor(loc.getX()), BlockStorage.floor(loc.getY()), BlockStorage.floor(loc.getZ())))
 				{
 		    		throw new BadLocationException("Bad location in destroyBlockAt");
 		    	}    		
@@ -1063,6 +1759,408 @@ public class World
 		}
     }
     
+    /**
+     * Método que elimina un bloque en la posición dada
+     * @param pos posición
+     * @throws BadLocationException Excepción que indica que la posición es null, no tiene bloque o es la de la roca madre (y = 0)
+     */
+    public void destroyBlockAt(BlockPos pos) throws BadLocationException
+    {
+    	if ((pos == null) || (pos.getY() == 0) || !breakBlock(pos.getX(), pos.getY(), pos.getZ()))
+    	{
+    		throw new BadLocationException("Bad BlockPos in destroyBlockAt");
+    	}
+    }
+    
+    /**
+     * Método que quita un bloque. Los bloques sólidos dejan en su lugar lo que sueltan
+     * @param x coordenada x
+     * @param y coordenada y
+     * @param z coordenada z
+     * @return false si no había bloque
+     */
+    private boolean breakBlock(int x, int y, int z)
+    {
+    	generateChunkAt(x, z);
+    	Block block = blocks.get(x, y, z);
+    	if (block == null)
+    	{
+    		return false;
+    	}
+    	
+    	if (!block.getType().isLiquid())
+    	{
+    		items.put(LocationKey.pack(x, y, z), ((SolidBlock) block).getDrops());
+    	}
+    	blocks.remove(x, y, z);
+    	heightMap.blockRemoved(x, y, z);
+    	if (pathFinder != null)
+    	{
+    		pathFinder.invalidate();
+    	}
+    	liquidFlow.blockRemoved(x, y, z);
+    	fallingBlocks.blockRemoved(x, y, z);
+    	return true;
+    }
+    
+    /**
+     * Método que llena de un bloque una caja, dada por dos esquinas opuestas. Es mucho más
+     * rápido que colocar los bloques uno a uno: los bloques se escriben por secciones y los
+     * items, las criaturas y las alturas se actualizan una vez al final. La parte de la caja
+     * fuera del mundo y la capa de roca madre (y = 0) no se modifican, y la posición del
+     * jugador se deja libre
+     * @param from una esquina de la caja
+     * @param to la esquina opuesta (incluida)
+     * @param block bloque, null para vaciar la caja como {@link #clear(BlockPos, BlockPos)}
+     * @return número de posiciones escritas
+     * @throws BadLocationException indica que alguna esquina es null
+     */
+    public int fill(BlockPos from, BlockPos to, Block block) throws BadLocationException
+    {
+    	return editBox(from, to, null, block, "fill");
+    }
+    
+    /**
+     * Método que sustituye en una caja los bloques de un material por otro bloque, como
+     * {@link #fill(BlockPos, BlockPos, Block)}
+     * @param from una esquina de la caja
+     * @param to la esquina opuesta (incluida)
+     * @param type material de los bloques que se sustituyen
+     * @param block bloque nuevo, null para quitarlos
+     * @return número de bloques sustituidos
+     * @throws BadLocationException indica que alguna esquina es null
+     * @throws IllegalArgumentException si el material es null
+     */
+    public int replace(BlockPos from, BlockPos to, Material type, Block block) throws BadLocationException, IllegalArgumentException
+    {
+    	if (type == null)
+    	{
+    		throw new IllegalArgumentException();
+    	}
+    	
+    	return editBox(from, to, type, block, "replace");
+    }
+    
+    /**
+     * Método que vacía una caja, como {@link #fill(BlockPos, BlockPos, Block)}. Los bloques
+     * quitados no dejan items
+     * @param from una esquina de la caja
+     * @param to la esquina opuesta (incluida)
+     * @return número de posiciones vaciadas
+     * @throws BadLocationException indica que alguna esquina es null
+     */
+    public int clear(BlockPos from, BlockPos to) throws BadLocationException
+    {
+    	return editBox(from, to, null, null, "clear");
+    }
+    
+    /**
+     * Método que copia los bloques de una caja. La parte fuera del mundo queda fuera de la copia
+     * @param from una esquina de la caja
+     * @param to la esquina opuesta (incluida)
+     * @return copia de los bloques
+     * @throws BadLocationException indica que alguna esquina es null
+     */
+    public Clipboard copy(BlockPos from, BlockPos to) throws BadLocationException
+    {
+    	int[] box = clipBox(from, to, 0, "copy");
+    	if (box == null)
+    	{
+    		return new Clipboard(0, 0, 0);
+    	}
+    	
+    	generateBox(box);
+    	Clipboard clipboard = new Clipboard(box[3] - box[0] + 1, box[4] - box[1] + 1, box[5] - box[2] + 1);
+    	for (int y = box[1]; y <= box[4]; y++)
+    	{
+    		for (int z = box[2]; z <= box[5]; z++)
+    		{
+    			for (int x = box[0]; x <= box[3]; x++)
+    			{
+    				clipboard.setBlock(x - box[0], y - box[1], z - box[2], BlockFactory.copyOf(blocks.get(x, y, z)));
+    			}
+    		}
+    	}
+    	
+    	return clipboard;
+    }
+    
+    /**
+     * Método que pega una copia con su esquina mínima en una posición, sustituyendo también
+     * los bloques donde la copia está vacía. Se actualiza como {@link #fill(BlockPos, BlockPos, Block)}
+     * @param clipboard copia creada con {@link #copy(BlockPos, BlockPos)}
+     * @param origin posición donde queda la esquina mínima de la copia
+     * @return número de posiciones escritas
+     * @throws BadLocationException indica que la posición es null
+     * @throws IllegalArgumentException si la copia es null
+     */
+    public int paste(Clipboard clipboard, BlockPos origin) throws BadLocationException, IllegalArgumentException
+    {
+    	if (clipboard == null)
+    	{
+    		throw new IllegalArgumentException();
+    	}
+    	
+    	checkPos(origin, "paste");
+    	if ((clipboard.getSizeX() == 0) || (clipboard.getSizeY() == 0) || (clipboard.getSizeZ() == 0))
+    	{
+    		return 0;
+    	}
+    	
+    	int[] box = clipBox(origin, origin.offset(clipboard.getSizeX() - 1, clipboard.getSizeY() - 1, clipboard.getSizeZ() - 1), 1, "paste");
+    	if (box == null)
+    	{
+    		return 0;
+    	}
+    	
+    	generateBox(box);
+    	int written = 0;
+    	for (int y = box[1]; y <= box[4]; y++)
+    	{
+    		for (int z = box[2]; z <= box[5]; z++)
+    		{
+    			for (int x = box[0]; x <= box[3]; x++)
+    			{
+    				Block block = clipboard.getBlock(x - origin.getX(), y - origin.getY(), z - origin.getZ());
+    				blocks.put(x, y, z, BlockFactory.copyOf(block));
+    				written++;
+    			}
+    		}
+    	}
+    	
+    	boxEdited(box);
+    	return written;
+    }
+    
+    /**
+     * Método que escribe un bloque en una caja y actualiza el resto del mundo una sola vez
+     * @param from una esquina de la caja
+     * @param to la esquina opuesta
+     * @param only material de los bloques que se sustituyen, o null para todas las posiciones
+     * @param block bloque, o null para vaciar
+     * @param method nombre del método, para el mensaje de la excepción
+     * @return número de posiciones escritas
+     * @throws BadLocationException si alguna esquina es null
+     */
+    private int editBox(BlockPos from, BlockPos to, Material only, Block block, String method) throws BadLocationException
+    {
+    	int[] box = clipBox(from, to, 1, method);
+    	if (box == null)
+    	{
+    		return 0;
+    	}
+    	
+    	generateBox(box);
+    	int written = blocks.fillBox(box[0], box[1], box[2], box[3], box[4], box[5], only, block);
+    	boxEdited(box);
+    	return written;
+    }
+    
+    /**
+     * Método que ordena las esquinas de una caja y la recorta a los límites del mundo
+     * @param from una esquina
+     * @param to la esquina opuesta
+     * @param minY coordenada y mínima permitida
+     * @param method nombre del método, para el mensaje de la excepción
+     * @return {minX, minY, minZ, maxX, maxY, maxZ}, o null si la caja queda fuera del mundo
+     * @throws BadLocationException si alguna esquina es null
+     */
+    private int[] clipBox(BlockPos from, BlockPos to, int minY, String method) throws BadLocationException
+    {
+    	checkPos(from, method);
+    	checkPos(to, method);
+    	int[] box = {
+    		Math.max(Math.min(from.getX(), to.getX()), getMinCoord()),
+    		Math.max(Math.min(from.getY(), to.getY()), minY),
+    		Math.max(Math.min(from.getZ(), to.getZ()), getMinCoord()),
+    		Math.min(Math.max(from.getX(), to.getX()), getMaxCoord()),
+    		Math.min(Math.max(from.getY(), to.getY()), BlockStorage.HEIGHT - 1),
+    		Math.min(Math.max(from.getZ(), to.getZ()), getMaxCoord())
+    	};
+    	
+    	return ((box[0] > box[3]) || (box[1] > box[4]) || (box[2] > box[5])) ? null : box;
+    }
+    
+    /**
+     * Método que genera los chunks de una caja que aún no se han generado
+     * @param box caja recortada por {@link #clipBox(BlockPos, BlockPos, int, String)}
+     */
+    private void generateBox(int[] box)
+    {
+    	generateColumns(box[0], box[2], box[3], box[5]);
+    }
+    
+    /**
+     * Método que genera los chunks de un rectángulo de columnas que aún no se han generado
+     * @param minX coordenada x mínima, dentro del mundo
+     * @param minZ coordenada z mínima, dentro del mundo
+     * @param maxX coordenada x máxima, dentro del mundo
+     * @param maxZ coordenada z máxima, dentro del mundo
+     */
+    void generateColumns(int minX, int minZ, int maxX, int maxZ)
+    {
+    	for (int x = minX; ; x = Math.min(x + ChunkSection.SIZE, maxX))
+    	{
+    		for (int z = minZ; ; z = Math.min(z + ChunkSection.SIZE, maxZ))
+    		{
+    			generateChunkAt(x, z);
+    			if (z == maxZ)
+    				break;
+    		}
+    		if (x == maxX)
+    			break;
+    	}
+    }
+    
+    /**
+     * Método que actualiza el mundo después de cambiar los bloques de una caja: libera la
+     * posición de los jugadores, quita los items y las criaturas donde ahora hay bloques, recalcula
+     * la altura de cada columna una vez, avisa al flujo de líquidos de los bordes de la caja y
+     * pone en cola la arena de la caja que se ha quedado sin nada debajo y la de encima
+     * @param box caja recortada por {@link #clipBox(BlockPos, BlockPos, int, String)}
+     */
+    private void boxEdited(final int[] box)
+    {
+    	for (Player p : playerList)
+    	{
+    		BlockPos playerPos = p.getBlockPos();
+    		if (isInBox(box, playerPos.getX(), playerPos.getY(), playerPos.getZ()))
+    		{
+    			blocks.remove(playerPos.getX(), playerPos.getY(), playerPos.getZ());
+    		}
+    	}
+    	
+    	final List<Creature> buried = new ArrayList<Creature>();
+    	creatures.forEachInBox(box[0], box[1], box[2], box[3], box[4], box[5], new LongMap.Visitor<Creature>()
+    	{
+    		public void visit(long key, Creature creature)
+    		{
+    			if (blocks.containsKey(LocationKey.getX(key), LocationKey.getY(key), LocationKey.getZ(key)))
+    			{
+    				buried.add(creature);
+    			}
+    		}
+    	});
+    	for (Creature creature : buried)
+    	{
+    		creatures.remove(LocationKey.pack(creature.getLocation()));
+    	}
+    	
+    	// se recorre lo que sea menor: las posiciones de la caja o los items del mundo
+    	long volume = (long) (box[3] - box[0] + 1) * (box[4] - box[1] + 1) * (box[5] - box[2] + 1);
+    	if (volume <= items.size())
+    	{
+    		for (int x = box[0]; x <= box[3]; x++)
+    		{
+    			for (int z = box[2]; z <= box[5]; z++)
+    			{
+    				for (int y = box[1]; y <= box[4]; y++)
+    				{
+    					if (blocks.containsKey(x, y, z))
+    					{
+    						items.remove(LocationKey.pack(x, y, z));
+    					}
+    				}
+    			}
+    		}
+    	}
+    	
+    	else if (!items.isEmpty())
+    	{
+    		final List<Long> buriedItems = new ArrayList<Long>();
+    		items.forEach(new LongMap.Visitor<ItemStack>()
+    		{
+    			public void visit(long key, ItemStack item)
+    			{
+    				int x = LocationKey.getX(key);
+    				int y = LocationKey.getY(key);
+    				int z = LocationKey.getZ(key);
+    				if (isInBox(box, x, y, z) && blocks.containsKey(x, y, z))
+    				{
+    					buriedItems.add(key);
+    				}
+    			}
+    		});
+    		for (long key : buriedItems)
+    		{
+    			items.remove(key);
+    		}
+    	}
+    	
+    	for (int x = box[0]; x <= box[3]; x++)
+    	{
+    		for (int z = box[2]; z <= box[5]; z++)
+    		{
+    			heightMap.rangeEdited(x, z, box[1], box[4]);
+    			// la arena de encima de la caja y la de dentro que se ha quedado sin nada debajo
+    			// pueden caer
+    			fallingBlocks.blockRemoved(x, box[4], z);
+    			for (int y = Math.max(box[1], 1); y <= box[4]; y++)
+    			{
+    				Block block = blocks.get(x, y, z);
+    				if (FallingBlocks.hasGravity(block) && !blocks.containsKey(x, y - 1, z))
+    				{
+    					fallingBlocks.blockAdded(x, y, z, block);
+    				}
+    			}
+    			boxBorderEdited(x, box[1], z);
+    			boxBorderEdited(x, box[4], z);
+    		}
+    	}
+    	
+    	for (int y = box[1] + 1; y < box[4]; y++)
+    	{
+    		for (int x = box[0]; x <= box[3]; x++)
+    		{
+    			boxBorderEdited(x, y, box[2]);
+    			boxBorderEdited(x, y, box[5]);
+    		}
+    		for (int z = box[2] + 1; z < box[5]; z++)
+    		{
+    			boxBorderEdited(box[0], y, z);
+    			boxBorderEdited(box[3], y, z);
+    		}
+    	}
+    	
+    	if (pathFinder != null)
+    	{
+    		pathFinder.invalidate();
+    	}
+    }
+    
+    /**
+     * Método que avisa al flujo de líquidos de una posición del borde de una caja editada: si
+     * está libre puede entrar líquido de fuera, y si tiene líquido puede salir
+     * @param x coordenada x
+     * @param y coordenada y
+     * @param z coordenada z
+     */
+    private void boxBorderEdited(int x, int y, int z)
+    {
+    	Block block = blocks.get(x, y, z);
+    	if (block == null)
+    	{
+    		liquidFlow.blockRemoved(x, y, z);
+    	}
+    	else if (block.getType().isLiquid())
+    	{
+    		liquidFlow.liquidAdded(x, y, z);
+    	}
+    }
+    
+    /**
+     * Método que indica si una posición está dentro de una caja
+     * @param box caja {minX, minY, minZ, maxX, maxY, maxZ}
+     * @param x coordenada x
+     * @param y coordenada y
+     * @param z coordenada z
+     * @return true si está dentro
+     */
+    private static boolean isInBox(int[] box, int x, int y, int z)
+    {
+    	return (x >= box[0]) && (x <= box[3]) && (y >= box[1]) && (y <= box[4]) && (z >= box[2]) && (z <= box[5]);
+    }
+    
     /**
      * Método que elimina la criatura en la posición dada
      * @param loc posición
@@ -1072,12 +2170,7 @@ public class World
     {
     	if (loc != null)
     	{
-	    	if ((checkWorld(loc)) && (creatures.containsKey(loc)))
-	    	{
-	    		creatures.remove(loc);
-	    	}
-	    	
-	    	else
+	    	if (!checkWorld(loc) || (creatures.remove(LocationKey.pack(loc)) == null))
 	    	{
 	    		throw new BadLocationException("Bad location in killCreature");
 	    	}
@@ -1089,6 +2182,19 @@ public class World
     	}
     }
     
+    /**
+     * Método que elimina la criatura en la posición dada
+     * @param pos posición
+     * @throws BadLocationException Excepción que indica que la posición es null o no tiene criatura
+     */
+    public void killCreature(BlockPos pos) throws BadLocationException
+    {
+    	if ((pos == null) || (creatures.remove(pos.pack()) == null))
+    	{
+    		throw new BadLocationException("Bad BlockPos in killCreature");
+    	}
+    }
+    
     /**
      * Método toString
      * @return String imprime nombre dle mundo
@@ -0,0 +1,194 @@
+package model;
+
+/**
+ * Clase que agrupa las opciones de creación de un mundo
+ * @author Jose MV
+ */
+public class WorldOptions
+{
+	/**
+	 * Indica si los bloques se guardan fuera del heap
+	 */
+	private boolean offHeap;
+	
+	/**
+	 * Indica si los chunks se generan bajo demanda
+	 */
+	private boolean lazy;
+	
+	/**
+	 * Radio en chunks que se genera alrededor del jugador
+	 */
+	private int generationRadius;
+	
+	/**
+	 * Número de hilos de la generación del mundo entero
+	 */
+	private int parallelism;
+	
+	/**
+	 * Número máximo de posiciones que llena cada fuente de líquido al generar
+	 */
+	private int liquidVolumeCap;
+	
+	/**
+	 * Número máximo de posiciones que revisa el flujo de líquidos en cada tick
+	 */
+	private int liquidUpdateBudget;
+	
+	/**
+	 * Constructor: opciones por defecto (bloques en el heap, mundo generado entero al crearlo)
+	 */
+	public WorldOptions()
+	{
+		offHeap = false;
+		lazy = false;
+		generationRadius = 2;
+		parallelism = 1;
+		liquidVolumeCap = 0;
+		liquidUpdateBudget = 4096;
+	}
+	
+	/**
+	 * Getter
+	 * @return indica si los bloques se guardan fuera del heap
+	 */
+	public boolean isOffHeap()
+	{
+		return offHeap;
+	}
+	
+	/**
+	 * Setter
+	 * @param offHeap true para guardar los bloques en buffers directos, fuera del heap.
+	 * Recomendado para mundos de más de 1024x1024 columnas
+	 */
+	public void setOffHeap(boolean offHeap)
+	{
+		this.offHeap = offHeap;
+	}
+	
+	/**
+	 * Getter
+	 * @return indica si los chunks se generan bajo demanda
+	 */
+	public boolean isLazy()
+	{
+		return lazy;
+	}
+	
+	/**
+	 * Setter
+	 * @param lazy true para generar cada chunk la primera vez que se consulta o cuando el
+	 * jugador se acerca a él, en lugar de generar el mundo entero al crearlo. Con la misma
+	 * semilla se obtiene siempre el mismo terreno, sea cual sea el orden de generación
+	 */
+	public void setLazy(boolean lazy)
+	{
+		this.lazy = lazy;
+	}
+	
+	/**
+	 * Getter
+	 * @return radio en chunks que se genera alrededor del jugador
+	 */
+	public int getGenerationRadius()
+	{
+		return generationRadius;
+	}
+	
+	/**
+	 * Setter
+	 * @param generationRadius radio en chunks que se genera alrededor del jugador al crearlo
+	 * y cada vez que se mueve (0 genera solo el chunk donde está)
+	 * @throws IllegalArgumentException si el radio es negativo
+	 */
+	public void setGenerationRadius(int generationRadius) throws IllegalArgumentException
+	{
+		if (generationRadius < 0)
+		{
+			throw new IllegalArgumentException();
+		}
+		
+		this.generationRadius = generationRadius;
+	}
+	
+	/**
+	 * Getter
+	 * @return número de hilos de la generación del mundo entero y de los ticks
+	 */
+	public int getParallelism()
+	{
+		return parallelism;
+	}
+	
+	/**
+	 * Setter
+	 * @param parallelism número de hilos para generar el mundo entero (1 para generarlo en
+	 * este hilo). El mundo generado con una semilla es el mismo con cualquier número de hilos.
+	 * No se usa con generación bajo demanda. También es el número de hilos con los que
+	 * deciden las criaturas en cada {@link World#tick()}
+	 * @throws IllegalArgumentException si el número de hilos es menor que 1
+	 */
+	public void setParallelism(int parallelism) throws IllegalArgumentException
+	{
+		if (parallelism < 1)
+		{
+			throw new IllegalArgumentException();
+		}
+		
+		this.parallelism = parallelism;
+	}
+	
+	/**
+	 * Getter
+	 * @return número máximo de posiciones que llena cada fuente de líquido al generar, 0 sin límite
+	 */
+	public int getLiquidVolumeCap()
+	{
+		return liquidVolumeCap;
+	}
+	
+	/**
+	 * Setter
+	 * @param liquidVolumeCap número máximo de posiciones que llena cada fuente de agua o lava
+	 * al generar el mundo, o 0 para no limitarlo (el mismo mundo que sin esta opción). Con
+	 * límite, el coste de crear las fuentes no depende del tamaño de las cuevas
+	 * @throws IllegalArgumentException si el límite es negativo
+	 */
+	public void setLiquidVolumeCap(int liquidVolumeCap) throws IllegalArgumentException
+	{
+		if (liquidVolumeCap < 0)
+		{
+			throw new IllegalArgumentException();
+		}
+		
+		this.liquidVolumeCap = liquidVolumeCap;
+	}
+	
+	/**
+	 * Getter
+	 * @return número máximo de posiciones que revisa el flujo de líquidos en cada tick
+	 */
+	public int getLiquidUpdateBudget()
+	{
+		return liquidUpdateBudget;
+	}
+	
+	/**
+	 * Setter
+	 * @param liquidUpdateBudget número máximo de posiciones junto a un cambio que revisa el
+	 * flujo de agua y lava en cada {@link World#tick()}. Las que no caben se revisan en los
+	 * ticks siguientes, así que el líquido avanza más despacio pero el tick no se alarga
+	 * @throws IllegalArgumentException si el número es menor que 1
+	 */
+	public void setLiquidUpdateBudget(int liquidUpdateBudget) throws IllegalArgumentException
+	{
+		if (liquidUpdateBudget < 1)
+		{
+			throw new IllegalArgumentException();
+		}
+		
+		this.liquidUpdateBudget = liquidUpdateBudget;
+	}
+}
@@ -0,0 +1,617 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import model.entities.Animal;
+import model.entities.Creature;
+import model.entities.Monster;
+import model.entities.Player;
+import model.exceptions.StackSizeException;
+import model.exceptions.WrongMaterialException;
+
+/**
+ * Clase que guarda y carga mundos. Los bloques y las alturas se guardan por chunks en
+ * ficheros de región ({@link RegionFile}); el resto del estado (jugadores, items, criaturas,
+ * bloques con estado propio, número de ticks y posiciones pendientes de los líquidos y de la
+ * arena) en el fichero level.dat
+ * @author Jose MV
+ */
+class WorldStore
+{
+	/**
+	 * Nombre del fichero con el estado que no es terreno
+	 */
+	private static final String LEVEL_FILE = "level.dat";
+
+	/**
+	 * Identificador del formato de level.dat
+	 */
+	private static final int MAGIC = 0x4A434C56; // "JCLV"
+
+	/**
+	 * Versión del formato de level.dat
+	 */
+	private static final int VERSION = 2;
+
+	/**
+	 * Constructor privado: clase de utilidades
+	 */
+	private WorldStore()
+	{
+	}
+
+	/**
+	 * Método que guarda el mundo. Si el directorio es el del último guardado o carga,
+	 * solo se escriben los chunks modificados desde entonces
+	 * @param world mundo
+	 * @param dir directorio del mundo
+	 * @throws IOException si falla la escritura
+	 */
+	static void save(World world, File dir) throws IOException
+	{
+		if (!dir.isDirectory() && !dir.mkdirs())
+		{
+			throw new IOException("Cannot create directory " + dir);
+		}
+
+		File canonical = dir.getCanonicalFile();
+		boolean full = !canonical.equals(world.getStoreDirectory());
+		BlockStorage storage = world.getBlockStorage();
+		int chunks = storage.getChunksPerSide();
+		int regions = (chunks + RegionFile.CHUNKS_PER_SIDE - 1) / RegionFile.CHUNKS_PER_SIDE;
+
+		for (int rx = 0; rx < regions; rx++)
+		{
+			for (int rz = 0; rz < regions; rz++)
+			{
+				saveRegion(world, dir, rx, rz, full);
+			}
+		}
+
+		writeLevel(world, dir);
+		world.setStoreDirectory(canonical);
+	}
+
+	/**
+	 * Método que escribe los chunks pendientes de una región. Al escribir todos los chunks
+	 * se borra antes el fichero que hubiera, para que no queden chunks de otro mundo
+	 * @param world mundo
+	 * @param dir directorio del mundo
+	 * @param rx coordenada x de la región
+	 * @param rz coordenada z de la región
+	 * @param full true para escribir todos los chunks
+	 * @throws IOException si falla la escritura
+	 */
+	private static void saveRegion(World world, File dir, int rx, int rz, boolean full) throws IOException
+	{
+		BlockStorage storage = world.getBlockStorage();
+		int chunks = storage.getChunksPerSide();
+		int minCx = rx * RegionFile.CHUNKS_PER_SIDE;
+		int minCz = rz * RegionFile.CHUNKS_PER_SIDE;
+		int maxCx = Math.min(chunks, minCx + RegionFile.CHUNKS_PER_SIDE);
+		int maxCz = Math.min(chunks, minCz + RegionFile.CHUNKS_PER_SIDE);
+		boolean pending = false;
+
+		for (int cx = minCx; (cx < maxCx) && !pending; cx++)
+		{
+			for (int cz = minCz; (cz < maxCz) && !pending; cz++)
+			{
+				pending = needsSave(world, cx, cz, full);
+			}
+		}
+
+		File file = new File(dir, RegionFile.fileName(rx, rz));
+		if (full)
+		{
+			Files.deleteIfExists(file.toPath());
+		}
+
+		if (!pending)
+		{
+			return;
+		}
+
+		RegionFile region = new RegionFile(file, true);
+
+		try
+		{
+			for (int cx = minCx; cx < maxCx; cx++)
+			{
+				for (int cz = minCz; cz < maxCz; cz++)
+				{
+					if (needsSave(world, cx, cz, full))
+					{
+						region.allocate(cx - minCx, cz - minCz);
+					}
+				}
+			}
+
+			MappedByteBuffer data = region.mapChunks(MapMode.READ_WRITE);
+
+			for (int cx = minCx; cx < maxCx; cx++)
+			{
+				for (int cz = minCz; cz < maxCz; cz++)
+				{
+					if (needsSave(world, cx, cz, full))
+					{
+						ByteBuffer payload = RegionFile.slice(data, region.getSlot(cx - minCx, cz - minCz));
+						storage.exportChunk(cx, cz, payload, 0);
+						writeHeights(world, cx, cz, payload);
+						storage.clearDirty(cx, cz);
+					}
+				}
+			}
+
+			data.force();
+		}
+
+		finally
+		{
+			region.close();
+		}
+	}
+
+	/**
+	 * Método que indica si hay que escribir un chunk. Los chunks que aún no se han generado
+	 * no se guardan: al cargar el mundo se generan cuando se usen
+	 * @param world mundo
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 * @param full true si se escriben todos los chunks, no solo los modificados
+	 * @return true si hay que escribirlo
+	 */
+	private static boolean needsSave(World world, int cx, int cz, boolean full)
+	{
+		return (full || world.getBlockStorage().isDirty(cx, cz)) && world.isChunkGenerated(cx, cz);
+	}
+
+	/**
+	 * Método que carga un mundo guardado
+	 * @param dir directorio del mundo
+	 * @param options opciones del mundo cargado
+	 * @return mundo cargado
+	 * @throws IOException si falla la lectura o el formato no es válido
+	 */
+	static World load(File dir, WorldOptions options) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(dir, LEVEL_FILE))));
+
+		try
+		{
+			int version = (in.readInt() == MAGIC) ? in.readInt() : -1;
+			if ((version < 1) || (version > VERSION))
+			{
+				throw new IOException("Bad level file in " + dir);
+			}
+
+			long seed = in.readLong();
+			int size = in.readInt();
+			String name = in.readUTF();
+			World world = new World(seed, size, name, options, false);
+			BlockStorage storage = world.getBlockStorage();
+			int chunks = storage.getChunksPerSide();
+			int regions = (chunks + RegionFile.CHUNKS_PER_SIDE - 1) / RegionFile.CHUNKS_PER_SIDE;
+
+			for (int rx = 0; rx < regions; rx++)
+			{
+				for (int rz = 0; rz < regions; rz++)
+				{
+					loadRegion(world, dir, rx, rz, options.isOffHeap());
+				}
+			}
+
+			readLevel(world, in, version);
+
+			for (int cx = 0; cx < chunks; cx++)
+			{
+				for (int cz = 0; cz < chunks; cz++)
+				{
+					storage.clearDirty(cx, cz);
+				}
+			}
+
+			world.setStoreDirectory(dir.getCanonicalFile());
+
+			return world;
+		}
+
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Método que carga los chunks de una región
+	 * @param world mundo
+	 * @param dir directorio del mundo
+	 * @param rx coordenada x de la región
+	 * @param rz coordenada z de la región
+	 * @param mapped true para usar las páginas mapeadas como almacén de los chunks
+	 * @throws IOException si falla la lectura
+	 */
+	private static void loadRegion(World world, File dir, int rx, int rz, boolean mapped) throws IOException
+	{
+		File file = new File(dir, RegionFile.fileName(rx, rz));
+
+		if (!file.exists())
+		{
+			return;
+		}
+
+		BlockStorage storage = world.getBlockStorage();
+		int chunks = storage.getChunksPerSide();
+		RegionFile region = new RegionFile(file, mapped);
+
+		try
+		{
+			// PRIVATE: las páginas se leen al usarlas y los cambios no llegan al fichero hasta guardar
+			MappedByteBuffer data = region.mapChunks(mapped ? MapMode.PRIVATE : MapMode.READ_ONLY);
+
+			for (int lcx = 0; lcx < RegionFile.CHUNKS_PER_SIDE; lcx++)
+			{
+				for (int lcz = 0; lcz < RegionFile.CHUNKS_PER_SIDE; lcz++)
+				{
+					int cx = rx * RegionFile.CHUNKS_PER_SIDE + lcx;
+					int cz = rz * RegionFile.CHUNKS_PER_SIDE + lcz;
+					int slot = region.getSlot(lcx, lcz);
+
+					if ((slot >= 0) && (cx < chunks) && (cz < chunks))
+					{
+						ByteBuffer payload = RegionFile.slice(data, slot);
+						storage.importChunk(cx, cz, payload.slice(0, OffHeapBlockStorage.CHUNK_BYTES));
+						readHeights(world, cx, cz, payload);
+						world.markChunkGenerated(cx, cz);
+					}
+				}
+			}
+		}
+
+		finally
+		{
+			region.close();
+		}
+	}
+
+	/**
+	 * Método que escribe las alturas de las columnas de un chunk al final de su payload
+	 * @param world mundo
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 * @param payload buffer del chunk
+	 */
+	private static void writeHeights(World world, int cx, int cz, ByteBuffer payload)
+	{
+		int minCoord = world.getBlockStorage().getMinCoord();
+
+		for (int lx = 0; lx < ChunkSection.SIZE; lx++)
+		{
+			for (int lz = 0; lz < ChunkSection.SIZE; lz++)
+			{
+				int x = cx * ChunkSection.SIZE + lx;
+				int z = cz * ChunkSection.SIZE + lz;
+				short height = -1;
+
+				if ((x < world.getSize()) && (z < world.getSize()))
+				{
+					height = (short) world.getColumnHeight(x + minCoord, z + minCoord);
+				}
+
+				payload.putShort(OffHeapBlockStorage.CHUNK_BYTES + (lx * ChunkSection.SIZE + lz) * 2, height);
+			}
+		}
+	}
+
+	/**
+	 * Método que lee las alturas de las columnas de un chunk
+	 * @param world mundo
+	 * @param cx coordenada x del chunk
+	 * @param cz coordenada z del chunk
+	 * @param payload buffer del chunk
+	 */
+	private static void readHeights(World world, int cx, int cz, ByteBuffer payload)
+	{
+		int minCoord = world.getBlockStorage().getMinCoord();
+
+		for (int lx = 0; lx < ChunkSection.SIZE; lx++)
+		{
+			for (int lz = 0; lz < ChunkSection.SIZE; lz++)
+			{
+				int x = cx * ChunkSection.SIZE + lx;
+				int z = cz * ChunkSection.SIZE + lz;
+
+				if ((x < world.getSize()) && (z < world.getSize()))
+				{
+					short height = payload.getShort(OffHeapBlockStorage.CHUNK_BYTES + (lx * ChunkSection.SIZE + lz) * 2);
+					world.setColumnHeight(x + minCoord, z + minCoord, height);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Método que escribe level.dat en un fichero temporal y lo renombra al terminar
+	 * @param world mundo
+	 * @param dir directorio del mundo
+	 * @throws IOException si falla la escritura
+	 */
+	private static void writeLevel(World world, File dir) throws IOException
+	{
+		File tmp = new File(dir, LEVEL_FILE + ".tmp");
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(world.getSeed());
+			out.writeInt(world.getSize());
+			out.writeUTF(world.getName());
+			writePlayer(world.getPlayer(), out);
+
+			LongMap<ItemStack> items = world.getItemMap();
+			out.writeInt(items.size());
+			for (long key : items.keys())
+			{
+				out.writeLong(key);
+				writeItem(items.get(key), out);
+			}
+
+			CreatureIndex creatures = world.getCreatureIndex();
+			out.writeInt(creatures.size());
+			for (long key : creatures.keys())
+			{
+				Creature creature = creatures.get(key);
+				out.writeLong(key);
+				out.writeChar(creature.getSymbol());
+				out.writeDouble(creature.getHealth());
+			}
+
+			LongMap<Block> specials = new LongMap<Block>();
+			world.getBlockStorage().collectSpecials(specials);
+			out.writeInt(specials.size());
+			for (long key : specials.keys())
+			{
+				Block block = specials.get(key);
+				out.writeLong(key);
+				out.writeByte(block.getType().ordinal());
+				writeItem(((SolidBlock) block).getDrops(), out);
+			}
+
+			out.writeLong(world.getTicks());
+			Player[] players = world.getPlayerArray();
+			out.writeInt(players.length - 1);
+			for (Player p : players)
+			{
+				if (p != world.getPlayer())
+				{
+					writePlayer(p, out);
+				}
+			}
+
+			writeQueue(world.getLiquidFlow().getQueue(), out);
+			writeQueue(world.getFallingBlocks().getQueue(), out);
+		}
+
+		finally
+		{
+			out.close();
+		}
+
+		Files.move(tmp.toPath(), new File(dir, LEVEL_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Método que lee de level.dat los jugadores, los items, las criaturas, los bloques con
+	 * estado propio, el número de ticks y las posiciones pendientes (las tres últimas cosas
+	 * no están en la versión 1)
+	 * @param world mundo cargado
+	 * @param in flujo de level.dat, después de la cabecera
+	 * @param version versión del formato
+	 * @throws IOException si falla la lectura o el formato no es válido
+	 */
+	private static void readLevel(World world, DataInputStream in, int version) throws IOException
+	{
+		world.setPlayer(readPlayer(world, in));
+
+		LongMap<ItemStack> items = world.getItemMap();
+		for (int n = in.readInt(); n > 0; n--)
+		{
+			long key = in.readLong();
+			items.put(key, readItem(in));
+		}
+
+		CreatureIndex creatures = world.getCreatureIndex();
+		for (int n = in.readInt(); n > 0; n--)
+		{
+			long key = in.readLong();
+			char symbol = in.readChar();
+			double health = in.readDouble();
+			Location loc = LocationKey.toLocation(world, key);
+			creatures.put(key, (symbol == 'L') ? new Animal(loc, health) : new Monster(loc, health));
+		}
+
+		BlockStorage storage = world.getBlockStorage();
+		for (int n = in.readInt(); n > 0; n--)
+		{
+			long key = in.readLong();
+			Material type = Material.values()[in.readByte()];
+			ItemStack drops = readItem(in);
+
+			try
+			{
+				SolidBlock block = new SolidBlock(type);
+				if (drops != null)
+				{
+					block.setDrops(drops.getType(), drops.getAmount());
+				}
+				storage.put(LocationKey.getX(key), LocationKey.getY(key), LocationKey.getZ(key), block);
+			}
+
+			catch (WrongMaterialException | StackSizeException e)
+			{
+				throw new IOException("Bad block in level file", e);
+			}
+		}
+
+		if (version < 2)
+		{
+			return;
+		}
+
+		world.setTicks(in.readLong());
+		for (int n = in.readInt(); n > 0; n--)
+		{
+			try
+			{
+				world.putPlayer(readPlayer(world, in));
+			}
+
+			catch (IllegalArgumentException e)
+			{
+				throw new IOException("Bad player in level file", e);
+			}
+		}
+
+		readQueue(world.getLiquidFlow().getQueue(), in);
+		readQueue(world.getFallingBlocks().getQueue(), in);
+	}
+
+	/**
+	 * Método que escribe las posiciones de una cola en orden
+	 * @param queue cola
+	 * @param out flujo de salida
+	 * @throws IOException si falla la escritura
+	 */
+	private static void writeQueue(UpdateQueue queue, DataOutputStream out) throws IOException
+	{
+		out.writeInt(queue.size());
+		for (int i = 0; i < queue.size(); i++)
+		{
+			out.writeLong(queue.get(i));
+		}
+	}
+
+	/**
+	 * Método que añade a una cola las posiciones escritas con {@link #writeQueue(UpdateQueue, DataOutputStream)}
+	 * @param queue cola
+	 * @param in flujo de entrada
+	 * @throws IOException si falla la lectura
+	 */
+	private static void readQueue(UpdateQueue queue, DataInputStream in) throws IOException
+	{
+		for (int n = in.readInt(); n > 0; n--)
+		{
+			queue.add(in.readLong());
+		}
+	}
+
+	/**
+	 * Método que escribe el jugador
+	 * @param player jugador
+	 * @param out flujo de salida
+	 * @throws IOException si falla la escritura
+	 */
+	private static void writePlayer(Player player, DataOutputStream out) throws IOException
+	{
+		Location loc = player.getLocation();
+		Location orientation = player.getRelativeOrientation();
+		out.writeUTF(player.getName());
+		out.writeDouble(loc.getX());
+		out.writeDouble(loc.getY());
+		out.writeDouble(loc.getZ());
+		out.writeDouble(orientation.getX());
+		out.writeDouble(orientation.getY());
+		out.writeDouble(orientation.getZ());
+		out.writeDouble(player.getHealth());
+		out.writeDouble(player.getFoodLevel());
+		writeItem(player.getItemInHand(), out);
+		out.writeInt(player.getInventorySize());
+		for (int i = 0; i < player.getInventorySize(); i++)
+		{
+			writeItem(player.getInventoryItem(i), out);
+		}
+	}
+
+	/**
+	 * Método que lee el jugador
+	 * @param world mundo del jugador
+	 * @param in flujo de entrada
+	 * @return jugador
+	 * @throws IOException si falla la lectura
+	 */
+	private static Player readPlayer(World world, DataInputStream in) throws IOException
+	{
+		String name = in.readUTF();
+		Location loc = new Location(world, in.readDouble(), in.readDouble(), in.readDouble());
+		Location orientation = new Location(world, in.readDouble(), in.readDouble(), in.readDouble());
+		double health = in.readDouble();
+		double foodLevel = in.readDouble();
+		Inventory inventory = new Inventory();
+		inventory.setItemInHand(readItem(in));
+		for (int n = in.readInt(); n > 0; n--)
+		{
+			inventory.addItem(readItem(in));
+		}
+
+		return new Player(name, loc, orientation, health, foodLevel, inventory);
+	}
+
+	/**
+	 * Método que escribe un item (material y cantidad), o -1 si es null
+	 * @param item item o null
+	 * @param out flujo de salida
+	 * @throws IOException si falla la escritura
+	 */
+	private static void writeItem(ItemStack item, DataOutputStream out) throws IOException
+	{
+		if (item == null)
+		{
+			out.writeByte(-1);
+		}
+
+		else
+		{
+			out.writeByte(item.getType().ordinal());
+			out.writeByte(item.getAmount());
+		}
+	}
+
+	/**
+	 * Método que lee un item escrito con {@link #writeItem(ItemStack, DataOutputStream)}
+	 * @param in flujo de entrada
+	 * @return item o null
+	 * @throws IOException si falla la lectura o la cantidad no es válida
+	 */
+	private static ItemStack readItem(DataInputStream in) throws IOException
+	{
+		int type = in.readByte();
+
+		if (type < 0)
+		{
+			return null;
+		}
+
+		try
+		{
+			return new ItemStack(Material.values()[type], in.readByte());
+		}
+
+		catch (StackSizeException e)
+		{
+			throw new IOException("Bad item in level file", e);
+		}
+	}
+}
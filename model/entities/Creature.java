@@ -1,6 +1,9 @@
 package model.entities;
 
+import model.BlockPos;
 import model.Location;
+import model.World;
+import model.exceptions.BadLocationException;
 
 /**
  * Clase que establece las criaturas y sus funcionalidades
@@ -17,4 +20,35 @@ public abstract class Creature extends LivingEntity
 	{
 		super(loc, health);
 	}
+	
+	/**
+	 * Método que cambia la posición de la criatura. Lo usa el mundo al moverla, que es quien
+	 * mantiene el índice de criaturas por posición: solo se acepta si el mundo ya tiene la
+	 * criatura en la posición nueva, para que el índice y la criatura no dejen de coincidir
+	 * @param x coordenada x
+	 * @param y coordenada y
+	 * @param z coordenada z
+	 * @throws IllegalStateException si el mundo no tiene la criatura en esa posición
+	 */
+	public void moveTo(int x, int y, int z)
+	{
+		World world = location.getWorld();
+
+		try
+		{
+			if ((world == null) || (world.getCreatureAt(new BlockPos(x, y, z)) != this))
+			{
+				throw new IllegalStateException("La criatura no está en esa posición del mundo");
+			}
+		}
+
+		catch (BadLocationException e)
+		{
+			throw new IllegalStateException("La criatura no está en esa posición del mundo", e);
+		}
+
+		location.setX(x);
+		location.setY(y);
+		location.setZ(z);
+	}
 }
@@ -1,5 +1,6 @@
 package model.entities;
 
+import model.BlockPos;
 import model.Location;
 
 /**
@@ -61,6 +62,42 @@ public abstract class LivingEntity
 		return new Location(location);
 	}
 	
+	/**
+	 * Getter. A diferencia de {@link #getLocation()} no copia la localización
+	 * @return posición del bloque donde está la entidad
+	 */
+	public BlockPos getBlockPos()
+	{
+		return BlockPos.of(location);
+	}
+	
+	/**
+	 * Getter. Como {@link #getBlockPos()}, pero sin crear ningún objeto
+	 * @return coordenada x del bloque donde está la entidad
+	 */
+	public int getBlockX()
+	{
+		return (int) Math.floor(location.getX());
+	}
+	
+	/**
+	 * Getter. Como {@link #getBlockPos()}, pero sin crear ningún objeto
+	 * @return coordenada y del bloque donde está la entidad
+	 */
+	public int getBlockY()
+	{
+		return (int) Math.floor(location.getY());
+	}
+	
+	/**
+	 * Getter. Como {@link #getBlockPos()}, pero sin crear ningún objeto
+	 * @return coordenada z del bloque donde está la entidad
+	 */
+	public int getBlockZ()
+	{
+		return (int) Math.floor(location.getZ());
+	}
+	
  	/**
  	 * Getter
  	 * @return symbol carácter que representa a la entidad
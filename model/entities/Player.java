@@ -1,9 +1,11 @@
 package model.entities;
 
+import model.BlockPos;
 import model.Inventory;
 import model.ItemStack;
 import model.Location;
 import model.Material;
+import model.Neighbourhood;
 import model.World;
 import model.exceptions.BadInventoryPositionException;
 import model.exceptions.BadLocationException;
@@ -63,19 +65,29 @@ public class Player extends LivingEntity
 	 */
 	public Player(String name, World world)
 	{
-		super(new Location(world, 0, 0, 0), MAX_HEALTH);
+		this(name, new Location(world, 0, 0, 0));
+	}
+	
+	/**
+	 * Constructor de un jugador nuevo encima del bloque más alto de una columna
+	 * @param name nombre del jugador
+	 * @param ground posición de la columna (la coordenada y no se usa)
+	 */
+	public Player(String name, Location ground)
+	{
+		super(new Location(ground), MAX_HEALTH);
 		Location temp_loc = new Location(this.getLocation());
 		
 		try
 		{
-			Location starting_loc = new Location(world.getHighestLocationAt(temp_loc));
+			Location starting_loc = new Location(ground.getWorld().getHighestLocationAt(temp_loc));
 			starting_loc = starting_loc.above();
 			super.location = starting_loc;
 			this.name = name;
 			foodLevel = MAX_FOODLEVEL;
 			inventory = new Inventory();
 			inventory.setItemInHand(new ItemStack(Material.WOOD_SWORD, 1));
-			orientation = new Location(world, 0, 0, 1);
+			orientation = new Location(ground.getWorld(), 0, 0, 1);
 		} 
 		
 		catch (BadLocationException | StackSizeException e)
@@ -84,6 +96,24 @@ public class Player extends LivingEntity
 		}
 	}
 	
+	/**
+	 * Constructor para restaurar un jugador guardado
+	 * @param name nombre del jugador
+	 * @param loc posición del jugador
+	 * @param orientation orientación relativa a la posición
+	 * @param health salud
+	 * @param foodLevel nivel de comida
+	 * @param inventory inventario
+	 */
+	public Player(String name, Location loc, Location orientation, double health, double foodLevel, Inventory inventory)
+	{
+		super(new Location(loc), health);
+		this.name = name;
+		this.orientation = new Location(orientation);
+		this.foodLevel = foodLevel;
+		this.inventory = inventory;
+	}
+	
 	/**
 	 * Getter
 	 * @return foodLevel nivel de comida que tiene el jugador
@@ -104,6 +134,16 @@ public class Player extends LivingEntity
 		return new Location(temp_loc.add(orientation));
 	}
 	
+	/**
+	 * Getter. A diferencia de {@link #getOrientation()} no copia localizaciones
+	 * @return posición del bloque hacia el que está orientado el jugador
+	 */
+	public BlockPos getOrientationPos()
+	{
+		return new BlockPos((int) Math.floor(location.getX() + orientation.getX()),
+			(int) Math.floor(location.getY() + orientation.getY()), (int) Math.floor(location.getZ() + orientation.getZ()));
+	}
+	
 	/**
 	 * Getter
 	 * @return name nombre del jugador
@@ -122,6 +162,34 @@ public class Player extends LivingEntity
 		return symbol;
 	}
 	
+	/**
+	 * Getter
+	 * @return orientación relativa a la posición del jugador
+	 */
+	public Location getRelativeOrientation()
+	{
+		return new Location(orientation);
+	}
+	
+	/**
+	 * Getter
+	 * @return item que el jugador tiene en la mano
+	 */
+	public ItemStack getItemInHand()
+	{
+		return inventory.getItemInHand();
+	}
+	
+	/**
+	 * Getter
+	 * @param n posición en el inventario
+	 * @return item de esa posición o null
+	 */
+	public ItemStack getInventoryItem(int n)
+	{
+		return inventory.getItem(n);
+	}
+	
 	/**
 	 * Getter
 	 * @return size tamaño del inventario
@@ -176,10 +244,15 @@ public class Player extends LivingEntity
  			Location temp_loc = new Location(location.getWorld(), dx, dy, dz);
  			temp_loc.add(this.location);;
  			
- 			if (temp_loc.isFree() && (location.getNeighborhood().contains(temp_loc)))
+ 			int x = (int) Math.floor(location.getX());
+ 			int y = (int) Math.floor(location.getY());
+ 			int z = (int) Math.floor(location.getZ());
+ 			
+ 			if (Neighbourhood.isNeighbour(location.getWorld(), x, y, z, x + dx, y + dy, z + dz) && temp_loc.isFree())
 			{
  				this.location = temp_loc;
  				decreaseFoodLevel(MOVE_COST);
+ 				location.getWorld().generateAround(location);
 			}
  			
  			else